@@ -1,31 +1,40 @@
 package code;
 
 import java.util.*;
-import java.util.function.BiConsumer;
 
 public class BaseQueue {
 
-    ArrayList<Node> queue;
-    public HashSet<String> visitedStates;
+    Frontier frontier;
+    Problem problem;
+    public VisitedSet visitedStates;
 
-    BaseQueue() {
-        this.queue = new ArrayList<>();
-        this.visitedStates = new HashSet<>();
+    BaseQueue(Frontier frontier, Problem problem) {
+        this.frontier = frontier;
+        this.problem = problem;
+        this.visitedStates = new VisitedSet(problem.visitedStatesStorage);
     }
 
     /**
      * Enqueue a node based on the strategy
      *
-     * @param nodes           list of nodes to add to the queue
-     * @param queuingFunction a function to decide how to enqueue the nodes
+     * @param nodes list of nodes to add to the queue
      **/
-    public void enqueue(List<Node> nodes, BiConsumer<ArrayList<Node>, Node> queuingFunction) {
+    public void enqueue(List<Node> nodes) {
         for (Node node : nodes) {
-            if (!visitedStates.contains(node.state.toString())) {
-                int initialSize = queue.size();
-                queuingFunction.accept(queue, node); // Apply queuing function to node
-                if (queue.size() > initialSize) {
-                    visitedStates.add(node.state.toString()); // only add to visited states if the node is actually added to the queue
+            long[] words;
+            long fingerprint;
+            if (problem.hasPlainStateKeys()) { // the state is probed as it is, without allocating a key
+                words = node.state.packedWords();
+                fingerprint = node.state.fingerprint();
+            } else {
+                PackedState key = problem.stateKey(node.state); // symmetric states may share a key
+                words = key.words;
+                fingerprint = key.fingerprint;
+            }
+            long slot = visitedStates.slotOf(words, fingerprint); // probed once for the check and the insertion
+            if (!visitedStates.isOccupied(slot)) {
+                if (frontier.add(node)) { // the frontier decides where to insert the node
+                    visitedStates.insert(slot, words, fingerprint); // only add to visited states if the node is actually added to the queue
 //                    if (WaterSortSearch.visualize)
 //                        System.out.println(ConsoleColors.GREEN_BOLD + "ENQUEUED");
                 } else {
@@ -42,24 +51,18 @@ public class BaseQueue {
      * Dequeue a node
      **/
     public Node dequeue() {
-        return queue.remove(0);
+        return frontier.remove();
     }
 
     /**
      * Checks if queue is empty
      **/
     public boolean isEmpty() {
-        return queue.isEmpty();
+        return frontier.isEmpty();
     }
 
     @Override
     public String toString() {
-        StringBuilder result = new StringBuilder();
-
-        for (Node node : queue) {
-            result.append(node.toString()).append(" ");
-        }
-
-        return result.toString().trim();
+        return frontier.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,225 @@
+package code;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Solves many puzzles concurrently, every puzzle with its own {@link WaterSortSolver}.
+ * At most maxConcurrentSolves puzzles are solved at once, on a virtual thread each or on a given executor,
+ * and the requests are only taken from their stream as solves finish, so a long stream is never held in memory.
+ * The results are returned in the order the solves finish, each with the work its search did.
+ * <p>
+ * Every solve is given the time limit and node limit of the batch, a solve that exceeds either is reported
+ * as such instead of stopping the batch.
+ */
+public class BatchSolver implements AutoCloseable {
+
+    /**
+     * A puzzle to solve and the strategy to solve it with
+     */
+    public record Request(String initialState, String strategy) {}
+
+    /**
+     * How a solve ended
+     */
+    public enum Status {
+        SOLVED,
+        NO_SOLUTION,
+        TIME_LIMIT_EXCEEDED,
+        NODE_LIMIT_EXCEEDED,
+        FAILED // the solve threw an exception, e.g. for a malformed puzzle
+    }
+
+    /**
+     * The outcome of a single request
+     *
+     * @param index            position of the request in the batch
+     * @param request          the request
+     * @param status           how the solve ended
+     * @param solution         the result of {@link WaterSortSolver#solve} if the solve ended, otherwise null
+     * @param nodesExpanded    nodes expanded by the search
+     * @param nodesGenerated   nodes generated by the search
+     * @param peakFrontierSize largest number of nodes that waited to be expanded at once
+     * @param wallTime         time from the start to the end of the solve
+     * @param failure          the exception that ended the solve, null if it ended normally
+     */
+    public record Result(int index, Request request, Status status, String solution, int nodesExpanded,
+                         long nodesGenerated, int peakFrontierSize, Duration wallTime, Throwable failure) {
+
+        @Override
+        public String toString() {
+            return "#" + index + " " + request.strategy() + ": " + status + ", nodes expanded: " + nodesExpanded
+                    + ", nodes generated: " + nodesGenerated + ", peak frontier: " + peakFrontierSize
+                    + ", wall time: " + wallTime.toMillis() + "ms";
+        }
+    }
+
+    public Duration timeLimit = null; // longest time a single solve may search, null for no limit
+    public long maxNumOfNodes = 0; // most nodes a single solve may generate, 0 for no limit
+    public Supplier<WaterSortSolver> solverFactory = WaterSortSolver::new; // creates the configured solver of every request
+
+    ExecutorService executor;
+    boolean ownsExecutor;
+    int maxConcurrentSolves;
+
+    /**
+     * Create a batch solver that runs every solve on its own virtual thread
+     *
+     * @param maxConcurrentSolves the largest number of puzzles solved at once
+     */
+    public BatchSolver(int maxConcurrentSolves) {
+        this(Executors.newVirtualThreadPerTaskExecutor(), maxConcurrentSolves);
+        this.ownsExecutor = true;
+    }
+
+    /**
+     * Create a batch solver that runs the solves on an executor, e.g. a fixed pool of platform threads
+     *
+     * @param executor            the executor of the solves, it is not shut down by the batch solver
+     * @param maxConcurrentSolves the largest number of puzzles solved at once
+     */
+    public BatchSolver(ExecutorService executor, int maxConcurrentSolves) {
+        if (maxConcurrentSolves < 1) {
+            throw new IllegalArgumentException("maxConcurrentSolves must be positive: " + maxConcurrentSolves);
+        }
+        this.executor = executor;
+        this.maxConcurrentSolves = maxConcurrentSolves;
+    }
+
+    /**
+     * Solve a batch of requests
+     *
+     * @param requests the requests, numbered in their order
+     * @return the results in the order the solves finish
+     */
+    public Stream<Result> solve(Collection<Request> requests) {
+        return solve(requests.stream());
+    }
+
+    /**
+     * Solve a stream of requests. The requests are submitted while the returned stream is consumed,
+     * so the results must be consumed for the batch to go on
+     *
+     * @param requests the requests, numbered in their order
+     * @return the results in the order the solves finish
+     */
+    public Stream<Result> solve(Stream<Request> requests) {
+        Iterator<Result> results = new ResultIterator(requests.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Solve a single request with a new solver and measure it
+     */
+    Result solve(int index, Request request) {
+        WaterSortSolver solver = solverFactory.get();
+        solver.timeLimit = timeLimit;
+        solver.maxNumOfNodes = maxNumOfNodes;
+
+        long start = System.nanoTime();
+        String solution = null;
+        Status status;
+        Throwable failure = null;
+        try {
+            solution = solver.solve(request.initialState(), request.strategy());
+            status = solution.equals("NOSOLUTION") ? Status.NO_SOLUTION : Status.SOLVED;
+        } catch (BudgetExceededException e) {
+            status = e.limit == BudgetExceededException.Limit.TIME ? Status.TIME_LIMIT_EXCEEDED : Status.NODE_LIMIT_EXCEEDED;
+            failure = e;
+        } catch (Throwable e) {
+            // an OutOfMemoryError of one solve releases its nodes, so the rest of the batch can go on
+            status = Status.FAILED;
+            failure = e;
+        }
+        Duration wallTime = Duration.ofNanos(System.nanoTime() - start);
+
+        return new Result(index, request, status, solution, solver.nodesExpanded, solver.nodesGenerated.get(),
+                solver.peakFrontierSize(), wallTime, failure);
+    }
+
+    /**
+     * Submits requests while fewer than maxConcurrentSolves are running, and returns the results as they arrive
+     */
+    class ResultIterator implements Iterator<Result> {
+        Iterator<Request> requests;
+        Semaphore runningSolves = new Semaphore(maxConcurrentSolves);
+        BlockingQueue<Result> finishedSolves = new LinkedBlockingQueue<>();
+        int numOfSubmitted = 0;
+        int numOfReturned = 0;
+
+        ResultIterator(Iterator<Request> requests) {
+            this.requests = requests;
+        }
+
+        /**
+         * Submit the next requests while there is room for them
+         */
+        void submitRequests() {
+            while (requests.hasNext() && runningSolves.tryAcquire()) {
+                int index = numOfSubmitted;
+                Request request = requests.next();
+                try {
+                    executor.execute(() -> {
+                        Result result;
+                        try {
+                            result = solve(index, request);
+                        } catch (Throwable e) {
+                            // the solver could not be created, a result is still returned so the batch does not wait for it
+                            result = new Result(index, request, Status.FAILED, null, 0, 0, 0, Duration.ZERO, e);
+                        } finally {
+                            runningSolves.release();
+                        }
+                        finishedSolves.add(result);
+                    });
+                } catch (RuntimeException e) {
+                    runningSolves.release(); // e.g. the executor was shut down
+                    throw e;
+                }
+                numOfSubmitted++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            submitRequests();
+            return numOfReturned < numOfSubmitted;
+        }
+
+        @Override
+        public Result next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Result result = finishedSolves.take();
+                numOfReturned++;
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Batch was interrupted", e);
+            }
+        }
+    }
+
+    /**
+     * Shut down the executor of the virtual threads, the solves that are running are finished first
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.close();
+        }
+    }
+}
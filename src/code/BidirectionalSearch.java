@@ -0,0 +1,149 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Bidirectional breadth first search: a forward search from the initial state and a backward search from all the
+ * goal states expand a whole depth at a time, always on the side with the smaller layer, till a state is reached by both.
+ * The solution is the forward path to that state followed by the backward path from it to a goal.
+ * <p>
+ * Both sides detect duplicates and meet by {@link Problem#meetingKey}. The meeting state of the backward search may only
+ * be symmetric to the one of the forward search, so the backward moves are mapped to it by {@link Problem#mapMove}
+ * and replayed from it.
+ */
+public class BidirectionalSearch {
+
+    Problem problem;
+    HashMap<PackedState, Node> forwardNodes = new HashMap<>(); // visited states of the forward search -> node reaching them
+    HashMap<PackedState, Node> backwardNodes = new HashMap<>(); // visited states of the backward search -> node reaching them
+    List<Node> forwardLayer = new ArrayList<>();
+    List<Node> backwardLayer = new ArrayList<>();
+
+    BidirectionalSearch(Problem problem) {
+        this.problem = problem;
+    }
+
+    /**
+     * Performs bidirectional breadth first search
+     *
+     * @param problem    general search problem, must support backward search
+     * @param goalStates all the goal states of the problem
+     * @return a goal node, reached by a path with the fewest operators
+     */
+    public static Node search(Problem problem, List<State> goalStates) {
+        return new BidirectionalSearch(problem).search(goalStates);
+    }
+
+    Node search(List<State> goalStates) {
+        Node root = GenericSearch.makeNode(problem.initialState);
+        if (problem.goalTest(root.state)) {
+            return root;
+        }
+        forwardNodes.put(problem.meetingKey(root.state), root);
+        forwardLayer.add(root);
+
+        for (State goalState : goalStates) {
+            Node goalNode = GenericSearch.makeNode(goalState);
+            if (backwardNodes.putIfAbsent(problem.meetingKey(goalState), goalNode) == null) {
+                backwardLayer.add(goalNode);
+            }
+        }
+
+        // when one side has no states left, no state reachable from the initial state can reach a goal
+        while (!forwardLayer.isEmpty() && !backwardLayer.isEmpty()) {
+            problem.peakFrontierSize = Math.max(problem.peakFrontierSize, forwardLayer.size() + backwardLayer.size());
+            Node goalNode = forwardLayer.size() <= backwardLayer.size() ? expandForwardLayer() : expandBackwardLayer();
+            if (goalNode != null) {
+                return goalNode;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Expand the nodes of the forward layer into the next forward layer
+     *
+     * @return a goal node if a child reached a state of the backward search
+     */
+    Node expandForwardLayer() {
+        List<Node> nextLayer = new ArrayList<>();
+        Node bestForwardNode = null;
+        Node bestBackwardNode = null;
+
+        for (Node node : forwardLayer) {
+            for (Node child : problem.expand(node)) {
+                PackedState key = problem.meetingKey(child.state);
+                if (forwardNodes.putIfAbsent(key, child) != null) {
+                    continue;
+                }
+
+                // keep the meeting state with the shortest backward path, the forward paths of the layer have equal length
+                Node backwardNode = backwardNodes.get(key);
+                if (backwardNode != null && (bestBackwardNode == null || backwardNode.depth < bestBackwardNode.depth)) {
+                    bestForwardNode = child;
+                    bestBackwardNode = backwardNode;
+                }
+                nextLayer.add(child);
+            }
+        }
+
+        forwardLayer = nextLayer;
+        return bestForwardNode != null ? joinPaths(bestForwardNode, bestBackwardNode) : null;
+    }
+
+    /**
+     * Expand the nodes of the backward layer into the next backward layer
+     *
+     * @return a goal node if a previous state was reached by the forward search
+     */
+    Node expandBackwardLayer() {
+        List<Node> nextLayer = new ArrayList<>();
+        Node bestForwardNode = null;
+        Node bestBackwardNode = null;
+
+        for (Node node : backwardLayer) {
+            for (Node previous : problem.expandBackward(node)) {
+                PackedState key = problem.meetingKey(previous.state);
+                if (backwardNodes.putIfAbsent(key, previous) != null) {
+                    continue;
+                }
+
+                // keep the meeting state with the shortest forward path, the backward paths of the layer have equal length
+                Node forwardNode = forwardNodes.get(key);
+                if (forwardNode != null && (bestForwardNode == null || forwardNode.depth < bestForwardNode.depth)) {
+                    bestForwardNode = forwardNode;
+                    bestBackwardNode = previous;
+                }
+                nextLayer.add(previous);
+            }
+        }
+
+        backwardLayer = nextLayer;
+        return bestForwardNode != null ? joinPaths(bestForwardNode, bestBackwardNode) : null;
+    }
+
+    /**
+     * Continue the forward path with the moves of the backward path
+     *
+     * @param forwardNode  node of the forward search
+     * @param backwardNode node of the backward search with the same meeting key
+     * @return the goal node at the end of the replayed backward path
+     */
+    Node joinPaths(Node forwardNode, Node backwardNode) {
+        Node node = forwardNode;
+        for (Node previous = backwardNode; previous.parent != null; previous = previous.parent) {
+            int move = problem.mapMove(backwardNode.state, forwardNode.state, previous.move);
+            node = new Node(
+                    problem.transitionFunction(node.state, move),
+                    node,
+                    move,
+                    node.pathCost + previous.pathCost - previous.parent.pathCost,
+                    node.depth + 1
+            );
+        }
+        return node;
+    }
+}
@@ -0,0 +1,132 @@
+package code;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bucket (radix) priority queue for small non-negative integer priorities such as path cost or heuristic cost.
+ * Nodes are kept in one bucket per priority value so insertion and removal are O(1) amortized,
+ * instead of scanning and shifting a sorted list.
+ */
+public class BucketFrontier implements Frontier {
+
+    /**
+     * The order in which nodes of the same priority are removed
+     */
+    public enum TieBreaking {
+        FIFO, // first inserted first removed (same order as inserting after all nodes of equal priority)
+        LIFO, // last inserted first removed
+        DEEPEST_FIRST // deepest node first, first inserted first removed among nodes of the same depth
+    }
+
+    ToIntFunction<Node> priorityFunction;
+    TieBreaking tieBreaking;
+    ArrayList<Bucket> buckets;
+    int lowestPriority; // no bucket below this index contains a node
+    int size;
+
+    public BucketFrontier(ToIntFunction<Node> priorityFunction, TieBreaking tieBreaking) {
+        this.priorityFunction = priorityFunction;
+        this.tieBreaking = tieBreaking;
+        this.buckets = new ArrayList<>();
+        this.lowestPriority = 0;
+        this.size = 0;
+    }
+
+    public BucketFrontier(ToIntFunction<Node> priorityFunction) {
+        this(priorityFunction, TieBreaking.FIFO);
+    }
+
+    @Override
+    public boolean add(Node node) {
+        int priority = priorityFunction.applyAsInt(node);
+        if (priority < 0) {
+            throw new IllegalArgumentException("Bucket frontier priorities must be non-negative, got " + priority);
+        }
+
+        // grow the list of buckets till it reaches the priority of the node
+        while (buckets.size() <= priority) {
+            buckets.add(new Bucket());
+        }
+
+        buckets.get(priority).add(node, tieBreaking == TieBreaking.DEEPEST_FIRST ? node.depth : 0, tieBreaking == TieBreaking.LIFO);
+        lowestPriority = Math.min(lowestPriority, priority); // greedy search children may have a lower priority than their parent
+        size++;
+        return true;
+    }
+
+    @Override
+    public Node remove() {
+        // skip the empty buckets, every bucket skipped here stays empty till a node with its priority is inserted
+        while (buckets.get(lowestPriority).isEmpty()) {
+            lowestPriority++;
+        }
+        size--;
+        return buckets.get(lowestPriority).remove();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+
+        for (int i = lowestPriority; i < buckets.size(); i++) {
+            for (ArrayDeque<Node> level : buckets.get(i).levels) {
+                if (level == null) continue;
+                for (Node node : level) {
+                    result.append(node.toString()).append(" ");
+                }
+            }
+        }
+
+        return result.toString().trim();
+    }
+
+    /**
+     * All the nodes of a single priority, split into levels that are removed from the highest level down
+     */
+    static class Bucket {
+        ArrayList<ArrayDeque<Node>> levels = new ArrayList<>();
+        int highestLevel = -1;
+        int size = 0;
+
+        void add(Node node, int level, boolean atFront) {
+            while (levels.size() <= level) {
+                levels.add(null); // levels are only allocated once a node is inserted into them
+            }
+            if (levels.get(level) == null) {
+                levels.set(level, new ArrayDeque<>());
+            }
+
+            if (atFront) {
+                levels.get(level).addFirst(node);
+            } else {
+                levels.get(level).addLast(node);
+            }
+            highestLevel = Math.max(highestLevel, level);
+            size++;
+        }
+
+        Node remove() {
+            while (levels.get(highestLevel) == null || levels.get(highestLevel).isEmpty()) {
+                highestLevel--;
+            }
+            size--;
+            return levels.get(highestLevel).removeFirst();
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package code;
+
+/**
+ * Thrown by a search that used up the time or the number of nodes a solver allows it.
+ * The counters of the solver keep the work done up to that point.
+ */
+public class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limit of a solve that was exceeded
+     */
+    public enum Limit {
+        TIME, // the search ran longer than the time limit
+        NODES // the search generated more nodes than the node limit
+    }
+
+    public final Limit limit;
+
+    BudgetExceededException(Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+}
@@ -0,0 +1,441 @@
+package code;
+
+import java.util.Arrays;
+
+/**
+ * A reordered (and optionally recolored) copy of a state that is shared by its symmetric states.
+ * The canonical form is always a bottle permutation and color relabeling of the original state,
+ * and it is the same for every such permutation and relabeling, so two states get equal canonical forms exactly if they are isomorphic.
+ */
+public class CanonicalForm {
+
+    int[] bottleOrder; // original index of the bottle at every canonical position
+    int[] colorMapping; // canonical id of every original color id, the empty layer always keeps id 0
+    int[][] layerIds; // canonical color ids of the layers at every canonical position
+    WaterSearchState state;
+
+    /**
+     * Compute the canonical form of a state
+     *
+     * @param state         the state
+     * @param relabelColors whether colors are renamed as well, otherwise only the bottles are reordered
+     */
+    public CanonicalForm(WaterSearchState state, boolean relabelColors) {
+        this.state = state;
+
+        int numOfIds = state.colorDictionary.numOfColors() + 1;
+        int[][] originalIds = new int[state.numOfBottles][state.bottleCapacity];
+        for (int i = 0; i < state.numOfBottles; i++) {
+            for (int j = 0; j < state.bottleCapacity; j++) {
+                originalIds[i][j] = state.layerId(i, j);
+            }
+        }
+
+        this.colorMapping = new int[numOfIds];
+        for (int id = 0; id < numOfIds; id++) {
+            colorMapping[id] = id;
+        }
+
+        if (!relabelColors) {
+            this.bottleOrder = sortBottles(originalIds, identityOrder(state.numOfBottles));
+        } else {
+            this.bottleOrder = relabelComponents(originalIds, colorMapping);
+        }
+
+        this.layerIds = new int[state.numOfBottles][];
+        int[][] mappedIds = applyMapping(originalIds, colorMapping);
+        for (int position = 0; position < state.numOfBottles; position++) {
+            layerIds[position] = mappedIds[bottleOrder[position]];
+        }
+    }
+
+    /**
+     * Pack the canonical form into a key
+     *
+     * @return a key shared by all states with the same canonical form
+     */
+    public PackedState key() {
+        ColorDictionary colorDictionary = state.colorDictionary;
+        long[] words = new long[state.packedLayers.length];
+
+        for (int position = 0; position < state.numOfBottles; position++) {
+            for (int j = 0; j < state.bottleCapacity; j++) {
+                int layer = position * state.bottleCapacity + j;
+                int shift = (layer % colorDictionary.layersPerWord) * colorDictionary.bitsPerLayer;
+                words[layer / colorDictionary.layersPerWord] |= (long) layerIds[position][j] << shift;
+            }
+        }
+
+        return new PackedState(words);
+    }
+
+    /**
+     * Original index of the bottle at a canonical position
+     **/
+    public int originalBottle(int position) {
+        return bottleOrder[position];
+    }
+
+    /**
+     * Canonical position of an original bottle
+     **/
+    public int canonicalPosition(int bottleIndex) {
+        for (int position = 0; position < bottleOrder.length; position++) {
+            if (bottleOrder[position] == bottleIndex) return position;
+        }
+        throw new IllegalArgumentException("Unknown bottle: " + bottleIndex);
+    }
+
+    static int[] identityOrder(int numOfBottles) {
+        int[] order = new int[numOfBottles];
+        for (int i = 0; i < numOfBottles; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Stable sort of the bottles by their layers (insertion sort, the number of bottles is small)
+     *
+     * @param ids   color ids of the layers of every bottle
+     * @param order the current order of the bottles, kept for bottles with equal layers
+     * @return the original index of the bottle at every position
+     */
+    static int[] sortBottles(int[][] ids, int[] order) {
+        int[] sorted = order.clone();
+        for (int i = 1; i < sorted.length; i++) {
+            int bottle = sorted[i];
+            int j = i - 1;
+            while (j >= 0 && compare(ids[sorted[j]], ids[bottle]) > 0) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = bottle;
+        }
+        return sorted;
+    }
+
+    static int compare(int[] firstBottle, int[] secondBottle) {
+        for (int j = 0; j < firstBottle.length; j++) {
+            if (firstBottle[j] != secondBottle[j]) return firstBottle[j] - secondBottle[j];
+        }
+        return 0;
+    }
+
+    /**
+     * The bottles that share colors with each other, and the order and color ids that give them the smallest layers
+     */
+    static class Component {
+        int[] bottles; // original indices of the bottles
+        int[] order; // original index of the bottle at every position of the component
+        int[] mapping; // id of every original color id within the component, -1 for colors of other components
+        long[] signatures; // signature of every bottle, a bottle with a smaller signature always comes first
+        int[][] layers; // layers of the bottles in order with the colors renamed
+        int numOfColors;
+
+        Component(int numOfBottles) {
+            this.bottles = new int[numOfBottles];
+            this.order = new int[numOfBottles];
+            this.signatures = new long[numOfBottles];
+        }
+
+        int compareTo(Component other) {
+            if (layers.length != other.layers.length) return layers.length - other.layers.length;
+            for (int i = 0; i < layers.length; i++) {
+                int comparison = compare(layers[i], other.layers[i]);
+                if (comparison != 0) return comparison;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Rename the colors and reorder the bottles so that all states that differ by a bottle permutation and a color
+     * renaming get the same layers. The bottles are split into components that share colors, every component is
+     * relabeled on its own and the components are sorted by their relabeled layers, so the colors of a component
+     * are numbered after the colors of the components before it.
+     *
+     * @param originalIds  color ids of the layers of every bottle
+     * @param colorMapping filled with the new id of every color id
+     * @return the original index of the bottle at every position
+     */
+    static int[] relabelComponents(int[][] originalIds, int[] colorMapping) {
+        int numOfIds = colorMapping.length;
+        // union the colors of every bottle
+        int[] colorParent = identityOrder(numOfIds);
+        for (int[] bottle : originalIds) {
+            int firstColor = firstColor(bottle);
+            for (int id : bottle) {
+                if (id != 0) {
+                    colorParent[find(colorParent, id)] = find(colorParent, firstColor);
+                }
+            }
+        }
+
+        // group the bottles by the root of their colors, every empty bottle is a component of its own
+        int[] componentOfBottle = new int[originalIds.length];
+        int[] componentOfRoot = new int[numOfIds];
+        Arrays.fill(componentOfRoot, -1);
+        int numOfComponents = 0;
+        for (int i = 0; i < originalIds.length; i++) {
+            int firstColor = firstColor(originalIds[i]);
+            if (firstColor == 0) {
+                componentOfBottle[i] = numOfComponents++;
+            } else {
+                int root = find(colorParent, firstColor);
+                if (componentOfRoot[root] == -1) componentOfRoot[root] = numOfComponents++;
+                componentOfBottle[i] = componentOfRoot[root];
+            }
+        }
+        int[] componentSizes = new int[numOfComponents];
+        for (int component : componentOfBottle) {
+            componentSizes[component]++;
+        }
+
+        long[] signatures = bottleSignatures(originalIds, numOfIds);
+        Component[] components = new Component[numOfComponents];
+        for (int c = 0; c < numOfComponents; c++) {
+            components[c] = new Component(componentSizes[c]);
+        }
+        int[] sizes = new int[numOfComponents];
+        for (int i = 0; i < originalIds.length; i++) {
+            Component component = components[componentOfBottle[i]];
+            component.signatures[sizes[componentOfBottle[i]]] = signatures[i];
+            component.bottles[sizes[componentOfBottle[i]]++] = i;
+        }
+        for (Component component : components) {
+            smallestLayers(originalIds, component, numOfIds);
+        }
+        Arrays.sort(components, Component::compareTo);
+
+        // number the colors of the components one after the other
+        int[] bottleOrder = new int[originalIds.length];
+        Arrays.fill(colorMapping, -1);
+        colorMapping[0] = 0;
+        int position = 0;
+        int nextId = 1;
+        for (Component component : components) {
+            for (int bottle : component.order) {
+                bottleOrder[position++] = bottle;
+            }
+            for (int id = 1; id < numOfIds; id++) {
+                if (component.mapping[id] > 0) colorMapping[id] = nextId - 1 + component.mapping[id];
+            }
+            nextId += component.numOfColors;
+        }
+
+        // colors that do not appear in the state keep the remaining ids in their original order
+        for (int id = 1; id < numOfIds; id++) {
+            if (colorMapping[id] == -1) colorMapping[id] = nextId++;
+        }
+        return bottleOrder;
+    }
+
+    /**
+     * Hash every bottle by where its colors are found in the whole state, the hashes do not depend on the names of the
+     * colors or the order of the bottles. Ordering the bottles by them first leaves few ties for the relabeling to try.
+     */
+    static long[] bottleSignatures(int[][] originalIds, int numOfIds) {
+        long[] signatures = new long[originalIds.length];
+        for (int i = 0; i < originalIds.length; i++) {
+            signatures[i] = firstColor(originalIds[i]) == 0 ? 0 : 1;
+        }
+        long[] colorSignatures = new long[numOfIds];
+        for (int round = 0; round < 2; round++) {
+            // a color is hashed by the signatures of the bottles and the layers it is found at
+            Arrays.fill(colorSignatures, 0);
+            for (int i = 0; i < originalIds.length; i++) {
+                for (int j = 0; j < originalIds[i].length; j++) {
+                    colorSignatures[originalIds[i][j]] += HeuristicCache.mix(signatures[i] * 0x9E3779B97F4A7C15L + j + 1);
+                }
+            }
+            colorSignatures[0] = 0;
+
+            // a bottle is hashed by the signatures of its colors from the top layer to the bottom layer
+            for (int i = 0; i < originalIds.length; i++) {
+                long signature = 0;
+                for (int id : originalIds[i]) {
+                    signature = HeuristicCache.mix(signature * 31 + colorSignatures[id]);
+                }
+                signatures[i] = signature;
+            }
+        }
+        return signatures;
+    }
+
+    static int firstColor(int[] bottle) {
+        for (int id : bottle) {
+            if (id != 0) return id;
+        }
+        return 0;
+    }
+
+    static int find(int[] parent, int id) {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+
+    /**
+     * Find the order and color ids of the bottles of a component that give the lexicographically smallest layers,
+     * among the orders that sort the bottles by their signatures. Colors are numbered in order of first appearance,
+     * so at every position only the bottles that get the smallest layers with the colors numbered so far can come next,
+     * the search only branches when several bottles tie.
+     */
+    static void smallestLayers(int[][] originalIds, Component component, int numOfIds) {
+        int[] mapping = new int[numOfIds];
+        Arrays.fill(mapping, -1);
+        mapping[0] = 0;
+        if (component.bottles.length == 1) {
+            // a bottle on its own, like an empty bottle or a bottle of colors no other bottle holds
+            int[] bottle = originalIds[component.bottles[0]];
+            component.layers = new int[][]{new int[bottle.length]};
+            relabel(bottle, mapping, 1, component.layers[0]);
+            component.order[0] = component.bottles[0];
+            for (int id : bottle) {
+                if (mapping[id] == -1) mapping[id] = ++component.numOfColors;
+            }
+            component.mapping = mapping;
+            return;
+        }
+        extend(originalIds, component, new boolean[component.bottles.length], 0, new int[component.bottles.length],
+                mapping, 1, new int[component.bottles.length][]);
+    }
+
+    static void extend(int[][] originalIds, Component component, boolean[] isPlaced, int position, int[] order,
+                       int[] mapping, int nextId, int[][] layers) {
+        int[] bottles = component.bottles;
+        if (position == bottles.length) {
+            if (component.layers == null || compareLayers(layers, component.layers, position) < 0) {
+                component.layers = new int[layers.length][];
+                for (int i = 0; i < layers.length; i++) {
+                    component.layers[i] = layers[i].clone();
+                }
+                System.arraycopy(order, 0, component.order, 0, order.length);
+                component.mapping = mapping.clone();
+                component.numOfColors = nextId - 1;
+            }
+            return;
+        }
+
+        // the bottles of the smallest signature that get the smallest layers at this position, new colors numbered from nextId
+        long smallestSignature = Long.MAX_VALUE;
+        for (int k = 0; k < bottles.length; k++) {
+            if (!isPlaced[k]) smallestSignature = Math.min(smallestSignature, component.signatures[k]);
+        }
+        int bottleCapacity = originalIds[0].length;
+        int[] smallestLayers = null;
+        int[] relabeled = new int[bottleCapacity];
+        int[] candidates = new int[bottles.length];
+        int numOfCandidates = 0;
+        for (int k = 0; k < bottles.length; k++) {
+            if (isPlaced[k] || component.signatures[k] != smallestSignature) continue;
+            relabel(originalIds[bottles[k]], mapping, nextId, relabeled);
+            int comparison = smallestLayers == null ? -1 : compare(relabeled, smallestLayers);
+            if (comparison < 0) {
+                int[] previousSmallestLayers = smallestLayers;
+                smallestLayers = relabeled;
+                relabeled = previousSmallestLayers == null ? new int[bottleCapacity] : previousSmallestLayers;
+                numOfCandidates = 0;
+            }
+            if (comparison <= 0) {
+                candidates[numOfCandidates++] = k;
+            }
+        }
+        layers[position] = smallestLayers;
+
+        // stop if this order can not give smaller layers than the best order found so far
+        if (component.layers != null && compareLayers(layers, component.layers, position + 1) > 0) return;
+
+        for (int c = 0; c < numOfCandidates; c++) {
+            int k = candidates[c];
+            if (isEquivalentToEarlierCandidate(originalIds, bottles, isPlaced, mapping, candidates, c)) continue;
+
+            int[] bottle = originalIds[bottles[k]];
+            int candidateNextId = nextId;
+            for (int id : bottle) {
+                if (mapping[id] == -1) mapping[id] = candidateNextId++;
+            }
+            isPlaced[k] = true;
+            order[position] = bottles[k];
+            layers[position] = smallestLayers;
+
+            extend(originalIds, component, isPlaced, position + 1, order, mapping, candidateNextId, layers);
+
+            isPlaced[k] = false;
+            for (int id : bottle) {
+                if (mapping[id] >= nextId) mapping[id] = -1;
+            }
+        }
+    }
+
+    /**
+     * Rename the layers of a bottle with the colors numbered so far, its new colors numbered from nextId in order of appearance
+     */
+    static void relabel(int[] bottle, int[] mapping, int nextId, int[] relabeled) {
+        for (int j = 0; j < bottle.length; j++) {
+            int id = bottle[j];
+            if (mapping[id] != -1) {
+                relabeled[j] = mapping[id];
+            } else {
+                // a new color gets the id of its first layer in this bottle
+                int first = 0;
+                while (bottle[first] != id) first++;
+                relabeled[j] = first == j ? nextId++ : relabeled[first];
+            }
+        }
+    }
+
+    /**
+     * Whether placing a candidate bottle next leads to the same layers as placing an earlier candidate:
+     * both hold the same colors, or the colors they would number are not held by any other bottle left to place
+     */
+    static boolean isEquivalentToEarlierCandidate(int[][] originalIds, int[] bottles, boolean[] isPlaced, int[] mapping,
+                                                  int[] candidates, int candidate) {
+        int isSelfContained = -1; // not known yet, most candidates have no earlier candidate to compare with
+        for (int c = 0; c < candidate; c++) {
+            if (Arrays.equals(originalIds[bottles[candidates[c]]], originalIds[bottles[candidates[candidate]]])) return true;
+            if (isSelfContained == -1) isSelfContained = isSelfContained(originalIds, bottles, isPlaced, mapping, candidates[candidate]) ? 1 : 0;
+            if (isSelfContained == 1 && isSelfContained(originalIds, bottles, isPlaced, mapping, candidates[c])) return true;
+        }
+        return false;
+    }
+
+    static boolean isSelfContained(int[][] originalIds, int[] bottles, boolean[] isPlaced, int[] mapping, int candidate) {
+        for (int id : originalIds[bottles[candidate]]) {
+            if (mapping[id] != -1) continue;
+            for (int k = 0; k < bottles.length; k++) {
+                if (k != candidate && !isPlaced[k] && indexOf(originalIds[bottles[k]], id) != -1) return false;
+            }
+        }
+        return true;
+    }
+
+    static int indexOf(int[] ids, int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) return i;
+        }
+        return -1;
+    }
+
+    static int compareLayers(int[][] firstLayers, int[][] secondLayers, int numOfBottles) {
+        for (int i = 0; i < numOfBottles; i++) {
+            int comparison = compare(firstLayers[i], secondLayers[i]);
+            if (comparison != 0) return comparison;
+        }
+        return 0;
+    }
+
+    static int[][] applyMapping(int[][] ids, int[] mapping) {
+        int[][] mapped = new int[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            mapped[i] = new int[ids[i].length];
+            for (int j = 0; j < ids[i].length; j++) {
+                mapped[i][j] = mapping[ids[i][j]];
+            }
+        }
+        return mapped;
+    }
+}
@@ -0,0 +1,135 @@
+package code;
+
+/**
+ * The canonical form of a whole puzzle, used to recognise puzzles that are a renaming of colors
+ * and a reordering of bottles of each other. It translates plans and colors between the bottle
+ * indices and color letters of the caller and those of the canonical puzzle.
+ */
+public class CanonicalInstance {
+
+    // letters of the first canonical colors, 'e' is skipped as it marks an empty layer
+    static final String CANONICAL_COLORS = "abcdfghijklmnopqrstuvwxyz";
+    // the colors after the letters take the characters from U+0100 up to the surrogates, none of them is a separator of the puzzle format
+    static final char FIRST_EXTRA_COLOR = '\u0100';
+    static final int MAX_NUM_OF_COLORS = CANONICAL_COLORS.length() + (Character.MIN_SURROGATE - FIRST_EXTRA_COLOR);
+
+    CanonicalForm canonicalForm;
+    WaterSearchState state;
+    String key;
+
+    /**
+     * Compute the canonical instance of a puzzle
+     *
+     * @param initialState the puzzle in the format accepted by {@link WaterSortSearch#solve}
+     */
+    public CanonicalInstance(String initialState) {
+        this(WaterSortSearch.parseState(initialState));
+    }
+
+    public CanonicalInstance(WaterSearchState state) {
+        if (state.colorDictionary.numOfColors() > MAX_NUM_OF_COLORS) {
+            throw new IllegalArgumentException("A canonical puzzle can have at most " + MAX_NUM_OF_COLORS + " colors, got " + state.colorDictionary.numOfColors());
+        }
+        this.state = state;
+        this.canonicalForm = new CanonicalForm(state, true);
+
+        StringBuilder result = new StringBuilder();
+        result.append(state.numOfBottles).append(";").append(state.bottleCapacity).append(";");
+        for (int position = 0; position < state.numOfBottles; position++) {
+            for (int j = 0; j < state.bottleCapacity; j++) {
+                result.append(canonicalColor(canonicalForm.layerIds[position][j]));
+                result.append(j != state.bottleCapacity - 1 ? "," : ";");
+            }
+        }
+        this.key = result.toString();
+    }
+
+    /**
+     * The canonical puzzle, equal for all puzzles that are isomorphic to this one
+     *
+     * @return the canonical puzzle in the format accepted by {@link WaterSortSearch#solve}
+     */
+    public String key() {
+        return key;
+    }
+
+    /**
+     * Translate a plan of the canonical puzzle to the bottle indices of this puzzle
+     *
+     * @param canonicalSolution a solution string (plan;pathCost;nodesExpanded) or a plan of the canonical puzzle
+     * @return the same solution where every pour refers to the bottles of this puzzle
+     */
+    public String toOriginalSolution(String canonicalSolution) {
+        return translate(canonicalSolution, true);
+    }
+
+    /**
+     * Translate a plan of this puzzle to the bottle indices of the canonical puzzle
+     *
+     * @param solution a solution string (plan;pathCost;nodesExpanded) or a plan of this puzzle
+     * @return the same solution where every pour refers to the bottles of the canonical puzzle
+     */
+    public String toCanonicalSolution(String solution) {
+        return translate(solution, false);
+    }
+
+    /**
+     * Get the color of this puzzle that a canonical color stands for
+     *
+     * @param canonicalColor a color letter of the canonical puzzle
+     * @return the color letter of this puzzle
+     */
+    public char toOriginalColor(char canonicalColor) {
+        if (canonicalColor == ColorDictionary.EMPTY) return ColorDictionary.EMPTY;
+        int canonicalId = canonicalId(canonicalColor);
+        for (int id = 1; id < canonicalForm.colorMapping.length; id++) {
+            if (canonicalForm.colorMapping[id] == canonicalId) return state.colorDictionary.color(id);
+        }
+        throw new IllegalArgumentException("Unknown color: " + canonicalColor);
+    }
+
+    /**
+     * Get the canonical color of a color of this puzzle
+     *
+     * @param color a color letter of this puzzle
+     * @return the color letter of the canonical puzzle
+     */
+    public char toCanonicalColor(char color) {
+        return canonicalColor(canonicalForm.colorMapping[state.colorDictionary.id(color)]);
+    }
+
+    static char canonicalColor(int canonicalId) {
+        if (canonicalId == 0) return ColorDictionary.EMPTY;
+        if (canonicalId <= CANONICAL_COLORS.length()) return CANONICAL_COLORS.charAt(canonicalId - 1);
+        return (char) (FIRST_EXTRA_COLOR + canonicalId - CANONICAL_COLORS.length() - 1);
+    }
+
+    static int canonicalId(char canonicalColor) {
+        if (canonicalColor >= FIRST_EXTRA_COLOR) return canonicalColor - FIRST_EXTRA_COLOR + CANONICAL_COLORS.length() + 1;
+        return CANONICAL_COLORS.indexOf(canonicalColor) + 1;
+    }
+
+    String translate(String solution, boolean toOriginal) {
+        int planEnd = solution.indexOf(';');
+        String plan = planEnd == -1 ? solution : solution.substring(0, planEnd);
+        if (plan.isEmpty() || plan.equals("NOSOLUTION")) {
+            return solution;
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (String operator : plan.split(",")) {
+            String[] parsedOperation = operator.split("_"); // ["pour", firstBottleIndex, secondBottleIndex]
+            int firstBottleIndex = Integer.parseInt(parsedOperation[1]);
+            int secondBottleIndex = Integer.parseInt(parsedOperation[2]);
+
+            if (!result.isEmpty()) result.append(",");
+            result.append("pour_").append(translateBottle(firstBottleIndex, toOriginal)).append("_").append(translateBottle(secondBottleIndex, toOriginal));
+        }
+
+        return planEnd == -1 ? result.toString() : result + solution.substring(planEnd);
+    }
+
+    int translateBottle(int bottleIndex, boolean toOriginal) {
+        return toOriginal ? canonicalForm.originalBottle(bottleIndex) : canonicalForm.canonicalPosition(bottleIndex);
+    }
+}
@@ -0,0 +1,85 @@
+package code;
+
+import java.util.Arrays;
+
+/**
+ * Maps the color letters of a problem to small integer ids so a layer can be stored in a few bits.
+ * The empty layer 'e' always has id 0, colors are numbered in the order they were added.
+ */
+public class ColorDictionary {
+
+    public static final char EMPTY = 'e';
+
+    char[] colors; // color of every id
+    int[] ids; // id of every color letter, indexed by the letter
+    int bitsPerLayer;
+    int layersPerWord;
+
+    /**
+     * Create a dictionary for the given colors
+     *
+     * @param distinctColors the distinct color letters of the problem (excluding 'e')
+     */
+    public ColorDictionary(char[] distinctColors) {
+        this.colors = new char[distinctColors.length + 1];
+        this.colors[0] = EMPTY;
+
+        char maximumColor = EMPTY;
+        for (char color : distinctColors) {
+            maximumColor = (char) Math.max(maximumColor, color);
+        }
+
+        this.ids = new int[maximumColor + 1];
+        Arrays.fill(this.ids, -1);
+        this.ids[EMPTY] = 0;
+
+        for (int i = 0; i < distinctColors.length; i++) {
+            this.colors[i + 1] = distinctColors[i];
+            this.ids[distinctColors[i]] = i + 1;
+        }
+
+        // enough bits to hold every id, layers never span two words
+        this.bitsPerLayer = Math.max(1, 32 - Integer.numberOfLeadingZeros(distinctColors.length));
+        this.layersPerWord = 64 / bitsPerLayer;
+    }
+
+    /**
+     * Get the id of a color
+     *
+     * @param color a color letter
+     * @return the id of the color
+     */
+    public int id(char color) {
+        if (color >= ids.length || ids[color] == -1) {
+            throw new IllegalArgumentException("Unknown color: " + color);
+        }
+        return ids[color];
+    }
+
+    /**
+     * Get the color of an id
+     *
+     * @param id a color id
+     * @return the color letter
+     */
+    public char color(int id) {
+        return colors[id];
+    }
+
+    /**
+     * Number of colors in the dictionary (excluding 'e')
+     **/
+    public int numOfColors() {
+        return colors.length - 1;
+    }
+
+    /**
+     * Number of 64-bit words needed to pack the given number of layers
+     *
+     * @param numOfLayers total number of layers in a state
+     * @return number of words
+     */
+    public int numOfWords(int numOfLayers) {
+        return (numOfLayers + layersPerWord - 1) / layersPerWord;
+    }
+}
@@ -0,0 +1,62 @@
+package code;
+
+import java.util.ArrayDeque;
+
+/**
+ * A first-in-first-out or last-in-first-out frontier on top of a circular array,
+ * so both inserting and removing a node are O(1) without shifting the rest of the frontier.
+ */
+public class DequeFrontier implements Frontier {
+
+    /**
+     * The order in which nodes are removed
+     */
+    public enum Order {
+        FIFO, // queue, used by breadth first search
+        LIFO  // stack, used by depth first search
+    }
+
+    ArrayDeque<Node> nodes;
+    Order order;
+
+    public DequeFrontier(Order order) {
+        this.nodes = new ArrayDeque<>();
+        this.order = order;
+    }
+
+    @Override
+    public boolean add(Node node) {
+        if (order == Order.FIFO) {
+            nodes.addLast(node); // add to the end of the queue
+        } else {
+            nodes.addFirst(node); // add to the beginning of the queue
+        }
+        return true;
+    }
+
+    @Override
+    public Node remove() {
+        return nodes.removeFirst();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+
+        for (Node node : nodes) {
+            result.append(node.toString()).append(" ");
+        }
+
+        return result.toString().trim();
+    }
+}
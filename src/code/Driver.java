@@ -2,6 +2,7 @@ package code;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
+import java.util.EnumSet;
 import java.util.function.Supplier;
 
 /**
@@ -10,6 +11,9 @@ import java.util.function.Supplier;
 public class Driver {
 
     public static void main(String[] args) throws InterruptedException {
+        // measure with the pruning rules that keep a solution of every puzzle
+        WaterSortSearch.pruningRules = EnumSet.of(PruningRule.UNIFORM_SOURCE_INTO_EMPTY, PruningRule.DUPLICATE_EMPTY_TARGET);
+
         String initialState = "8;" +
                 "6;" +
                 "g,g,g,r,r,r;" +
@@ -32,19 +36,25 @@ public class Driver {
 //        System.out.println(WaterSortSearch.solve(initialState, "DF", false));
 //        System.out.println(WaterSortSearch.solve(initialState, "UC", false));
 //        System.out.println(WaterSortSearch.solve(initialState, "ID", false));
+//        System.out.println(WaterSortSearch.solve(initialState, "BD", false));
 //        System.out.println(WaterSortSearch.solve(initialState, "GR1", false));
 //        System.out.println(WaterSortSearch.solve(initialState, "GR2", false));
 //        System.out.println(WaterSortSearch.solve(initialState, "AS1", false));
 //        System.out.println(WaterSortSearch.solve(initialState, "AS2", false));
+//        System.out.println(WaterSortSearch.solve(initialState, "IDA1", false));
+//        System.out.println(WaterSortSearch.solve(initialState, "IDA2", false));
 
 //        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "BF", false), "Breadth First Search");
         measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "DF", true), "Depth First Search");
 //        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "UC", false), "Uniform Cost Search");
 //        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "ID", false), "Iterative Deepening Search");
+//        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "BD", false), "Bidirectional Search");
 //        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "GR1", true), "Greedy Search 1");
 //        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "GR2", false), "Greedy Search 2");
 //        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "AS1", false), "A* Search 1");
 //        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "AS2", false), "A* Search 2");
+//        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "IDA1", false), "Iterative Deepening A* Search 1");
+//        measureAndPrintPerformance(() -> WaterSortSearch.solve(initialState, "IDA2", false), "Iterative Deepening A* Search 2");
     }
 
     private static void measureAndPrintPerformance(Supplier<String> strategy, String strategyName) {
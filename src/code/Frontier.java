@@ -0,0 +1,33 @@
+package code;
+
+/**
+ * The set of generated but not yet expanded nodes of a search.
+ * Each strategy decides the expansion order by the frontier it hands to {@link GenericSearch#generalSearch}.
+ */
+public interface Frontier {
+
+    /**
+     * Insert a node into the frontier
+     *
+     * @param node the node to insert
+     * @return whether the node was actually inserted (a frontier may reject a node, e.g. beyond a depth limit)
+     */
+    boolean add(Node node);
+
+    /**
+     * Remove the next node to be expanded
+     *
+     * @return the next node in the expansion order
+     */
+    Node remove();
+
+    /**
+     * Checks if frontier is empty
+     **/
+    boolean isEmpty();
+
+    /**
+     * Number of nodes currently in the frontier
+     **/
+    int size();
+}
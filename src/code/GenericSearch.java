@@ -2,7 +2,7 @@ package code;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
 
 import static java.lang.Math.max;
 
@@ -11,17 +11,18 @@ public class GenericSearch {
     // <editor-fold desc="General Functions">
 
     /**
-     * Calculate the cost of pouring from the first bottle into the second bottle.
+     * Create a queue containing only the root node.
      *
-     * @param root the current state
+     * @param root     the root node
+     * @param frontier the frontier that decides the expansion order of the queue
+     * @param problem  general search problem, decides how duplicate states are detected
      * @return a queue
      */
-    public static BaseQueue makeQueue(Node root) {
-        BaseQueue queue = new BaseQueue();
+    public static BaseQueue makeQueue(Node root, Frontier frontier, Problem problem) {
+        BaseQueue queue = new BaseQueue(frontier, problem);
         List<Node> nodes = new ArrayList<>();
         nodes.add(root);
-        BiConsumer<ArrayList<Node>, Node> queuingFunction = ArrayList::add; // add to the end of the queue
-        queue.enqueue(nodes, queuingFunction); // initially first node is inserted at the beginning of the queue
+        queue.enqueue(nodes); // initially first node is inserted at the beginning of the queue
         return queue;
     }
 
@@ -36,7 +37,7 @@ public class GenericSearch {
         return new Node(
                 initialState,
                 null,
-                "",
+                -1,
                 0,
                 0
         );
@@ -45,16 +46,20 @@ public class GenericSearch {
     /**
      * Perform a general search algorithm
      *
-     * @param problem         general search problem
-     * @param queuingFunction a function to decide how to enqueue the nodes
+     * @param problem  general search problem
+     * @param frontier the frontier that decides the expansion order
      * @return a goal node
      */
-    public static Node generalSearch(Problem problem, BiConsumer<ArrayList<Node>, Node> queuingFunction) {
+    public static Node generalSearch(Problem problem, Frontier frontier) {
 
-        BaseQueue queue = makeQueue(makeNode(problem.initialState));
+        BaseQueue queue = makeQueue(makeNode(problem.initialState), frontier, problem);
+        problem.peakFrontierSize = max(problem.peakFrontierSize, frontier.size());
 
         while (true) {
-            if (queue.isEmpty()) return null;
+            if (queue.isEmpty()) {
+                problem.visitedStatesStatistics = queue.visitedStates.statistics();
+                return null;
+            }
 
             Node node = queue.dequeue(); // get the first node in the queue
 
@@ -62,6 +67,7 @@ public class GenericSearch {
             if (problem.goalTest(node.state)) {
 //                if (WaterSortSearch.visualize)
 //                    System.out.println(ConsoleColors.GREEN_BOLD + "Goal State: " + ConsoleColors.RESET + node.state);
+                problem.visitedStatesStatistics = queue.visitedStates.statistics();
                 return node; // return the goal node
             }
 
@@ -69,7 +75,8 @@ public class GenericSearch {
 //            if (WaterSortSearch.visualize)
 //                System.out.println(ConsoleColors.RED_BOLD + "Current State: " + ConsoleColors.RESET + node.state);
 
-            queue.enqueue(problem.expand(node), queuingFunction); // add the children nodes to the queue
+            queue.enqueue(problem.expand(node)); // add the children nodes to the queue
+            problem.peakFrontierSize = max(problem.peakFrontierSize, frontier.size());
         }
     }
 
@@ -84,8 +91,11 @@ public class GenericSearch {
      * @return a goal node
      */
     public static Node depthFirstSearch(Problem problem) {
-        BiConsumer<ArrayList<Node>, Node> queuingFunction = ArrayList::addFirst; // add to the beginning of the queue
-        return generalSearch(problem, queuingFunction);
+        if (problem.supportsInPlaceMoves()) {
+            return InPlaceDepthFirstSearch.search(problem, Integer.MAX_VALUE); // apply and undo moves on a single state
+        }
+        Frontier frontier = new DequeFrontier(DequeFrontier.Order.LIFO); // add to the beginning of the queue
+        return generalSearch(problem, frontier);
     }
 
 
@@ -96,8 +106,42 @@ public class GenericSearch {
      * @return a goal node
      */
     public static Node breadthFirstSearch(Problem problem) {
-        BiConsumer<ArrayList<Node>, Node> queuingFunction = ArrayList::addLast; // add to the end of the queue
-        return generalSearch(problem, queuingFunction);
+        if (NodePoolSearch.canSearch(problem)) {
+            return NodePoolSearch.search(problem, NodePoolSearch.Priority.FIFO, BucketFrontier.TieBreaking.FIFO); // nodes as indices into a pool
+        }
+        Frontier frontier = new DequeFrontier(DequeFrontier.Order.FIFO); // add to the end of the queue
+        return generalSearch(problem, frontier);
+    }
+
+
+    /**
+     * Performs Breadth First Search expanding the nodes of every depth in parallel,
+     * it finds the same goal node after expanding the same nodes as the sequential search
+     *
+     * @param problem     general search problem, its expand, goalTest and stateKey must be safe to call from several threads
+     * @param parallelism number of threads that expand the nodes of a depth
+     * @param layers      a list to add the size and number of expanded nodes of every depth to (can be null)
+     * @return a goal node
+     */
+    public static Node breadthFirstSearch(Problem problem, int parallelism, List<ParallelBreadthFirstSearch.Layer> layers) {
+        return ParallelBreadthFirstSearch.search(problem, parallelism, layers);
+    }
+
+
+    /**
+     * Performs Bidirectional Breadth First Search from the initial state and from all the goal states,
+     * falls back to breadth first search if the problem can not search backwards or has too many goal states
+     *
+     * @param problem            general search problem
+     * @param maxNumOfGoalStates the largest number of goal states to search backwards from
+     * @return a goal node
+     */
+    public static Node bidirectionalSearch(Problem problem, int maxNumOfGoalStates) {
+        List<State> goalStates = problem.supportsBackwardSearch() ? problem.goalStates(maxNumOfGoalStates) : null;
+        if (goalStates == null) {
+            return breadthFirstSearch(problem);
+        }
+        return BidirectionalSearch.search(problem, goalStates);
     }
 
 
@@ -108,17 +152,12 @@ public class GenericSearch {
      * @return a goal node
      */
     public static Node uniformCostSearch(Problem problem) {
-        BiConsumer<ArrayList<Node>, Node> queuingFunction = (queue, node) -> {
-            int index = 0;
-            for (Node n : queue) {
-                if (n.pathCost > node.pathCost) {
-                    break;
-                }
-                index++;
-            }
-            queue.add(index, node); // add the node to the queue based on the path cost
-        };
-        return generalSearch(problem, queuingFunction);
+        if (NodePoolSearch.canSearch(problem)) {
+            return NodePoolSearch.search(problem, NodePoolSearch.Priority.PATH_COST, BucketFrontier.TieBreaking.FIFO); // nodes as indices into a pool
+        }
+        // nodes are ordered based on the path cost, nodes of equal cost in insertion order
+        Frontier frontier = new BucketFrontier(node -> node.pathCost, BucketFrontier.TieBreaking.FIFO);
+        return generalSearch(problem, frontier);
     }
 
     /**
@@ -127,6 +166,7 @@ public class GenericSearch {
      * @param problem general search problem
      */
     public static Node iterativeDeepeningSearch(Problem problem) {
+        problem.treeDepth = 0; // deepest depth reached, updated by the depth limited searches
         int depthLimit = 0;
         while (true) {
             Node result = depthLimitedSearch(problem, depthLimit);
@@ -150,13 +190,21 @@ public class GenericSearch {
 //        if (WaterSortSearch.visualize)
 //            System.out.println(ConsoleColors.PURPLE + "limit: " + ConsoleColors.RESET + depthLimit);
 
-        BiConsumer<ArrayList<Node>, Node> queuingFunction = (queue, node) -> {
-            if (node.depth <= depthLimit) { // check if the depth is within the limit
-                queue.addFirst(node); // add to the beginning of the queue
+        if (problem.supportsInPlaceMoves()) {
+            return InPlaceDepthFirstSearch.search(problem, depthLimit); // apply and undo moves on a single state
+        }
+
+        Frontier frontier = new DequeFrontier(DequeFrontier.Order.LIFO) {
+            @Override
+            public boolean add(Node node) {
+                if (node.depth > depthLimit) { // check if the depth is within the limit
+                    return false;
+                }
                 problem.treeDepth = max(problem.treeDepth, node.depth); // update the tree depth
+                return super.add(node); // add to the beginning of the queue
             }
         };
-        return generalSearch(problem, queuingFunction);
+        return generalSearch(problem, frontier);
     }
 
     // </editor-fold>
@@ -170,18 +218,34 @@ public class GenericSearch {
      * @return a goal node
      */
     public static Node greedySearch(Problem problem) {
-        BiConsumer<ArrayList<Node>, Node> queuingFunction = (queue, node) -> {
-            node.setHeuristicCost(problem.heuristicCost(node.state)); // set the heuristic cost
-            int index = 0;
-            for (Node n : queue) {
-                if (n.heuristicCost > node.heuristicCost) {
-                    break;
-                }
-                index++;
-            }
-            queue.add(index, node); // add the node to the queue based on the heuristic cost
-        };
-        return generalSearch(problem, queuingFunction);
+        return greedySearch(problem, BucketFrontier.TieBreaking.FIFO);
+    }
+
+    /**
+     * Performs Greedy Best First Search
+     *
+     * @param problem     general search problem
+     * @param tieBreaking the order of expanding nodes of equal heuristic cost
+     * @return a goal node
+     */
+    public static Node greedySearch(Problem problem, BucketFrontier.TieBreaking tieBreaking) {
+        if (NodePoolSearch.canSearch(problem)) {
+            return NodePoolSearch.search(problem, NodePoolSearch.Priority.HEURISTIC_COST, tieBreaking); // nodes as indices into a pool
+        }
+        // add the node to the queue based on the heuristic cost
+        Frontier frontier = new InformedFrontier(problem, node -> node.heuristicCost, tieBreaking);
+        return generalSearch(problem, frontier);
+    }
+
+    /**
+     * Performs Iterative Deepening A* Search
+     *
+     * @param problem    general search problem, must support in-place moves
+     * @param iterations a list to add the threshold and number of expanded nodes of every iteration to (can be null)
+     * @return a goal node
+     */
+    public static Node iterativeDeepeningAStarSearch(Problem problem, List<IterativeDeepeningAStarSearch.Iteration> iterations) {
+        return IterativeDeepeningAStarSearch.search(problem, iterations);
     }
 
     /**
@@ -191,18 +255,59 @@ public class GenericSearch {
      * @return a goal node
      */
     public static Node aStarSearch(Problem problem) {
-        BiConsumer<ArrayList<Node>, Node> queuingFunction = (queue, node) -> {
-            node.setHeuristicCost(problem.heuristicCost(node.state)); // set the heuristic cost
-            int index = 0;
-            for (Node n : queue) {
-                if (n.pathCost + n.heuristicCost > node.pathCost + node.heuristicCost) {
-                    break;
-                }
-                index++;
+        return aStarSearch(problem, BucketFrontier.TieBreaking.FIFO);
+    }
+
+    /**
+     * Performs A* Search
+     *
+     * @param problem     general search problem
+     * @param tieBreaking the order of expanding nodes of equal path cost + heuristic cost
+     * @return a goal node
+     */
+    public static Node aStarSearch(Problem problem, BucketFrontier.TieBreaking tieBreaking) {
+        if (NodePoolSearch.canSearch(problem)) {
+            return NodePoolSearch.search(problem, NodePoolSearch.Priority.PATH_AND_HEURISTIC_COST, tieBreaking); // nodes as indices into a pool
+        }
+        // add the node to the queue based on the path cost + heuristic cost
+        Frontier frontier = new InformedFrontier(problem, node -> node.pathCost + node.heuristicCost, tieBreaking);
+        return generalSearch(problem, frontier);
+    }
+
+    /**
+     * Performs A* Search on several threads, every state is expanded by the thread that owns its hash
+     *
+     * @param problem      general search problem, its expand, goalTest, heuristicCost and stateKey must be safe to call from several threads
+     * @param numOfWorkers number of worker threads
+     * @param workerLoads  a list to add the work done by every worker to (can be null)
+     * @return a goal node
+     */
+    public static Node aStarSearch(Problem problem, int numOfWorkers, List<ParallelAStarSearch.WorkerLoad> workerLoads) {
+        return ParallelAStarSearch.search(problem, numOfWorkers, workerLoads);
+    }
+
+    /**
+     * A bucket frontier that sets the heuristic cost of a node once before it is added,
+     * and drops the nodes from which no goal can be reached
+     */
+    static class InformedFrontier extends BucketFrontier {
+        Problem problem;
+
+        InformedFrontier(Problem problem, ToIntFunction<Node> priorityFunction, TieBreaking tieBreaking) {
+            super(priorityFunction, tieBreaking);
+            this.problem = problem;
+        }
+
+        @Override
+        public boolean add(Node node) {
+            if (node.heuristicCost == -1) {
+                node.setHeuristicCost(problem.heuristicCost(node)); // set the heuristic cost once
             }
-            queue.add(index, node); // add the node to the queue based on the path cost + heuristic cost
-        };
-        return generalSearch(problem, queuingFunction);
+            if (node.heuristicCost == Problem.DEAD_END) {
+                return false;
+            }
+            return super.add(node);
+        }
     }
     // </editor-fold>
 
@@ -0,0 +1,110 @@
+package code;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bounded cache of heuristic costs by state fingerprint. Every slot is a single long holding the cost and a tag,
+ * the highest 48 bits of the fingerprint. The slots are an AtomicLongArray, so a slot is always read and written whole
+ * (a plain long may be torn, JLS 17.7) and the cache can be shared by several threads without locking. The slot is
+ * chosen by a mix of the whole fingerprint. A new cost replaces the one in its slot, so the cache never grows. Two
+ * states are confused if their fingerprints have equal highest 48 bits and mix to the same slot, which is likely only
+ * for fingerprints that differ in their lowest 16 bits alone.
+ */
+public class HeuristicCache {
+
+    static final int VALUE_BITS = 16;
+    static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+
+    AtomicLongArray slots; // (fingerprint tag << VALUE_BITS) | (cost + 1), 0 for an empty slot
+    int mask;
+
+    LongAdder hits = new LongAdder();
+    LongAdder misses = new LongAdder();
+    LongAdder nanosInHeuristic = new LongAdder();
+
+    /**
+     * Create a cache
+     *
+     * @param capacity number of slots, rounded up to a power of two, 0 to evaluate every state without caching
+     */
+    public HeuristicCache(int capacity) {
+        if (capacity > 0) {
+            int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+            this.slots = new AtomicLongArray(size);
+            this.mask = size - 1;
+        }
+    }
+
+    /**
+     * Get the heuristic cost of a state, evaluating it only if it is not in the cache
+     *
+     * @param state     the state for which to calculate its heuristic value
+     * @param heuristic the heuristic function
+     * @return the heuristic cost of the state
+     */
+    public int get(State state, ToIntFunction<State> heuristic) {
+        long fingerprint = state.fingerprint();
+        int index = 0;
+        long tag = 0;
+
+        if (slots != null) {
+            index = (int) mix(fingerprint) & mask;
+            tag = fingerprint >>> VALUE_BITS;
+            long slot = slots.getOpaque(index); // only the slot itself has to be whole, no ordering is needed
+            if (slot != 0 && slot >>> VALUE_BITS == tag) {
+                hits.increment();
+                return (int) (slot & VALUE_MASK) - 1;
+            }
+        }
+
+        misses.increment();
+        long start = System.nanoTime();
+        int cost = heuristic.applyAsInt(state);
+        nanosInHeuristic.add(System.nanoTime() - start);
+
+        if (slots != null && cost >= 0 && cost < VALUE_MASK) { // costs that do not fit in a slot are not cached
+            slots.setOpaque(index, (tag << VALUE_BITS) | (cost + 1));
+        }
+        return cost;
+    }
+
+    static long mix(long fingerprint) {
+        fingerprint ^= fingerprint >>> 33;
+        fingerprint *= 0xff51afd7ed558ccdL;
+        fingerprint ^= fingerprint >>> 33;
+        return fingerprint;
+    }
+
+    /**
+     * Get the statistics of the cache
+     */
+    public Statistics statistics() {
+        return new Statistics(slots == null ? 0 : slots.length(), hits.sum(), misses.sum(), nanosInHeuristic.sum());
+    }
+
+    public static class Statistics {
+        public final int capacity;
+        public final long hits;
+        public final long misses;
+        public final long nanosInHeuristic;
+
+        Statistics(int capacity, long hits, long misses, long nanosInHeuristic) {
+            this.capacity = capacity;
+            this.hits = hits;
+            this.misses = misses;
+            this.nanosInHeuristic = nanosInHeuristic;
+        }
+
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("capacity: %d, hits: %d, misses: %d, hit rate: %.2f%%, time in heuristic: %.3fms",
+                    capacity, hits, misses, 100 * hitRate(), nanosInHeuristic / 1e6);
+        }
+    }
+}
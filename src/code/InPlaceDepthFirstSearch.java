@@ -0,0 +1,125 @@
+package code;
+
+import java.util.Arrays;
+
+/**
+ * Depth first search on a single state that is changed by applying and undoing moves,
+ * instead of copying a state and creating a node for every child.
+ * Only the moves along the current path are kept (one array of accepted moves per depth),
+ * and nodes are created for the solution path once the goal is reached.
+ * It visits the states in the same order, with the same duplicate detection, as depth first search through generalSearch.
+ */
+public class InPlaceDepthFirstSearch {
+
+    Problem problem;
+    int depthLimit;
+    VisitedSet visitedStates;
+    State state;
+
+    // the accepted moves of every state on the current path, tried from the last one to the first like a stack
+    int[][] movesPerDepth = new int[16][];
+    int[] numOfMovesPerDepth = new int[16];
+    int[] nextMovePerDepth = new int[16];
+    int[] path = new int[16]; // the move applied at every depth of the current path
+    int numOfPendingMoves = 0; // accepted moves on the current path that were not tried yet
+
+    InPlaceDepthFirstSearch(Problem problem, int depthLimit) {
+        this.problem = problem;
+        this.depthLimit = depthLimit;
+        this.visitedStates = new VisitedSet(problem.visitedStatesStorage);
+        this.state = problem.initialState.copy();
+    }
+
+    /**
+     * Performs depth first search with a limited depth by applying and undoing moves on a single state
+     *
+     * @param problem    general search problem, must support in-place moves
+     * @param depthLimit maximum depth that the search can reach
+     * @return a goal node
+     */
+    public static Node search(Problem problem, int depthLimit) {
+        return new InPlaceDepthFirstSearch(problem, depthLimit).search();
+    }
+
+    Node search() {
+        problem.markVisited(visitedStates, state);
+        problem.peakFrontierSize = Math.max(problem.peakFrontierSize, 1); // the initial state waits like the root node of generalSearch
+        int depth = 0;
+
+        while (true) {
+            // check if the goal state is reached
+            if (problem.goalTest(state)) {
+                problem.visitedStatesStatistics = visitedStates.statistics();
+                return makePath(depth);
+            }
+
+            // if the goal state is not reached, expand the state and keep the children that were not visited
+            int[] moves = problem.expandMoves(state);
+            ensureDepth(depth, moves.length);
+            int numOfAcceptedMoves = 0;
+
+            if (depth + 1 <= depthLimit) { // check if the depth of the children is within the limit
+                for (int move : moves) {
+                    problem.applyMove(state, move);
+                    if (problem.markVisited(visitedStates, state)) {
+                        movesPerDepth[depth][numOfAcceptedMoves++] = move;
+                    }
+                    problem.undoMove(state, move);
+                }
+                if (numOfAcceptedMoves > 0) {
+                    problem.treeDepth = Math.max(problem.treeDepth, depth + 1); // update the tree depth
+                }
+            }
+            numOfMovesPerDepth[depth] = numOfAcceptedMoves;
+            nextMovePerDepth[depth] = numOfAcceptedMoves - 1; // the last accepted child is expanded first
+            numOfPendingMoves += numOfAcceptedMoves;
+            problem.peakFrontierSize = Math.max(problem.peakFrontierSize, numOfPendingMoves);
+
+            // go back up the path till a state with a remaining child is found, then go down to that child
+            while (nextMovePerDepth[depth] < 0) {
+                if (depth == 0) {
+                    problem.visitedStatesStatistics = visitedStates.statistics();
+                    return null;
+                }
+                depth--;
+                problem.undoMove(state, path[depth]);
+            }
+
+            int move = movesPerDepth[depth][nextMovePerDepth[depth]--];
+            numOfPendingMoves--;
+            problem.applyMove(state, move);
+            path[depth] = move;
+            depth++;
+        }
+    }
+
+    /**
+     * Make sure the arrays of a depth can hold the given number of moves
+     */
+    void ensureDepth(int depth, int numOfMoves) {
+        if (depth >= movesPerDepth.length) {
+            int newLength = movesPerDepth.length * 2;
+            movesPerDepth = Arrays.copyOf(movesPerDepth, newLength);
+            numOfMovesPerDepth = Arrays.copyOf(numOfMovesPerDepth, newLength);
+            nextMovePerDepth = Arrays.copyOf(nextMovePerDepth, newLength);
+            path = Arrays.copyOf(path, newLength);
+        }
+        if (movesPerDepth[depth] == null || movesPerDepth[depth].length < numOfMoves) {
+            movesPerDepth[depth] = new int[Math.max(numOfMoves, 16)];
+        }
+    }
+
+    /**
+     * Create the nodes of the current path by replaying its moves from the initial state
+     *
+     * @param depth length of the current path
+     * @return the node of the last state of the path
+     */
+    Node makePath(int depth) {
+        Node node = GenericSearch.makeNode(problem.initialState);
+        for (int i = 0; i < depth; i++) {
+            node = problem.makeChild(node, path[i]);
+        }
+        return node;
+    }
+}
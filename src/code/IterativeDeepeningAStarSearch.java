@@ -0,0 +1,150 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Iterative deepening A* (IDA*): repeated depth first searches bounded by path cost + heuristic cost,
+ * raising the bound to the smallest cost that exceeded it till a goal is found.
+ * It applies and undoes moves on a single state and only remembers the states of the current path,
+ * so its memory is linear in the depth of the search.
+ */
+public class IterativeDeepeningAStarSearch {
+
+    /**
+     * The bound and number of expanded nodes of a single iteration
+     */
+    public static class Iteration {
+        public final int threshold;
+        public final long nodesExpanded;
+
+        Iteration(int threshold, long nodesExpanded) {
+            this.threshold = threshold;
+            this.nodesExpanded = nodesExpanded;
+        }
+
+        @Override
+        public String toString() {
+            return "threshold: " + threshold + ", nodes expanded: " + nodesExpanded;
+        }
+    }
+
+    Problem problem;
+    State state;
+    HashSet<PackedState> statesOnPath; // states of the current path, to avoid going around in cycles
+    int[] path = new int[16]; // the move applied at every depth of the current path
+
+    int threshold;
+    int nextThreshold; // smallest path cost + heuristic cost that exceeded the threshold in the current iteration
+    long nodesExpanded; // nodes expanded in the current iteration
+    List<Iteration> iterations = new ArrayList<>();
+
+    IterativeDeepeningAStarSearch(Problem problem) {
+        this.problem = problem;
+        this.state = problem.initialState.copy();
+        this.statesOnPath = new HashSet<>();
+    }
+
+    /**
+     * Performs IDA* search
+     *
+     * @param problem    general search problem, must support in-place moves
+     * @param iterations a list to add the threshold and number of expanded nodes of every iteration to (can be null)
+     * @return a goal node
+     */
+    public static Node search(Problem problem, List<Iteration> iterations) {
+        IterativeDeepeningAStarSearch search = new IterativeDeepeningAStarSearch(problem);
+        Node goalNode = search.search();
+        if (iterations != null) {
+            iterations.addAll(search.iterations);
+        }
+        return goalNode;
+    }
+
+    Node search() {
+        int heuristicCost = problem.heuristicCost(state);
+        threshold = heuristicCost;
+        statesOnPath.add(problem.stateKey(state));
+
+        while (true) {
+            nextThreshold = Integer.MAX_VALUE;
+            nodesExpanded = 0;
+
+            int depth = boundedSearch(0, heuristicCost, 0);
+            iterations.add(new Iteration(threshold, nodesExpanded));
+
+            if (depth != -1) {
+                return makePath(depth);
+            }
+            if (nextThreshold == Integer.MAX_VALUE) {
+                return null; // no state exceeded the threshold, so the whole search space was searched
+            }
+            threshold = nextThreshold;
+        }
+    }
+
+    /**
+     * Depth first search below the current state, pruning states whose path cost + heuristic cost exceeds the threshold
+     *
+     * @param pathCost      cost of the path to the current state
+     * @param heuristicCost heuristic cost of the current state
+     * @param depth         length of the path to the current state
+     * @return the length of the path to the goal, or -1 if no goal was found within the threshold
+     */
+    int boundedSearch(int pathCost, int heuristicCost, int depth) {
+        if (heuristicCost == Problem.DEAD_END) {
+            return -1; // no threshold reaches a goal from a dead end
+        }
+        int cost = pathCost + heuristicCost;
+        if (cost > threshold) {
+            nextThreshold = Math.min(nextThreshold, cost);
+            return -1;
+        }
+
+        // check if the goal state is reached
+        if (problem.goalTest(state)) {
+            return depth;
+        }
+
+        nodesExpanded++;
+        problem.peakFrontierSize = Math.max(problem.peakFrontierSize, depth + 1); // only the states on the path are kept
+        if (depth >= path.length) {
+            path = Arrays.copyOf(path, path.length * 2);
+        }
+
+        for (int move : problem.expandMoves(state)) {
+            problem.applyMove(state, move);
+            PackedState key = problem.stateKey(state);
+
+            if (statesOnPath.add(key)) {
+                path[depth] = move;
+                // the heuristic cost of the child is updated from the cost of the current state
+                int goalDepth = boundedSearch(pathCost + problem.moveCost(move), problem.heuristicCost(state, move, heuristicCost), depth + 1);
+                if (goalDepth != -1) {
+                    return goalDepth; // keep the state and path of the goal
+                }
+                statesOnPath.remove(key);
+            }
+
+            problem.undoMove(state, move);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Create the nodes of the current path by replaying its moves from the initial state
+     *
+     * @param depth length of the current path
+     * @return the node of the last state of the path
+     */
+    Node makePath(int depth) {
+        Node node = GenericSearch.makeNode(problem.initialState);
+        for (int i = 0; i < depth; i++) {
+            node = problem.makeChild(node, path[i]);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,63 @@
+package code;
+
+/**
+ * A pour packed into a single int: the bottle poured from, the bottle poured into and the number of layers poured.
+ * Knowing the number of layers poured makes a move exactly reversible.
+ */
+public final class Move {
+
+    static final int LAYERS_BITS = 12;
+    static final int BOTTLE_BITS = 10;
+    static final int LAYERS_MASK = (1 << LAYERS_BITS) - 1;
+    static final int BOTTLE_MASK = (1 << BOTTLE_BITS) - 1;
+
+    public static final int MAX_NUM_OF_BOTTLES = BOTTLE_MASK + 1; // the bottle indices of a move fit in BOTTLE_BITS
+    public static final int MAX_BOTTLE_CAPACITY = LAYERS_MASK; // a pour moves at most a full bottle
+
+    private Move() {}
+
+    /**
+     * Pack a pour into an int
+     *
+     * @param firstBottleIndex  index of the bottle to pour from (zero-based)
+     * @param secondBottleIndex index of the bottle to pour into (zero-based)
+     * @param numOfLayers       number of layers poured
+     * @return the packed move
+     */
+    public static int of(int firstBottleIndex, int secondBottleIndex, int numOfLayers) {
+        return (firstBottleIndex << (BOTTLE_BITS + LAYERS_BITS)) | (secondBottleIndex << LAYERS_BITS) | numOfLayers;
+    }
+
+    public static int from(int move) {
+        return (move >>> (BOTTLE_BITS + LAYERS_BITS)) & BOTTLE_MASK;
+    }
+
+    public static int to(int move) {
+        return (move >>> LAYERS_BITS) & BOTTLE_MASK;
+    }
+
+    public static int layers(int move) {
+        return move & LAYERS_MASK;
+    }
+
+    /**
+     * Format a move as an operator of the plan
+     *
+     * @param move the packed move
+     * @return the operator (example: pour_firstBottleIndex_secondBottleIndex)
+     */
+    public static String toString(int move) {
+        return "pour_" + from(move) + "_" + to(move);
+    }
+
+    /**
+     * Append a move formatted as an operator of the plan, without creating a string for it
+     *
+     * @param builder the builder to append to
+     * @param move    the packed move
+     * @return the builder
+     */
+    public static StringBuilder appendTo(StringBuilder builder, int move) {
+        return builder.append("pour_").append(from(move)).append('_').append(to(move));
+    }
+}
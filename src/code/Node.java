@@ -4,16 +4,17 @@ public class Node {
 
     public State state;
     public Node parent;
-    public String operator; // format pour_from_to (pour_0_4 -> poured from bottle 0 to bottle 4)
+    public int move; // the packed move from the state of the parent to the state of the node (see Move), -1 for the root,
+                     // nodes of a backward search keep the move from their state to the state of their parent
     public int pathCost;
     public int depth;
     public int heuristicCost = -1;
 
 
-    public Node(State state, Node parent, String operator, int pathCost, int depth) {
+    public Node(State state, Node parent, int move, int pathCost, int depth) {
         this.state = state;
         this.parent = parent;
-        this.operator = operator;
+        this.move = move;
         this.pathCost = pathCost;
         this.depth = depth;
     }
@@ -26,7 +27,7 @@ public class Node {
     public String toString() {
         return  "\n     " +
                 ConsoleColors.BLUE_BOLD + "State: " + ConsoleColors.RESET + this.state + "\n     " +
-                ConsoleColors.BLUE_BOLD + " * Operator: " + ConsoleColors.RESET + this.operator + "\n     " +
+                ConsoleColors.BLUE_BOLD + " * Operator: " + ConsoleColors.RESET + (this.move != -1 ? Move.toString(this.move) : "") + "\n     " +
                 ConsoleColors.BLUE_BOLD + " * Path Cost: " + ConsoleColors.RESET + this.pathCost  + "\n     " +
                 ConsoleColors.BLUE_BOLD + " * Heuristic Cost: " + ConsoleColors.RESET  + this.heuristicCost + "\n     " +
                 ConsoleColors.BLUE_BOLD + " * Depth: " + ConsoleColors.RESET + this.depth  + "\n     " +
@@ -0,0 +1,146 @@
+package code;
+
+import java.util.Arrays;
+
+/**
+ * The nodes of a search kept as indices into growable primitive arrays (struct of arrays) instead of {@link Node} objects.
+ * A node is its parent index, the packed move that generated it, its path cost, depth and heuristic cost,
+ * and its state packed into a fixed number of longs of a shared arena (the state of node i starts at i * wordsPerState).
+ * A node costs a few dozen bytes and no object headers or references, so the garbage collector has nothing to trace.
+ */
+public class NodePool {
+
+    /**
+     * How the searches through generalSearch keep their nodes
+     */
+    public enum Layout {
+        OBJECTS, // a Node object with its own state for every generated node
+        STRUCT_OF_ARRAYS // a NodePool, used by the problems that support in-place moves and packed states
+    }
+
+    static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The size of a node pool
+     */
+    public static class Statistics {
+        public final int numOfNodes;
+        public final int wordsPerState;
+        public final long allocatedBytes; // bytes of the arrays, including the capacity not used yet
+
+        Statistics(int numOfNodes, int wordsPerState, long allocatedBytes) {
+            this.numOfNodes = numOfNodes;
+            this.wordsPerState = wordsPerState;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * Bytes of a node once the arrays are full
+         */
+        public int bytesPerNode() {
+            return 5 * Integer.BYTES + wordsPerState * Long.BYTES;
+        }
+
+        /**
+         * Allocated bytes divided by the number of nodes, the arrays are at most twice as large as needed
+         */
+        public double allocatedBytesPerNode() {
+            return numOfNodes == 0 ? 0 : (double) allocatedBytes / numOfNodes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("nodes: %d, bytes per node: %d (%.1f allocated)", numOfNodes, bytesPerNode(), allocatedBytesPerNode());
+        }
+    }
+
+    int wordsPerState;
+    int numOfNodes = 0;
+    int[] parent;
+    int[] move;
+    int[] pathCost;
+    int[] depth;
+    int[] heuristicCost;
+    long[] states;
+
+    /**
+     * Create an empty pool
+     *
+     * @param wordsPerState number of longs of a packed state
+     */
+    public NodePool(int wordsPerState) {
+        this.wordsPerState = wordsPerState;
+        this.parent = new int[INITIAL_CAPACITY];
+        this.move = new int[INITIAL_CAPACITY];
+        this.pathCost = new int[INITIAL_CAPACITY];
+        this.depth = new int[INITIAL_CAPACITY];
+        this.heuristicCost = new int[INITIAL_CAPACITY];
+        this.states = new long[INITIAL_CAPACITY * wordsPerState];
+    }
+
+    /**
+     * Add a node, its state has to be packed at stateOffset of the node afterwards
+     *
+     * @param parent   index of the parent node, -1 for the root
+     * @param move     the move applied to the state of the parent, -1 for the root
+     * @param pathCost the path cost of the node
+     * @param depth    the depth of the node
+     * @return index of the node
+     */
+    public int add(int parent, int move, int pathCost, int depth) {
+        if (numOfNodes == this.parent.length) {
+            grow();
+        }
+        int node = numOfNodes++;
+        this.parent[node] = parent;
+        this.move[node] = move;
+        this.pathCost[node] = pathCost;
+        this.depth[node] = depth;
+        this.heuristicCost[node] = -1; // not evaluated
+        return node;
+    }
+
+    /**
+     * Index of the first long of the state of a node in the arena
+     */
+    public int stateOffset(int node) {
+        return node * wordsPerState;
+    }
+
+    public int size() {
+        return numOfNodes;
+    }
+
+    void grow() {
+        int capacity = parent.length * 2;
+        if ((long) capacity * wordsPerState > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Node pool can not hold more than " + parent.length + " nodes");
+        }
+        parent = Arrays.copyOf(parent, capacity);
+        move = Arrays.copyOf(move, capacity);
+        pathCost = Arrays.copyOf(pathCost, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        heuristicCost = Arrays.copyOf(heuristicCost, capacity);
+        states = Arrays.copyOf(states, capacity * wordsPerState);
+    }
+
+    public Statistics statistics() {
+        long allocatedBytes = 5L * Integer.BYTES * parent.length + (long) Long.BYTES * states.length;
+        return new Statistics(numOfNodes, wordsPerState, allocatedBytes);
+    }
+
+    /**
+     * Approximate bytes of a node in the object layout (with compressed references): the Node object and its own state
+     *
+     * @param stateBytes bytes of a state of the problem
+     * @return bytes per node
+     */
+    public static long objectBytesPerNode(long stateBytes) {
+        long nodeBytes = 12 + 2 * 4 + 4 * 4; // header, state and parent references, the ints
+        return align(nodeBytes) + stateBytes;
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
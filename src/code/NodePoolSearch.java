@@ -0,0 +1,307 @@
+package code;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import static java.lang.Math.max;
+
+/**
+ * The general search on a {@link NodePool}: nodes are int indices into primitive arrays and a state is only
+ * unpacked into a single scratch state when its node is expanded, the children are generated by applying and undoing
+ * moves on that state. Only the nodes of the solution path are created as {@link Node} objects, by replaying its moves.
+ * It expands the same nodes in the same order, with the same duplicate detection, as generalSearch with the
+ * frontier of the same strategy.
+ */
+public class NodePoolSearch {
+
+    /**
+     * The order in which the frontier removes the nodes
+     */
+    public enum Priority {
+        FIFO, // breadth first
+        LIFO, // depth first
+        PATH_COST, // uniform cost
+        HEURISTIC_COST, // greedy
+        PATH_AND_HEURISTIC_COST // A*
+    }
+
+    Problem problem;
+    Priority priority;
+    NodePool pool;
+    State state; // the state of the node being expanded, changed in place
+    IntFrontier frontier;
+
+    NodePoolSearch(Problem problem, Priority priority, BucketFrontier.TieBreaking tieBreaking) {
+        this.problem = problem;
+        this.priority = priority;
+        this.pool = new NodePool(problem.packedStateSize(problem.initialState));
+        this.state = problem.initialState.copy();
+        this.frontier = switch (priority) {
+            case FIFO -> new IntDequeFrontier(false);
+            case LIFO -> new IntDequeFrontier(true);
+            case PATH_COST -> new IntBucketFrontier(node -> pool.pathCost[node], tieBreaking);
+            case HEURISTIC_COST -> new IntBucketFrontier(node -> pool.heuristicCost[node], tieBreaking);
+            case PATH_AND_HEURISTIC_COST -> new IntBucketFrontier(node -> pool.pathCost[node] + pool.heuristicCost[node], tieBreaking);
+        };
+    }
+
+    /**
+     * Whether a problem asks for the node pool and can be searched with it
+     */
+    public static boolean canSearch(Problem problem) {
+        return problem.nodeLayout == NodePool.Layout.STRUCT_OF_ARRAYS && problem.supportsInPlaceMoves() && problem.supportsPackedStates();
+    }
+
+    /**
+     * Perform a general search algorithm on a node pool
+     *
+     * @param problem     general search problem, must support in-place moves and packed states
+     * @param priority    the order in which the frontier removes the nodes
+     * @param tieBreaking the order of removing nodes of equal priority, for the priorities of the bucket frontier
+     * @return a goal node
+     */
+    public static Node search(Problem problem, Priority priority, BucketFrontier.TieBreaking tieBreaking) {
+        return new NodePoolSearch(problem, priority, tieBreaking).search();
+    }
+
+    Node search() {
+        VisitedSet visitedStates = new VisitedSet(problem.visitedStatesStorage);
+        boolean isInformed = priority == Priority.HEURISTIC_COST || priority == Priority.PATH_AND_HEURISTIC_COST;
+
+        int root = pool.add(-1, -1, 0, 0);
+        problem.packState(state, pool.states, pool.stateOffset(root));
+        if (isInformed) {
+            pool.heuristicCost[root] = problem.heuristicCost(state);
+        }
+        problem.markVisited(visitedStates, state);
+        if (pool.heuristicCost[root] != Problem.DEAD_END) {
+            frontier.add(root);
+        }
+        problem.peakFrontierSize = max(problem.peakFrontierSize, frontier.size());
+
+        try {
+            while (!frontier.isEmpty()) {
+                int node = frontier.remove();
+                problem.unpackState(state, pool.states, pool.stateOffset(node));
+
+                // check if the goal state is reached
+                if (problem.goalTest(state)) {
+                    return makePath(node);
+                }
+
+                // if the goal state is not reached, add the children whose states were not visited
+                for (int move : problem.expandMoves(state)) {
+                    problem.applyMove(state, move);
+                    if (problem.markVisited(visitedStates, state)) {
+                        int heuristicCost = isInformed ? problem.heuristicCost(state, move, pool.heuristicCost[node]) : -1;
+                        if (heuristicCost != Problem.DEAD_END) { // no goal can be reached from a dead end, so it is not kept
+                            int child = pool.add(node, move, pool.pathCost[node] + problem.moveCost(move), pool.depth[node] + 1);
+                            problem.packState(state, pool.states, pool.stateOffset(child));
+                            pool.heuristicCost[child] = heuristicCost;
+                            frontier.add(child);
+                        }
+                    }
+                    problem.undoMove(state, move);
+                }
+                problem.peakFrontierSize = max(problem.peakFrontierSize, frontier.size());
+            }
+            return null;
+        } finally {
+            problem.visitedStatesStatistics = visitedStates.statistics();
+            problem.nodePoolStatistics = pool.statistics();
+        }
+    }
+
+    /**
+     * Create the nodes of the path to a node by replaying its moves from the initial state
+     *
+     * @param node index of the last node of the path
+     * @return the node of the last state of the path
+     */
+    Node makePath(int node) {
+        int[] path = new int[pool.depth[node]];
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i] = pool.move[node];
+            node = pool.parent[node];
+        }
+
+        Node pathNode = GenericSearch.makeNode(problem.initialState);
+        for (int move : path) {
+            pathNode = problem.makeChild(pathNode, move);
+        }
+        return pathNode;
+    }
+
+    // <editor-fold desc="Frontiers">
+
+    /**
+     * A frontier of node indices
+     */
+    interface IntFrontier {
+        void add(int node);
+
+        int remove();
+
+        boolean isEmpty();
+
+        int size();
+    }
+
+    /**
+     * A growable ring buffer of ints
+     */
+    static class IntDeque {
+        int[] elements = new int[16];
+        int head = 0;
+        int size = 0;
+
+        void addFirst(int element) {
+            ensureCapacity();
+            head = (head - 1) & (elements.length - 1);
+            elements[head] = element;
+            size++;
+        }
+
+        void addLast(int element) {
+            ensureCapacity();
+            elements[(head + size) & (elements.length - 1)] = element;
+            size++;
+        }
+
+        int removeFirst() {
+            int element = elements[head];
+            head = (head + 1) & (elements.length - 1);
+            size--;
+            return element;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void ensureCapacity() {
+            if (size == elements.length) {
+                // unroll the ring so the head is at index 0, the length stays a power of two
+                int[] newElements = new int[elements.length * 2];
+                int numOfTailElements = elements.length - head;
+                System.arraycopy(elements, head, newElements, 0, numOfTailElements);
+                System.arraycopy(elements, 0, newElements, numOfTailElements, head);
+                elements = newElements;
+                head = 0;
+            }
+        }
+    }
+
+    /**
+     * The counterpart of {@link DequeFrontier} for node indices
+     */
+    static class IntDequeFrontier implements IntFrontier {
+        IntDeque nodes = new IntDeque();
+        boolean isLifo;
+
+        IntDequeFrontier(boolean isLifo) {
+            this.isLifo = isLifo;
+        }
+
+        @Override
+        public void add(int node) {
+            if (isLifo) {
+                nodes.addFirst(node);
+            } else {
+                nodes.addLast(node);
+            }
+        }
+
+        @Override
+        public int remove() {
+            return nodes.removeFirst();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return nodes.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return nodes.size;
+        }
+    }
+
+    /**
+     * The counterpart of {@link BucketFrontier} for node indices, the priority of a node is read from the pool
+     */
+    class IntBucketFrontier implements IntFrontier {
+        IntUnaryOperator priorityFunction;
+        BucketFrontier.TieBreaking tieBreaking;
+        IntDeque[][] buckets = new IntDeque[16][]; // the levels of every priority, by depth for DEEPEST_FIRST
+        int[] highestLevels = new int[16];
+        int[] bucketSizes = new int[16];
+        int lowestPriority = 0; // no bucket below this index contains a node
+        int size = 0;
+
+        IntBucketFrontier(IntUnaryOperator priorityFunction, BucketFrontier.TieBreaking tieBreaking) {
+            this.priorityFunction = priorityFunction;
+            this.tieBreaking = tieBreaking;
+        }
+
+        @Override
+        public void add(int node) {
+            int priority = priorityFunction.applyAsInt(node);
+            if (priority < 0) {
+                throw new IllegalArgumentException("Bucket frontier priorities must be non-negative, got " + priority);
+            }
+            int level = tieBreaking == BucketFrontier.TieBreaking.DEEPEST_FIRST ? pool.depth[node] : 0;
+
+            if (priority >= buckets.length) {
+                int newLength = max(priority + 1, buckets.length * 2);
+                buckets = Arrays.copyOf(buckets, newLength);
+                highestLevels = Arrays.copyOf(highestLevels, newLength);
+                bucketSizes = Arrays.copyOf(bucketSizes, newLength);
+            }
+            if (buckets[priority] == null || buckets[priority].length <= level) {
+                buckets[priority] = Arrays.copyOf(buckets[priority] == null ? new IntDeque[0] : buckets[priority], max(level + 1, 4));
+            }
+            if (buckets[priority][level] == null) {
+                buckets[priority][level] = new IntDeque(); // levels are only allocated once a node is inserted into them
+            }
+
+            if (tieBreaking == BucketFrontier.TieBreaking.LIFO) {
+                buckets[priority][level].addFirst(node);
+            } else {
+                buckets[priority][level].addLast(node);
+            }
+            highestLevels[priority] = bucketSizes[priority] == 0 ? level : max(highestLevels[priority], level);
+            bucketSizes[priority]++;
+            lowestPriority = Math.min(lowestPriority, priority); // greedy search children may have a lower priority than their parent
+            size++;
+        }
+
+        @Override
+        public int remove() {
+            // skip the empty buckets, every bucket skipped here stays empty till a node with its priority is inserted
+            while (bucketSizes[lowestPriority] == 0) {
+                lowestPriority++;
+            }
+            IntDeque[] levels = buckets[lowestPriority];
+            while (levels[highestLevels[lowestPriority]] == null || levels[highestLevels[lowestPriority]].isEmpty()) {
+                highestLevels[lowestPriority]--;
+            }
+            bucketSizes[lowestPriority]--;
+            size--;
+            return levels[highestLevels[lowestPriority]].removeFirst();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // </editor-fold>
+}
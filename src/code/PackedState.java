@@ -0,0 +1,61 @@
+package code;
+
+import java.util.Arrays;
+
+/**
+ * An immutable compact key of a state, used to detect duplicate states without building strings
+ */
+public final class PackedState {
+
+    final long[] words;
+    final long fingerprint;
+    final int hash;
+
+    public PackedState(long[] words) {
+        this(words, hash(words));
+    }
+
+    /**
+     * Create a key with an already known 64-bit hash of the words (e.g. a zobrist hash)
+     *
+     * @param words       the packed state
+     * @param fingerprint a 64-bit hash of the words
+     */
+    public PackedState(long[] words, long fingerprint) {
+        this.words = words;
+        this.fingerprint = fingerprint;
+        this.hash = Long.hashCode(fingerprint);
+    }
+
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * A 64-bit hash of packed words, for keys that have no incrementally maintained hash
+     *
+     * @param words the packed state
+     * @return the hash of the words
+     */
+    public static long hash(long[] words) {
+        long hash = 0x9E3779B97F4A7C15L;
+        for (long word : words) {
+            hash = (hash ^ word) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof PackedState)) return false;
+        PackedState packedState = (PackedState) other;
+        return fingerprint == packedState.fingerprint && Arrays.equals(words, packedState.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,230 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash distributed A* (HDA*): every state is owned by the worker thread chosen by the hash of its key.
+ * Each worker has its own open list and its own lowest path cost of every state it owns, so the workers share no queue.
+ * Generated children are sent to the mailbox of their owner, a lock-free queue.
+ * <p>
+ * The cheapest goal found so far (the incumbent) is kept, and nodes whose path cost + heuristic cost is not lower
+ * than its path cost are discarded. The search stops once no worker holds a node and no node is waiting in a mailbox,
+ * which is tracked by a single counter of pending nodes, so with an admissible heuristic the incumbent is an optimal goal.
+ * The goal found and the number of expanded nodes depend on the timing of the threads.
+ */
+public class ParallelAStarSearch {
+
+    /**
+     * The work done by a single worker
+     */
+    public static class WorkerLoad {
+        public final int worker;
+        public final long nodesExpanded;
+        public final long nodesReceived;
+
+        WorkerLoad(int worker, long nodesExpanded, long nodesReceived) {
+            this.worker = worker;
+            this.nodesExpanded = nodesExpanded;
+            this.nodesReceived = nodesReceived;
+        }
+
+        @Override
+        public String toString() {
+            return "worker: " + worker + ", nodes expanded: " + nodesExpanded + ", nodes received: " + nodesReceived;
+        }
+    }
+
+    static final int SPINS_BEFORE_PARKING = 64;
+    static final long PARK_NANOS = 100_000;
+
+    Problem problem;
+    Worker[] workers;
+    // nodes sent to a mailbox or held in an open list that were not processed yet, the search ends when it reaches 0
+    AtomicLong pendingNodes = new AtomicLong();
+    AtomicReference<Node> incumbent = new AtomicReference<>(); // cheapest goal node found so far
+    volatile Throwable failure; // first exception thrown by a worker, stops all the workers
+
+    ParallelAStarSearch(Problem problem, int numOfWorkers, BucketFrontier.TieBreaking tieBreaking) {
+        this.problem = problem;
+        this.workers = new Worker[numOfWorkers];
+        for (int i = 0; i < numOfWorkers; i++) {
+            workers[i] = new Worker(i, tieBreaking);
+        }
+    }
+
+    /**
+     * Performs hash distributed A* search
+     *
+     * @param problem      general search problem, its expand, goalTest, heuristicCost and stateKey must be safe to call from several threads
+     * @param numOfWorkers number of worker threads
+     * @param workerLoads  a list to add the work done by every worker to (can be null)
+     * @return a goal node
+     */
+    public static Node search(Problem problem, int numOfWorkers, List<WorkerLoad> workerLoads) {
+        ParallelAStarSearch search = new ParallelAStarSearch(problem, numOfWorkers, BucketFrontier.TieBreaking.FIFO);
+        Node goalNode = search.search();
+        if (workerLoads != null) {
+            for (Worker worker : search.workers) {
+                workerLoads.add(new WorkerLoad(worker.index, worker.nodesExpanded, worker.nodesReceived));
+            }
+        }
+        return goalNode;
+    }
+
+    Node search() {
+        Node root = GenericSearch.makeNode(problem.initialState);
+        root.setHeuristicCost(problem.heuristicCost(root.state));
+        if (root.heuristicCost == Problem.DEAD_END) {
+            return null;
+        }
+        send(root);
+
+        List<Thread> threads = new ArrayList<>();
+        for (Worker worker : workers) {
+            threads.add(Thread.ofPlatform().name("astar-worker-" + worker.index).start(worker));
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            failure = e; // stop the workers
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search was interrupted", e);
+        }
+
+        // the open lists do not reach their peaks at the same time, so their sum is an upper bound
+        int peakFrontierSize = 0;
+        for (Worker worker : workers) {
+            peakFrontierSize += worker.peakOpenListSize;
+        }
+        problem.peakFrontierSize = Math.max(problem.peakFrontierSize, peakFrontierSize);
+
+        if (failure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        } else if (failure instanceof Error error) {
+            throw error;
+        }
+        return incumbent.get();
+    }
+
+    /**
+     * Send a node to the mailbox of the worker that owns its state
+     */
+    void send(Node node) {
+        pendingNodes.incrementAndGet(); // counted before it is visible to the owner, so the count never drops to 0 early
+        PackedState key = problem.stateKey(node.state);
+        workers[Math.floorMod(key.hashCode(), workers.length)].mailbox.add(node);
+    }
+
+    /**
+     * Whether a node can not lead to a goal cheaper than the incumbent
+     */
+    boolean isWorseThanIncumbent(Node node) {
+        Node goalNode = incumbent.get();
+        return goalNode != null && node.pathCost + node.heuristicCost >= goalNode.pathCost;
+    }
+
+    /**
+     * Replace the incumbent if a goal node is cheaper
+     */
+    void offerGoal(Node goalNode) {
+        Node current = incumbent.get();
+        while ((current == null || goalNode.pathCost < current.pathCost) && !incumbent.compareAndSet(current, goalNode)) {
+            current = incumbent.get();
+        }
+    }
+
+    class Worker implements Runnable {
+        int index;
+        ConcurrentLinkedQueue<Node> mailbox = new ConcurrentLinkedQueue<>();
+        Frontier openList;
+        HashMap<PackedState, Integer> lowestPathCosts = new HashMap<>(); // states owned by this worker -> lowest path cost reached
+        long nodesExpanded;
+        long nodesReceived;
+        int peakOpenListSize;
+
+        Worker(int index, BucketFrontier.TieBreaking tieBreaking) {
+            this.index = index;
+            this.openList = new BucketFrontier(node -> node.pathCost + node.heuristicCost, tieBreaking);
+        }
+
+        @Override
+        public void run() {
+            try {
+                int idleSpins = 0;
+                while (failure == null) {
+                    Node node;
+                    while ((node = mailbox.poll()) != null) {
+                        receive(node);
+                    }
+
+                    if (!openList.isEmpty()) {
+                        process(openList.remove());
+                        idleSpins = 0;
+                    } else if (pendingNodes.get() == 0) {
+                        return; // no node is left in any open list or mailbox
+                    } else if (++idleSpins < SPINS_BEFORE_PARKING) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.parkNanos(PARK_NANOS);
+                    }
+                }
+            } catch (Throwable e) {
+                if (failure == null) failure = e;
+            }
+        }
+
+        /**
+         * Add a node sent to this worker to the open list, unless its state was reached with a lower path cost
+         */
+        void receive(Node node) {
+            nodesReceived++;
+            PackedState key = problem.stateKey(node.state);
+            Integer lowestPathCost = lowestPathCosts.get(key);
+            if (lowestPathCost != null && lowestPathCost <= node.pathCost) {
+                pendingNodes.decrementAndGet();
+                return;
+            }
+
+            if (node.heuristicCost == -1) {
+                node.setHeuristicCost(problem.heuristicCost(node)); // set the heuristic cost, only for nodes that are kept
+            }
+            if (node.heuristicCost == Problem.DEAD_END || isWorseThanIncumbent(node)) {
+                pendingNodes.decrementAndGet();
+                return;
+            }
+            lowestPathCosts.put(key, node.pathCost);
+            openList.add(node);
+            peakOpenListSize = Math.max(peakOpenListSize, openList.size());
+        }
+
+        /**
+         * Goal test or expand the node with the lowest path cost + heuristic cost of this worker
+         */
+        void process(Node node) {
+            // skip nodes whose state was reached again with a lower path cost after they were added
+            boolean isOutdated = lowestPathCosts.get(problem.stateKey(node.state)) < node.pathCost;
+
+            if (!isOutdated && !isWorseThanIncumbent(node)) {
+                if (problem.goalTest(node.state)) {
+                    offerGoal(node);
+                } else {
+                    nodesExpanded++;
+                    for (Node child : problem.expand(node)) {
+                        send(child);
+                    }
+                }
+            }
+
+            pendingNodes.decrementAndGet(); // after the children were sent
+        }
+    }
+}
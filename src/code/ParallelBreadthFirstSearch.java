@@ -0,0 +1,167 @@
+package code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Level-synchronous breadth first search: all the nodes of a depth are goal tested and expanded in parallel
+ * on a fork-join pool before the next depth is started.
+ * Every generated state gets an order (depth, index of the parent in its layer, index of the child in the parent),
+ * which is the order in which the sequential breadth first search generates it. The visited states keep the
+ * lowest order they were generated with, so the layers, the solution and the number of expanded nodes are
+ * the same as those of the sequential search whatever the number of threads.
+ */
+public class ParallelBreadthFirstSearch {
+
+    /**
+     * The size and number of expanded nodes of a single depth
+     */
+    public static class Layer {
+        public final int depth;
+        public final int numOfNodes;
+        public final long nodesExpanded;
+
+        Layer(int depth, int numOfNodes, long nodesExpanded) {
+            this.depth = depth;
+            this.numOfNodes = numOfNodes;
+            this.nodesExpanded = nodesExpanded;
+        }
+
+        @Override
+        public String toString() {
+            return "depth: " + depth + ", nodes: " + numOfNodes + ", nodes expanded: " + nodesExpanded;
+        }
+    }
+
+    // bits of the order of a generated state, the depth is kept in the highest bits so earlier depths always win
+    static final int CHILD_BITS = 16;
+    static final int PARENT_BITS = 32;
+
+    /**
+     * The children of a node with the keys and orders they were generated with
+     */
+    record Children(List<Node> nodes, PackedState[] keys, long[] orders) {}
+
+    Problem problem;
+    ForkJoinPool pool;
+    ConcurrentHashMap<PackedState, Long> visitedStates = new ConcurrentHashMap<>(); // key of a state -> lowest order
+    List<Layer> layers = new ArrayList<>();
+
+    ParallelBreadthFirstSearch(Problem problem, ForkJoinPool pool) {
+        this.problem = problem;
+        this.pool = pool;
+    }
+
+    /**
+     * Performs breadth first search expanding the nodes of every depth in parallel
+     *
+     * @param problem     general search problem, its expand, goalTest and stateKey must be safe to call from several threads
+     * @param parallelism number of threads that expand the nodes of a depth
+     * @param layers      a list to add the size and number of expanded nodes of every depth to (can be null)
+     * @return a goal node
+     */
+    public static Node search(Problem problem, int parallelism, List<Layer> layers) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ParallelBreadthFirstSearch search = new ParallelBreadthFirstSearch(problem, pool);
+            Node goalNode = search.search();
+            if (layers != null) {
+                layers.addAll(search.layers);
+            }
+            return goalNode;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    Node search() {
+        Node root = GenericSearch.makeNode(problem.initialState);
+        visitedStates.put(problem.stateKey(root.state), 0L);
+        List<Node> layer = List.of(root);
+
+        for (int depth = 0; !layer.isEmpty(); depth++) {
+            List<Node> currentLayer = layer;
+            problem.peakFrontierSize = Math.max(problem.peakFrontierSize, currentLayer.size());
+
+            // the sequential search stops at the first goal of the layer, after expanding the nodes before it
+            OptionalInt goalIndex = run(() -> IntStream.range(0, currentLayer.size()).parallel()
+                    .filter(i -> problem.goalTest(currentLayer.get(i).state))
+                    .findFirst());
+            if (goalIndex.isPresent()) {
+                layers.add(new Layer(depth, currentLayer.size(), goalIndex.getAsInt()));
+                return currentLayer.get(goalIndex.getAsInt());
+            }
+
+            // expand the whole layer, every child keeps the visited state only if it has the lowest order
+            int childDepth = depth + 1;
+            List<Children> children = run(() -> IntStream.range(0, currentLayer.size()).parallel()
+                    .mapToObj(i -> expand(currentLayer.get(i), childDepth, i))
+                    .toList());
+
+            // all the children are merged before any of them is checked, so the next layer does not depend on timing
+            layer = run(() -> children.parallelStream()
+                    .flatMap(this::acceptedChildren)
+                    .toList());
+            layers.add(new Layer(depth, currentLayer.size(), currentLayer.size()));
+        }
+
+        return null;
+    }
+
+    /**
+     * Expand a node and record the order of its children in the visited states
+     *
+     * @param node        the node to expand
+     * @param childDepth  depth of the children
+     * @param parentIndex index of the node in its layer
+     * @return the children with their keys and orders
+     */
+    Children expand(Node node, int childDepth, int parentIndex) {
+        List<Node> nodes = problem.expand(node);
+        if (nodes.size() > (1 << CHILD_BITS)) {
+            throw new IllegalStateException("Too many children: " + nodes.size());
+        }
+
+        PackedState[] keys = new PackedState[nodes.size()];
+        long[] orders = new long[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            keys[i] = problem.stateKey(nodes.get(i).state);
+            orders[i] = ((long) childDepth << (PARENT_BITS + CHILD_BITS)) | ((long) parentIndex << CHILD_BITS) | i;
+            visitedStates.merge(keys[i], orders[i], Math::min);
+        }
+        return new Children(nodes, keys, orders);
+    }
+
+    /**
+     * The children that were generated first with their state
+     */
+    Stream<Node> acceptedChildren(Children children) {
+        return IntStream.range(0, children.nodes().size())
+                .filter(i -> visitedStates.get(children.keys()[i]) == children.orders()[i])
+                .mapToObj(i -> children.nodes().get(i));
+    }
+
+    /**
+     * Run a parallel stream on the pool of this search so the parallelism of the search is respected
+     */
+    <T> T run(Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package code;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The exact costs of an abstraction of the puzzle that only keeps the layers of two colors (a pattern).
+ * The layers of the other colors are deleted, and a pour may move any number of layers up to the top run of its
+ * color and the free space of the bottle poured into. Every pour of the puzzle is a pour of the abstraction,
+ * and only the layers of the pattern are counted in the cost, so the costs of disjoint patterns can be added
+ * into a heuristic that never overestimates.
+ * <p>
+ * An abstract state is stored as its bottles sorted and packed into a long. The costs are found by a retrograde
+ * uniform cost search from all the abstract goal states, and written as a file of sorted keys followed by a byte
+ * of cost per key. The file is memory-mapped and looked up by binary search, so a table that was built once is
+ * shared by every later search and every JVM using the same directory. A table only depends on the number of bottles,
+ * the bottle capacity and the number of layers of the two colors, not on which colors they are.
+ */
+public class PatternDatabase {
+
+    static final int MAGIC = 0x57504442; // "WPDB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int UNREACHABLE = 255; // cost of an abstract state that can not reach a goal
+
+    // tables already mapped by this JVM, by file name
+    static final ConcurrentHashMap<String, PatternDatabase> loadedDatabases = new ConcurrentHashMap<>();
+
+    int numOfBottles;
+    int bottleCapacity;
+    int numOfFirstColor; // layers of the first color of the pattern, never less than of the second color
+    int numOfSecondColor;
+    int bitsPerBottle;
+    int numOfEntries;
+    MappedByteBuffer table;
+
+    PatternDatabase(int numOfBottles, int bottleCapacity, int numOfFirstColor, int numOfSecondColor) {
+        this.numOfBottles = numOfBottles;
+        this.bottleCapacity = bottleCapacity;
+        this.numOfFirstColor = numOfFirstColor;
+        this.numOfSecondColor = numOfSecondColor;
+        this.bitsPerBottle = bottleCapacity + 1;
+    }
+
+    /**
+     * Whether the abstract states of a puzzle fit in a long
+     */
+    public static boolean isSupported(int numOfBottles, int bottleCapacity) {
+        return numOfBottles * (bottleCapacity + 1) <= Long.SIZE;
+    }
+
+    /**
+     * Get the table of a pattern, mapping its file or building it first if the file does not exist
+     *
+     * @param directory        directory of the table files
+     * @param numOfBottles     number of bottles of the puzzle
+     * @param bottleCapacity   capacity of every bottle
+     * @param numOfFirstColor  number of layers of the first color of the pattern
+     * @param numOfSecondColor number of layers of the second color of the pattern, not more than of the first color
+     * @return the table
+     */
+    public static PatternDatabase get(Path directory, int numOfBottles, int bottleCapacity, int numOfFirstColor, int numOfSecondColor) {
+        if (!isSupported(numOfBottles, bottleCapacity)) {
+            throw new IllegalArgumentException("Too many bottles for a pattern database: " + numOfBottles + " of capacity " + bottleCapacity);
+        }
+        if (numOfSecondColor > numOfFirstColor) {
+            throw new IllegalArgumentException("The first color of a pattern must have the most layers");
+        }
+
+        String fileName = "pdb-" + numOfBottles + "-" + bottleCapacity + "-" + numOfFirstColor + "-" + numOfSecondColor + ".bin";
+        Path file = directory.toAbsolutePath().resolve(fileName);
+        return loadedDatabases.computeIfAbsent(file.toString(), key -> {
+            PatternDatabase patternDatabase = new PatternDatabase(numOfBottles, bottleCapacity, numOfFirstColor, numOfSecondColor);
+            try {
+                if (!Files.exists(file)) {
+                    patternDatabase.build(file);
+                }
+                patternDatabase.map(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not load pattern database " + file, e);
+            }
+            return patternDatabase;
+        });
+    }
+
+    /**
+     * Get the cost of an abstract state
+     *
+     * @param key the packed sorted bottles of the abstract state (see {@link #key})
+     * @return the cost to reach an abstract goal, or UNREACHABLE
+     */
+    public int cost(long key) {
+        int low = 0;
+        int high = numOfEntries - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = table.getLong(HEADER_BYTES + middle * Long.BYTES);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return Byte.toUnsignedInt(table.get(HEADER_BYTES + numOfEntries * Long.BYTES + middle));
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * Pack the abstract bottles into a key. A bottle is a 1 bit above its layers, from the bottom layer at bit 0,
+     * where a layer is 1 for the second color and 0 for the first color. The bottles are sorted so the key does not
+     * depend on their order.
+     *
+     * @param bottles the abstract bottles, sorted in place
+     * @return the key
+     */
+    long key(long[] bottles) {
+        Arrays.sort(bottles);
+        long key = 0;
+        for (int i = 0; i < bottles.length; i++) {
+            key |= bottles[i] << (i * bitsPerBottle);
+        }
+        return key;
+    }
+
+    /**
+     * Unpack a key into its abstract bottles
+     */
+    long[] bottles(long key) {
+        long[] bottles = new long[numOfBottles];
+        long mask = (1L << bitsPerBottle) - 1;
+        for (int i = 0; i < numOfBottles; i++) {
+            bottles[i] = (key >>> (i * bitsPerBottle)) & mask;
+        }
+        return bottles;
+    }
+
+    static int numOfLayers(long bottle) {
+        return 63 - Long.numberOfLeadingZeros(bottle);
+    }
+
+    // <editor-fold desc="Building the table">
+
+    /**
+     * Compute the costs of all the abstract states that can reach a goal, and write them to a file
+     */
+    void build(Path file) throws IOException {
+        HashMap<Long, Integer> costs = new HashMap<>();
+        ArrayList<ArrayDeque<Long>> buckets = new ArrayList<>(); // abstract states by cost, the open list of the search
+
+        for (long goalKey : goalKeys()) {
+            costs.put(goalKey, 0);
+            addToBucket(buckets, 0, goalKey);
+        }
+
+        for (int cost = 0; cost < buckets.size(); cost++) {
+            ArrayDeque<Long> bucket = buckets.get(cost);
+            while (!bucket.isEmpty()) {
+                long key = bucket.removeFirst();
+                if (costs.get(key) < cost) {
+                    continue; // reached again with a lower cost after it was added
+                }
+                expandBackward(key, cost, costs, buckets);
+            }
+        }
+
+        long[] keys = costs.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + keys.length * (Long.BYTES + 1)).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(numOfBottles).putInt(bottleCapacity)
+                .putInt(numOfFirstColor).putInt(numOfSecondColor).putLong(keys.length);
+        for (long key : keys) {
+            buffer.putLong(key);
+        }
+        for (long key : keys) {
+            int cost = costs.get(key);
+            if (cost >= UNREACHABLE) {
+                throw new IllegalStateException("Pattern database cost does not fit in a byte: " + cost);
+            }
+            buffer.put((byte) cost);
+        }
+
+        // write to a temporary file first, so no JVM maps a table that is not complete
+        Files.createDirectories(file.getParent());
+        Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporaryFile, buffer.array());
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Add the abstract states that reach a state by a single pour to the open list
+     * (the same conditions as {@link WaterSortSearch#addInverseMoves}, except that any number of layers may be poured)
+     */
+    void expandBackward(long key, int cost, HashMap<Long, Integer> costs, ArrayList<ArrayDeque<Long>> buckets) {
+        long[] bottles = bottles(key);
+
+        for (int j = 0; j < numOfBottles; j++) {
+            int numOfLayersOfSecondBottle = numOfLayers(bottles[j]);
+            if (numOfLayersOfSecondBottle == 0) {
+                continue; // nothing was poured into it
+            }
+            long color = (bottles[j] >>> (numOfLayersOfSecondBottle - 1)) & 1;
+            int numOfConsecutiveTopLayers = 0;
+            while (numOfConsecutiveTopLayers < numOfLayersOfSecondBottle
+                    && ((bottles[j] >>> (numOfLayersOfSecondBottle - 1 - numOfConsecutiveTopLayers)) & 1) == color) {
+                numOfConsecutiveTopLayers++;
+            }
+
+            for (int i = 0; i < numOfBottles; i++) {
+                int numOfLayersOfFirstBottle = numOfLayers(bottles[i]);
+                if (i == j || (i > 0 && bottles[i] == bottles[i - 1] && i - 1 != j)) {
+                    continue; // equal bottles give the same previous state
+                }
+
+                int maxLayers = Math.min(numOfConsecutiveTopLayers, bottleCapacity - numOfLayersOfFirstBottle);
+                for (int k = 1; k <= maxLayers; k++) {
+                    // the bottle poured into had the same color on top or was empty
+                    if (k == numOfConsecutiveTopLayers && k != numOfLayersOfSecondBottle) {
+                        continue;
+                    }
+
+                    long[] previousBottles = bottles.clone();
+                    previousBottles[j] = removeLayers(bottles[j], numOfLayersOfSecondBottle, k);
+                    previousBottles[i] = addLayers(bottles[i], numOfLayersOfFirstBottle, k, color);
+
+                    long previousKey = key(previousBottles);
+                    Integer previousCost = costs.get(previousKey);
+                    if (previousCost == null || previousCost > cost + k) {
+                        costs.put(previousKey, cost + k);
+                        addToBucket(buckets, cost + k, previousKey);
+                    }
+                }
+            }
+        }
+    }
+
+    static long removeLayers(long bottle, int numOfLayers, int k) {
+        long layers = bottle & ((1L << (numOfLayers - k)) - 1);
+        return layers | (1L << (numOfLayers - k));
+    }
+
+    static long addLayers(long bottle, int numOfLayers, int k, long color) {
+        long layers = bottle & ((1L << numOfLayers) - 1);
+        for (int t = 0; t < k; t++) {
+            layers |= color << (numOfLayers + t);
+        }
+        return layers | (1L << (numOfLayers + k));
+    }
+
+    static void addToBucket(ArrayList<ArrayDeque<Long>> buckets, int cost, long key) {
+        while (buckets.size() <= cost) {
+            buckets.add(new ArrayDeque<>());
+        }
+        buckets.get(cost).addLast(key);
+    }
+
+    /**
+     * The abstract goal states: every bottle is empty or holds layers of a single color of the pattern
+     */
+    List<Long> goalKeys() {
+        List<Long> goalKeys = new ArrayList<>();
+        for (int[] firstHeights : partitions(numOfFirstColor)) {
+            for (int[] secondHeights : partitions(numOfSecondColor)) {
+                if (firstHeights.length + secondHeights.length > numOfBottles) {
+                    continue;
+                }
+                long[] bottles = new long[numOfBottles];
+                Arrays.fill(bottles, 1L); // empty bottles
+                int i = 0;
+                for (int height : firstHeights) {
+                    bottles[i++] = 1L << height; // all layers 0
+                }
+                for (int height : secondHeights) {
+                    bottles[i++] = (1L << (height + 1)) - 1; // all layers 1
+                }
+                goalKeys.add(key(bottles));
+            }
+        }
+        return goalKeys;
+    }
+
+    /**
+     * Split a number of layers into bottles of at most bottleCapacity layers, ignoring the order of the bottles
+     */
+    List<int[]> partitions(int numOfLayers) {
+        List<int[]> partitions = new ArrayList<>();
+        addPartitions(numOfLayers, bottleCapacity, new ArrayList<>(), partitions);
+        return partitions;
+    }
+
+    void addPartitions(int remainingLayers, int maxHeight, List<Integer> heights, List<int[]> partitions) {
+        if (remainingLayers == 0) {
+            partitions.add(heights.stream().mapToInt(Integer::intValue).toArray());
+            return;
+        }
+        for (int height = Math.min(remainingLayers, maxHeight); height >= 1; height--) {
+            heights.add(height);
+            addPartitions(remainingLayers - height, height, heights, partitions);
+            heights.remove(heights.size() - 1);
+        }
+    }
+
+    // </editor-fold>
+
+    /**
+     * Map a table file and check that it belongs to this pattern
+     */
+    void map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (table.getInt(0) != MAGIC || table.getInt(4) != VERSION || table.getInt(8) != numOfBottles || table.getInt(12) != bottleCapacity
+                || table.getInt(16) != numOfFirstColor || table.getInt(20) != numOfSecondColor) {
+            throw new IOException("Not a pattern database of this pattern: " + file);
+        }
+        long numOfEntries = table.getLong(24);
+        if (table.capacity() != HEADER_BYTES + numOfEntries * (Long.BYTES + 1)) {
+            throw new IOException("Pattern database is truncated: " + file);
+        }
+        this.numOfEntries = (int) numOfEntries;
+    }
+}
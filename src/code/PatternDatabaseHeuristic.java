@@ -0,0 +1,104 @@
+package code;
+
+import java.nio.file.Path;
+
+/**
+ * Additive pattern database heuristic: the colors of a puzzle are split into pairs (and a single color if their number is odd),
+ * and the heuristic cost of a state is the sum of the costs of its abstractions in the pattern database of every pair.
+ */
+public class PatternDatabaseHeuristic {
+
+    int[] firstColors; // color id of the first color of every pattern
+    int[] secondColors; // color id of the second color of every pattern, 0 if the pattern has a single color
+    PatternDatabase[] patternDatabases;
+    // the abstract bottles of a pattern, one array per thread as the searches of A* may evaluate states on several threads
+    ThreadLocal<long[]> scratchBottles;
+
+    /**
+     * Load or build the pattern databases of a puzzle
+     *
+     * @param initialState the initial state of the puzzle
+     * @param directory    directory of the table files
+     */
+    public PatternDatabaseHeuristic(WaterSearchState initialState, Path directory) {
+        int numOfColors = initialState.colorDictionary.numOfColors();
+        int[] numOfLayers = new int[numOfColors + 1];
+        for (int i = 0; i < initialState.numOfBottles; i++) {
+            for (int j = 0; j < initialState.bottleCapacity; j++) {
+                numOfLayers[initialState.layerId(i, j)]++;
+            }
+        }
+
+        int numOfBottles = initialState.numOfBottles;
+        scratchBottles = ThreadLocal.withInitial(() -> new long[numOfBottles]);
+
+        int numOfPatterns = (numOfColors + 1) / 2;
+        firstColors = new int[numOfPatterns];
+        secondColors = new int[numOfPatterns];
+        patternDatabases = new PatternDatabase[numOfPatterns];
+
+        for (int pattern = 0; pattern < numOfPatterns; pattern++) {
+            int firstColor = 2 * pattern + 1;
+            int secondColor = firstColor + 1 <= numOfColors ? firstColor + 1 : 0;
+
+            // the table is built for the color with the most layers first
+            if (secondColor != 0 && numOfLayers[secondColor] > numOfLayers[firstColor]) {
+                int color = firstColor;
+                firstColor = secondColor;
+                secondColor = color;
+            }
+
+            firstColors[pattern] = firstColor;
+            secondColors[pattern] = secondColor;
+            patternDatabases[pattern] = PatternDatabase.get(directory, initialState.numOfBottles, initialState.bottleCapacity,
+                    numOfLayers[firstColor], secondColor != 0 ? numOfLayers[secondColor] : 0);
+        }
+    }
+
+    /**
+     * Whether the pattern databases can be used for a puzzle
+     */
+    public static boolean isSupported(WaterSearchState state) {
+        return PatternDatabase.isSupported(state.numOfBottles, state.bottleCapacity);
+    }
+
+    /**
+     * Calculate the sum of the costs of the patterns of a state
+     *
+     * @param state the state for which to calculate its heuristic value
+     * @return an integer represent the heuristic cost of the state, {@link Problem#DEAD_END} if a pattern can not reach a goal
+     */
+    public int cost(WaterSearchState state) {
+        int heuristicCost = 0;
+        long[] bottles = scratchBottles.get();
+
+        for (int pattern = 0; pattern < patternDatabases.length; pattern++) {
+            // keep the layers of the two colors of the pattern from the bottom up, deleting the other colors
+            for (int i = 0; i < state.numOfBottles; i++) {
+                long bottle = 0;
+                int numOfLayers = 0;
+                if (state.arrayOfTopPointers[i] != -1) {
+                    for (int j = state.bottleCapacity - 1; j >= state.arrayOfTopPointers[i]; j--) {
+                        int id = state.layerId(i, j);
+                        if (id == firstColors[pattern]) {
+                            numOfLayers++;
+                        } else if (id == secondColors[pattern]) {
+                            bottle |= 1L << numOfLayers;
+                            numOfLayers++;
+                        }
+                    }
+                }
+                bottles[i] = bottle | (1L << numOfLayers);
+            }
+
+            int patternCost = patternDatabases[pattern].cost(patternDatabases[pattern].key(bottles));
+            if (patternCost == PatternDatabase.UNREACHABLE) {
+                // every pour of the puzzle is a pour of the abstraction, so the state can not reach a goal either
+                return Problem.DEAD_END;
+            }
+            heuristicCost += patternCost;
+        }
+
+        return heuristicCost;
+    }
+}
@@ -3,23 +3,237 @@ package code;
 import java.util.List;
 
 public abstract class Problem {
+    // heuristic cost of a state from which no goal can be reached, the informed searches drop the state instead of adding it to a path cost
+    public static final int DEAD_END = Integer.MAX_VALUE;
+
     public State initialState;
     public String[] operators;
     public int treeDepth = 0;
+    public VisitedSet.Storage visitedStatesStorage = VisitedSet.Storage.HEAP;
+    public VisitedSet.Statistics visitedStatesStatistics; // statistics of the visited states of the last search
+    public int peakFrontierSize = 0; // largest number of generated nodes waiting to be expanded at once, updated by the searches
+    public NodePool.Layout nodeLayout = NodePool.Layout.OBJECTS; // how the searches through generalSearch keep their nodes
+    public NodePool.Statistics nodePoolStatistics; // size of the node pool of the last search that used one
 
     public Problem(State initialState, String[] operators) {
         this.initialState = initialState;
         this.operators = operators;
     }
 
-    public abstract State transitionFunction(State state, String operator);
+    public abstract State transitionFunction(State state, int move);
 
     public abstract boolean goalTest(State state);
 
-    public abstract int pathCost(State state, String operation);
+    public abstract int pathCost(State state, int move);
 
     public abstract List<Node> expand(Node node);
 
     public abstract int heuristicCost(State state);
+
+    /**
+     * The heuristic cost of a state reached by applying a move to a state whose heuristic cost is known.
+     * Problems whose heuristic only depends on the parts of the state a move changes can update the known cost,
+     * by default the state is evaluated from scratch
+     *
+     * @param state                 the state after the move
+     * @param move                  the move applied
+     * @param previousHeuristicCost the heuristic cost of the state before the move
+     * @return the heuristic cost of the state
+     */
+    public int heuristicCost(State state, int move, int previousHeuristicCost) {
+        return heuristicCost(state);
+    }
+
+    /**
+     * The heuristic cost of the state of a node, updated from the heuristic cost of its parent when it is known
+     *
+     * @param node a generated node
+     * @return the heuristic cost of the state of the node
+     */
+    public int heuristicCost(Node node) {
+        if (node.parent != null && node.parent.heuristicCost != -1 && node.move != -1) {
+            return heuristicCost(node.state, node.move, node.parent.heuristicCost);
+        }
+        return heuristicCost(node.state);
+    }
+
+    /**
+     * The key used to detect duplicate states, problems with symmetric states may give them the same key
+     *
+     * @param state a generated state
+     * @return the key of the state
+     */
+    public PackedState stateKey(State state) {
+        return state.key();
+    }
+
+    /**
+     * Add a state to a set of visited states
+     *
+     * @param visitedStates the set of visited states
+     * @param state         a generated state
+     * @return whether the state was not visited before
+     */
+    public boolean markVisited(VisitedSet visitedStates, State state) {
+        if (hasPlainStateKeys()) {
+            return visitedStates.add(state.packedWords(), state.fingerprint()); // the words are copied into the set
+        }
+        return visitedStates.add(stateKey(state));
+    }
+
+    /**
+     * Whether the key of every state is its own packed words and fingerprint, so the visited states can be probed
+     * without allocating a key, problems that give symmetric states the same key return false
+     */
+    public boolean hasPlainStateKeys() {
+        return false;
+    }
+
+    /**
+     * Whether the problem can apply and undo moves on a single state, which the in-place depth first search needs
+     **/
+    public boolean supportsInPlaceMoves() {
+        return false;
+    }
+
+    /**
+     * Expand a state into the moves that can be applied to it (the in-place counterpart of expand)
+     *
+     * @param state the state to expand
+     * @return the moves in the order expand generates the children
+     */
+    public int[] expandMoves(State state) {
+        throw new UnsupportedOperationException("Problem does not support in-place moves");
+    }
+
+    /**
+     * Apply a move to a state in place
+     *
+     * @param state the state to change
+     * @param move  a move returned by expandMoves for this state
+     */
+    public void applyMove(State state, int move) {
+        throw new UnsupportedOperationException("Problem does not support in-place moves");
+    }
+
+    /**
+     * Undo a move that was the last move applied to a state
+     *
+     * @param state the state to change
+     * @param move  the move to undo
+     */
+    public void undoMove(State state, int move) {
+        throw new UnsupportedOperationException("Problem does not support in-place moves");
+    }
+
+    /**
+     * The path cost of a move
+     *
+     * @param move a move returned by expandMoves
+     * @return the cost of applying the move
+     */
+    public int moveCost(int move) {
+        throw new UnsupportedOperationException("Problem does not support in-place moves");
+    }
+
+    /**
+     * Create the child node reached by applying a move to the state of a node
+     *
+     * @param node the parent node
+     * @param move a move returned by expandMoves for the state of the node
+     * @return the child node
+     */
+    public Node makeChild(Node node, int move) {
+        throw new UnsupportedOperationException("Problem does not support in-place moves");
+    }
+
+    /**
+     * Whether the problem can pack a state into a fixed number of longs and back, which the node pool needs
+     **/
+    public boolean supportsPackedStates() {
+        return false;
+    }
+
+    /**
+     * Number of longs a packed state of the problem takes
+     *
+     * @param state a state of the problem
+     * @return number of longs
+     */
+    public int packedStateSize(State state) {
+        throw new UnsupportedOperationException("Problem does not support packed states");
+    }
+
+    /**
+     * Copy a state into an array of longs
+     *
+     * @param state  the state to pack
+     * @param words  the array to copy into
+     * @param offset index of the first long of the state in the array
+     */
+    public void packState(State state, long[] words, int offset) {
+        throw new UnsupportedOperationException("Problem does not support packed states");
+    }
+
+    /**
+     * Change a state into a state that was packed into an array of longs
+     *
+     * @param state  the state to change
+     * @param words  the array of packed states
+     * @param offset index of the first long of the packed state in the array
+     */
+    public void unpackState(State state, long[] words, int offset) {
+        throw new UnsupportedOperationException("Problem does not support packed states");
+    }
+
+    /**
+     * Whether the problem can enumerate its goal states and expand states backwards, which the bidirectional search needs
+     **/
+    public boolean supportsBackwardSearch() {
+        return false;
+    }
+
+    /**
+     * Enumerate the goal states that have the same contents as the initial state, one per meeting key
+     *
+     * @param maxNumOfGoalStates the largest number of goal states to enumerate
+     * @return the goal states, or null if there are more than maxNumOfGoalStates
+     */
+    public List<State> goalStates(int maxNumOfGoalStates) {
+        throw new UnsupportedOperationException("Problem does not support backward search");
+    }
+
+    /**
+     * The key by which the forward and backward searches of the bidirectional search meet,
+     * problems with symmetric states may give them the same key
+     *
+     * @param state a generated state
+     * @return the key of the state
+     */
+    public PackedState meetingKey(State state) {
+        return stateKey(state);
+    }
+
+    /**
+     * Map a move applied to a state to the move with the same effect on a state with the same meeting key
+     *
+     * @param fromState the state the move is applied to
+     * @param toState   a state with the same meeting key as fromState
+     * @param move      the move applied to fromState
+     * @return the move to apply to toState
+     */
+    public int mapMove(State fromState, State toState, int move) {
+        return move;
+    }
+
+    /**
+     * Expand a node backwards into the nodes of the states that reach its state by a single operator
+     *
+     * @param node the node to expand, whose path cost is the cost from its state to a goal
+     * @return the previous nodes, each with the operator that leads from its state to the state of the expanded node
+     */
+    public List<Node> expandBackward(Node node) {
+        throw new UnsupportedOperationException("Problem does not support backward search");
+    }
 }
 
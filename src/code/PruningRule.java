@@ -0,0 +1,27 @@
+package code;
+
+/**
+ * Rules that discard legal pours during move generation because they can never be needed by a solution.
+ * No rule is enabled by default, as discarding pours changes the nodes a search expands and the plan it returns.
+ */
+public enum PruningRule {
+
+    /**
+     * A bottle holding a single color is poured entirely into an empty bottle.
+     * The result is the same state with two bottles swapped, so the pour never makes progress.
+     */
+    UNIFORM_SOURCE_INTO_EMPTY,
+
+    /**
+     * A pour into an empty bottle when a bottle with a lower index is also empty.
+     * Pouring into any empty bottle gives the same state up to the order of the bottles, so only the first one is kept.
+     */
+    DUPLICATE_EMPTY_TARGET,
+
+    /**
+     * A pour out of a full bottle holding a single color.
+     * Such a bottle is already sorted; this is only guaranteed to keep a solution when every color
+     * fills exactly whole bottles, so the rule is ignored for puzzles where a color does not.
+     */
+    COMPLETED_SOURCE
+}
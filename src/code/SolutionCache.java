@@ -0,0 +1,155 @@
+package code;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the results of earlier solves, bounded by the total weight of its entries and evicting the least
+ * recently used entries first. A solve is keyed by the canonical puzzle of its {@link CanonicalInstance} (so puzzles
+ * that only differ in the names of their colors and the order of their bottles share an entry), the strategy
+ * and the configuration of the solver that changes the result.
+ * <p>
+ * The cached result is the string the solve returned with its pours translated to the bottles of the canonical
+ * puzzle. A hit is translated back to the bottles of the puzzle that was asked, so it has the same path cost and
+ * nodes expanded as the search that produced it, and the same plan for the same puzzle.
+ * The cache can be shared by several solvers on different threads.
+ */
+public class SolutionCache {
+
+    static final int ENTRY_OVERHEAD = 128; // approximate bytes of the map entry, the key and the strings around the characters
+
+    /**
+     * The key of a solve
+     *
+     * @param state         the canonical puzzle in the format of {@link WaterSortSearch#solve}
+     * @param strategy      the strategy code
+     * @param configuration the configuration of the solver that changes the result of the search
+     */
+    public record Key(String state, String strategy, String configuration) {}
+
+    /**
+     * The state and the counters of a cache
+     */
+    public static class Statistics {
+        public final long maxWeight;
+        public final long weight;
+        public final int size;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+
+        Statistics(long maxWeight, long weight, int size, long hits, long misses, long evictions) {
+            this.maxWeight = maxWeight;
+            this.weight = weight;
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("solutions: %d, weight: %d of %d bytes, hits: %d, misses: %d, hit rate: %.2f%%, evictions: %d",
+                    size, weight, maxWeight, hits, misses, 100 * hitRate(), evictions);
+        }
+    }
+
+    long maxWeight;
+    long weight = 0;
+    LinkedHashMap<Key, String> solutions = new LinkedHashMap<>(16, 0.75f, true); // in order of last access
+    long hits = 0;
+    long misses = 0;
+    long evictions = 0;
+
+    /**
+     * Create a cache
+     *
+     * @param maxWeight the largest total weight of the cached solves, in approximate bytes
+     */
+    public SolutionCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * The key of a solve of a puzzle by a solver
+     *
+     * @param instance the canonical instance of the puzzle
+     * @param strategy the strategy code
+     * @param solver   the solver, whose configuration is part of the key
+     * @return the key
+     */
+    public static Key key(CanonicalInstance instance, String strategy, WaterSortSolver solver) {
+        // the parallel searches and the node pool may expand other nodes or reach another goal than the sequential search
+        String configuration = solver.symmetry + ";" + solver.pruningRules + ";" + solver.maxNumOfGoalStates + ";"
+                + solver.aStarParallelism + ";" + solver.breadthFirstParallelism + ";" + solver.nodeLayout;
+        return new Key(instance.key(), strategy, configuration);
+    }
+
+    /**
+     * Get the result of an earlier solve
+     *
+     * @param key the key of the solve
+     * @return the result, or null if it is not in the cache
+     */
+    public synchronized String get(Key key) {
+        String solution = solutions.get(key); // moves the entry to the most recently used end
+        if (solution != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return solution;
+    }
+
+    /**
+     * Add the result of a solve, evicting the least recently used results till the cache is within its weight
+     *
+     * @param key      the key of the solve
+     * @param solution the result of the solve
+     */
+    public synchronized void put(Key key, String solution) {
+        long entryWeight = weight(key, solution);
+        if (entryWeight > maxWeight) {
+            return; // would evict everything else and still not fit
+        }
+
+        String previousSolution = solutions.put(key, solution);
+        weight += entryWeight;
+        if (previousSolution != null) {
+            weight -= weight(key, previousSolution); // solved again by another thread after a miss
+        }
+
+        Iterator<Map.Entry<Key, String>> eldest = solutions.entrySet().iterator();
+        while (weight > maxWeight) {
+            Map.Entry<Key, String> entry = eldest.next();
+            weight -= weight(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Remove all the results, the counters are kept
+     */
+    public synchronized void clear() {
+        solutions.clear();
+        weight = 0;
+    }
+
+    public synchronized Statistics statistics() {
+        return new Statistics(maxWeight, weight, solutions.size(), hits, misses, evictions);
+    }
+
+    /**
+     * The approximate number of bytes an entry keeps alive
+     */
+    static long weight(Key key, String solution) {
+        long numOfChars = key.state().length() + key.strategy().length() + key.configuration().length() + solution.length();
+        return ENTRY_OVERHEAD + 2 * numOfChars;
+    }
+}
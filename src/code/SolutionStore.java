@@ -0,0 +1,536 @@
+package code;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent store of the results of solves, so a restarted process answers the puzzles it solved before
+ * without searching. It is kept in a directory as two files:
+ * <ul>
+ * <li>solutions.log, an append-only log of records (key of the solve, result), each with its length and a CRC-32
+ * of its contents. A record is written and forced to the disk before it is indexed, so a crash can only leave
+ * a partly written record at the end of the log, which is cut off when the store is opened again.</li>
+ * <li>solutions.idx, a memory-mapped open addressing hash table from the 64-bit hash of a key to the offset of
+ * its latest record, so a lookup reads a slot or two and a single record instead of the whole log.
+ * The index remembers how much of the log it covers, and the records after that are indexed when the store is opened.
+ * An index of another log (e.g. one that was replaced by a compaction) is rebuilt from the log.</li>
+ * </ul>
+ * A key that is stored again gets a new record that replaces the old one in the index,
+ * {@link #compact} rewrites the log with only the latest records. The keys and the results are those of the
+ * {@link SolutionCache}, with the pours of the canonical puzzle.
+ * A store is used by a single process at a time, which holds a lock on solutions.lock.
+ */
+public final class SolutionStore implements AutoCloseable {
+
+    static final int LOG_MAGIC = 0x57534C47; // "WSLG"
+    static final int INDEX_MAGIC = 0x57534958; // "WSIX"
+    static final int VERSION = 1;
+    static final int LOG_HEADER_BYTES = 16; // magic, version, generation
+    static final int INDEX_HEADER_BYTES = 32; // magic, version, capacity, number of entries, generation, length of the log indexed
+    static final int SLOT_BYTES = 16; // hash of the key, offset of the record (0 for an empty slot)
+    static final int RECORD_HEADER_BYTES = 8; // length of the contents, CRC-32 of the contents
+    static final int MIN_CAPACITY = 1024;
+
+    /**
+     * The size and the counters of a store
+     */
+    public static class Statistics {
+        public final int numOfEntries;
+        public final long logBytes;
+        public final long hits;
+        public final long misses;
+        public final long appends;
+
+        Statistics(int numOfEntries, long logBytes, long hits, long misses, long appends) {
+            this.numOfEntries = numOfEntries;
+            this.logBytes = logBytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.appends = appends;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("solutions: %d, log: %d bytes, hits: %d, misses: %d, appends: %d",
+                    numOfEntries, logBytes, hits, misses, appends);
+        }
+    }
+
+    /**
+     * The contents of a record of the log
+     */
+    record Record(byte[] key, String solution) {}
+
+    Path directory;
+    Path logFile;
+    Path indexFile;
+    FileChannel lockChannel;
+    FileLock lock;
+
+    FileChannel log;
+    long logLength; // end of the last complete record
+    long generation; // random id of the log, kept in the index that covers it
+    MappedByteBuffer index;
+    int capacity; // number of slots, a power of two
+    int numOfEntries;
+
+    long hits = 0;
+    long misses = 0;
+    long appends = 0;
+
+    /**
+     * Open the store of a directory, creating it if it does not exist
+     *
+     * @param directory directory of the files of the store
+     * @throws IOException if the files can not be read or another process uses the store
+     */
+    public SolutionStore(Path directory) throws IOException {
+        this.directory = directory.toAbsolutePath();
+        this.logFile = this.directory.resolve("solutions.log");
+        this.indexFile = this.directory.resolve("solutions.idx");
+        Files.createDirectories(this.directory);
+
+        lockChannel = FileChannel.open(this.directory.resolve("solutions.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // held by another store of this JVM
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Solution store is in use: " + this.directory);
+        }
+
+        try {
+            openLog();
+            openIndex();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the result of a solve that was stored before
+     *
+     * @param key the key of the solve
+     * @return the result, or null if it is not in the store
+     */
+    public synchronized String get(SolutionCache.Key key) {
+        byte[] keyBytes = encodeKey(key);
+        try {
+            long offset = index.getLong(slotPosition(findSlot(hash(keyBytes), keyBytes)) + Long.BYTES);
+            if (offset == 0) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return readRecord(offset).solution();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read solution store " + logFile, e);
+        }
+    }
+
+    /**
+     * Append the result of a solve to the log and index it
+     *
+     * @param key      the key of the solve
+     * @param solution the result of the solve
+     */
+    public synchronized void put(SolutionCache.Key key, String solution) {
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        try {
+            int slot = findSlot(hash, keyBytes);
+            long previousOffset = index.getLong(slotPosition(slot) + Long.BYTES);
+            if (previousOffset != 0 && readRecord(previousOffset).solution().equals(solution)) {
+                return; // already stored
+            }
+
+            // the record is on the disk before the index points to it
+            ByteBuffer record = encodeRecord(keyBytes, solution);
+            long offset = logLength;
+            writeFully(log, record, offset);
+            log.force(false);
+            logLength = offset + record.capacity();
+            appends++;
+
+            if (previousOffset == 0) {
+                numOfEntries++;
+            }
+            setSlot(slot, hash, offset);
+            index.force(slotPosition(slot), SLOT_BYTES);
+            writeIndexHeader(index, logLength);
+            index.force(0, INDEX_HEADER_BYTES);
+
+            if (numOfEntries * 2L > capacity) {
+                resize(capacity * 2);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write solution store " + logFile, e);
+        }
+    }
+
+    /**
+     * Rewrite the log with only the latest record of every key. The new log replaces the old one at once,
+     * and the index is rebuilt for it
+     */
+    public synchronized void compact() {
+        try {
+            long[] offsets = new long[numOfEntries];
+            int numOfOffsets = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                long offset = index.getLong(slotPosition(slot) + Long.BYTES);
+                if (offset != 0) {
+                    offsets[numOfOffsets++] = offset;
+                }
+            }
+            Arrays.sort(offsets, 0, numOfOffsets); // keep the records in the order they were appended
+
+            long newGeneration = newGeneration();
+            Path temporaryFile = Files.createTempFile(directory, "solutions", ".tmp");
+            try {
+                try (FileChannel newLog = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                    writeFully(newLog, logHeader(newGeneration), 0);
+                    long position = LOG_HEADER_BYTES;
+                    for (int i = 0; i < numOfOffsets; i++) {
+                        ByteBuffer record = readRecordBytes(offsets[i]);
+                        writeFully(newLog, record, position);
+                        position += record.capacity();
+                    }
+                    newLog.force(true);
+                }
+                Files.move(temporaryFile, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+
+            // until the new index is in place, the generation of the old index does not match the new log
+            log.close();
+            openLog();
+            rebuildIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not compact solution store " + logFile, e);
+        }
+    }
+
+    public synchronized Statistics statistics() {
+        return new Statistics(numOfEntries, logLength, hits, misses, appends);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (log != null) {
+                log.close();
+            }
+        } finally {
+            index = null;
+            if (lock != null) {
+                lock.release();
+            }
+            lockChannel.close();
+        }
+    }
+
+    // <editor-fold desc="Log">
+
+    void openLog() throws IOException {
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (log.size() < LOG_HEADER_BYTES) {
+            // a new log, or one whose creation did not complete
+            generation = newGeneration();
+            log.truncate(0);
+            writeFully(log, logHeader(generation), 0);
+            log.force(true);
+        } else {
+            ByteBuffer header = readFully(0, LOG_HEADER_BYTES);
+            if (header.getInt(0) != LOG_MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a solution store log: " + logFile);
+            }
+            generation = header.getLong(8);
+        }
+        logLength = log.size();
+    }
+
+    static ByteBuffer logHeader(long generation) {
+        return ByteBuffer.allocate(LOG_HEADER_BYTES).order(ByteOrder.BIG_ENDIAN)
+                .putInt(LOG_MAGIC).putInt(VERSION).putLong(generation).flip();
+    }
+
+    static long newGeneration() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Encode a record: the length and the CRC-32 of the contents, then the key and the result, each after its length
+     */
+    static ByteBuffer encodeRecord(byte[] keyBytes, String solution) {
+        byte[] solutionBytes = solution.getBytes(StandardCharsets.UTF_8);
+        int contentBytes = Integer.BYTES + keyBytes.length + Integer.BYTES + solutionBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + contentBytes).order(ByteOrder.BIG_ENDIAN);
+        record.putInt(contentBytes).putInt(0)
+                .putInt(keyBytes.length).put(keyBytes)
+                .putInt(solutionBytes.length).put(solutionBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, contentBytes);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.flip();
+    }
+
+    /**
+     * Read the whole record at an offset, including its header
+     *
+     * @return the record, or null if it is not complete or its CRC does not match
+     */
+    ByteBuffer readRecordBytes(long offset) throws IOException {
+        if (offset + RECORD_HEADER_BYTES > logLength) {
+            return null;
+        }
+        ByteBuffer header = readFully(offset, RECORD_HEADER_BYTES);
+        int contentBytes = header.getInt(0);
+        if (contentBytes < 2 * Integer.BYTES || offset + RECORD_HEADER_BYTES + contentBytes > logLength) {
+            return null;
+        }
+
+        ByteBuffer record = readFully(offset, RECORD_HEADER_BYTES + contentBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, contentBytes);
+        return (int) crc.getValue() == record.getInt(Integer.BYTES) ? record : null;
+    }
+
+    /**
+     * Read and decode the record at an offset that was indexed
+     */
+    Record readRecord(long offset) throws IOException {
+        ByteBuffer record = readRecordBytes(offset);
+        if (record == null) {
+            throw new IOException("Corrupt solution store record at " + offset);
+        }
+        return decodeRecord(record);
+    }
+
+    static Record decodeRecord(ByteBuffer record) {
+        record.position(RECORD_HEADER_BYTES);
+        byte[] keyBytes = new byte[record.getInt()];
+        record.get(keyBytes);
+        byte[] solutionBytes = new byte[record.getInt()];
+        record.get(solutionBytes);
+        return new Record(keyBytes, new String(solutionBytes, StandardCharsets.UTF_8));
+    }
+
+    ByteBuffer readFully(long position, int numOfBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(numOfBytes).order(ByteOrder.BIG_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of solution store log: " + logFile);
+            }
+        }
+        return buffer.flip();
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold desc="Index">
+
+    /**
+     * Map the index, rebuilding it if it does not belong to the log, and index the records appended after it was written
+     */
+    void openIndex() throws IOException {
+        long indexedLogLength = -1;
+        if (Files.exists(indexFile)) {
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() >= INDEX_HEADER_BYTES) {
+                    index = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                }
+            }
+            if (index != null && index.getInt(0) == INDEX_MAGIC && index.getInt(4) == VERSION
+                    && index.getLong(16) == generation && index.getLong(24) <= logLength
+                    && index.capacity() == INDEX_HEADER_BYTES + (long) index.getInt(8) * SLOT_BYTES) {
+                capacity = index.getInt(8);
+                numOfEntries = countEntries(); // the header may be older than the slots, or newer after a crash in a resize
+                indexedLogLength = index.getLong(24);
+            }
+        }
+
+        if (indexedLogLength == -1) {
+            rebuildIndex();
+        } else {
+            indexRecords(indexedLogLength);
+        }
+    }
+
+    /**
+     * Count the occupied slots of the index
+     */
+    int countEntries() {
+        int count = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (index.getLong(slotPosition(slot) + Long.BYTES) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Index the whole log into a new index
+     */
+    void rebuildIndex() throws IOException {
+        numOfEntries = 0;
+        installIndex(MIN_CAPACITY);
+        indexRecords(LOG_HEADER_BYTES);
+    }
+
+    /**
+     * Index the records of the log from an offset, cutting off a record that was not completely written
+     */
+    void indexRecords(long offset) throws IOException {
+        while (offset < logLength) {
+            ByteBuffer record = readRecordBytes(offset);
+            if (record == null) {
+                log.truncate(offset); // the end of an append that did not complete
+                log.force(true);
+                logLength = offset;
+                break;
+            }
+
+            byte[] keyBytes = decodeRecord(record).key();
+            long hash = hash(keyBytes);
+            int slot = findSlot(hash, keyBytes);
+            if (index.getLong(slotPosition(slot) + Long.BYTES) == 0) {
+                numOfEntries++;
+            }
+            setSlot(slot, hash, offset);
+            if (numOfEntries * 2L > capacity) {
+                resize(capacity * 2);
+            }
+            offset += record.capacity();
+        }
+
+        writeIndexHeader(index, logLength);
+        index.force();
+    }
+
+    /**
+     * Find the slot of a key, or the empty slot where it would be added
+     */
+    int findSlot(long hash, byte[] keyBytes) throws IOException {
+        int mask = capacity - 1;
+        for (int slot = (int) (hash ^ (hash >>> 32)) & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long offset = index.getLong(position + Long.BYTES);
+            if (offset == 0 || (index.getLong(position) == hash && Arrays.equals(readRecord(offset).key(), keyBytes))) {
+                return slot;
+            }
+        }
+    }
+
+    void setSlot(int slot, long hash, long offset) {
+        int position = slotPosition(slot);
+        index.putLong(position, hash);
+        index.putLong(position + Long.BYTES, offset); // the slot is only used once the offset is set
+    }
+
+    static int slotPosition(int slot) {
+        return INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    /**
+     * Write the header of an index that covers the records of the log before an offset
+     */
+    void writeIndexHeader(ByteBuffer buffer, long indexedLogLength) {
+        buffer.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putInt(8, capacity).putInt(12, numOfEntries)
+                .putLong(16, generation).putLong(24, indexedLogLength);
+    }
+
+    /**
+     * Move the slots into an index with more slots
+     */
+    void resize(int newCapacity) throws IOException {
+        MappedByteBuffer oldIndex = index;
+        int oldCapacity = capacity;
+        installIndex(newCapacity);
+
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            long hash = oldIndex.getLong(slotPosition(oldSlot));
+            long offset = oldIndex.getLong(slotPosition(oldSlot) + Long.BYTES);
+            if (offset != 0) {
+                int slot = (int) (hash ^ (hash >>> 32)) & mask;
+                while (index.getLong(slotPosition(slot) + Long.BYTES) != 0) {
+                    slot = (slot + 1) & mask; // the keys of the old index are distinct
+                }
+                setSlot(slot, hash, offset);
+            }
+        }
+        writeIndexHeader(index, oldIndex.getLong(24)); // covers what the old index covered
+        index.force();
+    }
+
+    /**
+     * Replace the index file with an empty index and map it. It is written to a temporary file first,
+     * so the index file is always complete
+     */
+    void installIndex(int newCapacity) throws IOException {
+        capacity = newCapacity;
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        writeIndexHeader(header, LOG_HEADER_BYTES); // covers no records till they are indexed
+
+        Path temporaryFile = Files.createTempFile(directory, "solutions", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                writeFully(channel, header, 0);
+                channel.truncate(INDEX_HEADER_BYTES + (long) newCapacity * SLOT_BYTES);
+                channel.write(ByteBuffer.allocate(1), INDEX_HEADER_BYTES + (long) newCapacity * SLOT_BYTES - 1); // empty slots
+                channel.force(true);
+            }
+            Files.move(temporaryFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            index = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    // </editor-fold>
+
+    static byte[] encodeKey(SolutionCache.Key key) {
+        return (key.state() + "\n" + key.strategy() + "\n" + key.configuration()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the bytes of a key
+     */
+    static long hash(byte[] keyBytes) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : keyBytes) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+}
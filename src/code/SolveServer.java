@@ -0,0 +1,297 @@
+package code;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long running solve server on localhost, so every puzzle is solved by a warm JVM instead of paying for the
+ * startup and the JIT compilation of a new one. It uses the HTTP server of the JDK:
+ * <ul>
+ * <li>{@code POST /solve?strategy=AS1} with the puzzle in the format of {@link WaterSortSearch#solve} as the body
+ * (or {@code GET /solve?strategy=AS1&state=...}) answers with the result of the solve</li>
+ * <li>{@code GET /stats} answers with the throughput and the latency percentiles of the solves</li>
+ * </ul>
+ * Puzzles that were solved before are answered from a {@link SolutionCache} shared by the workers,
+ * and from a {@link SolutionStore} if the server is given one, so they are still known after a restart.
+ * Solves are queued for a fixed number of worker threads. When the queue is full the request is answered with
+ * 503 right away, so an overloaded server does not build up an unbounded backlog. Every solve is bounded by
+ * {@link #timeLimit} and {@link #maxNumOfNodes}, a solve that exceeds them is answered with 503 as well.
+ */
+public final class SolveServer implements AutoCloseable {
+
+    static final int LATENCY_WINDOW = 4096; // number of recent latencies the percentiles are taken from
+    static final long SOLUTION_CACHE_WEIGHT = 64L << 20; // approximate bytes of the cached solutions
+    static final Duration DEFAULT_TIME_LIMIT = Duration.ofSeconds(30);
+    static final long DEFAULT_MAX_NUM_OF_NODES = 5_000_000;
+
+    public volatile Duration timeLimit = DEFAULT_TIME_LIMIT; // longest time a single solve may search, null for no limit
+    public volatile long maxNumOfNodes = DEFAULT_MAX_NUM_OF_NODES; // most nodes a single solve may generate, 0 for no limit
+
+    HttpServer server;
+    ThreadPoolExecutor workers;
+    SolutionCache solutionCache = new SolutionCache(SOLUTION_CACHE_WEIGHT);
+    SolutionStore solutionStore; // null to keep the solutions in memory only
+    long startTime = System.nanoTime();
+
+    AtomicLong numOfSolved = new AtomicLong();
+    AtomicLong numOfFailed = new AtomicLong();
+    AtomicLong numOfRejected = new AtomicLong();
+    long[] latencies = new long[LATENCY_WINDOW]; // ring buffer of the latencies in nanoseconds, guarded by this
+    int numOfLatencies = 0;
+
+    /**
+     * Start a server on localhost
+     *
+     * @param port          the port to listen on, 0 for any free port
+     * @param numOfWorkers  number of puzzles solved at once
+     * @param queueCapacity number of requests that can wait for a worker, 0 to reject a request when all workers are busy
+     */
+    public SolveServer(int port, int numOfWorkers, int queueCapacity) throws IOException {
+        this(port, numOfWorkers, queueCapacity, null);
+    }
+
+    /**
+     * Start a server on localhost that keeps the solutions in a store
+     *
+     * @param port          the port to listen on, 0 for any free port
+     * @param numOfWorkers  number of puzzles solved at once
+     * @param queueCapacity number of requests that can wait for a worker, 0 to reject a request when all workers are busy
+     * @param solutionStore the store of the solutions (can be null), it is not closed by the server
+     */
+    public SolveServer(int port, int numOfWorkers, int queueCapacity, SolutionStore solutionStore) throws IOException {
+        this.solutionStore = solutionStore;
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        this.workers = new ThreadPoolExecutor(numOfWorkers, numOfWorkers, 0, TimeUnit.MILLISECONDS, queue,
+                Thread.ofPlatform().name("solve-worker-", 0).factory());
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/stats", this::handleStats);
+        server.start(); // the query of a request is checked on the dispatcher thread, the body is read and solved by a worker
+    }
+
+    /**
+     * The port the server listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    void handleSolve(HttpExchange exchange) throws IOException {
+        long acceptTime = System.nanoTime();
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        String strategy = parameters.get("strategy");
+        boolean isPost = exchange.getRequestMethod().equals("POST");
+        if (!isPost && !exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, "Use GET or POST");
+            return;
+        }
+        if (strategy == null) {
+            respond(exchange, 400, "Missing strategy");
+            return;
+        }
+        // an unknown strategy is answered before it takes a worker or reaches the solution cache
+        if (!WaterSortSolver.STRATEGIES.contains(strategy)) {
+            respond(exchange, 400, "Unknown strategy: " + strategy);
+            return;
+        }
+
+        try {
+            // a slow client only holds the worker reading its body, not the dispatcher thread of every request
+            workers.execute(() -> solve(exchange, isPost, parameters.get("state"), strategy, acceptTime));
+        } catch (RejectedExecutionException e) {
+            numOfRejected.incrementAndGet();
+            respond(exchange, 503, "Server is overloaded");
+        }
+    }
+
+    /**
+     * Read the puzzle of a queued request on a worker, solve it and answer it
+     *
+     * @param isPost       whether the puzzle is the body of the request
+     * @param initialState the puzzle of a GET request
+     */
+    void solve(HttpExchange exchange, boolean isPost, String initialState, String strategy, long acceptTime) {
+        try {
+            if (isPost) {
+                try (InputStream body = exchange.getRequestBody()) {
+                    initialState = new String(body.readAllBytes(), StandardCharsets.UTF_8).trim();
+                }
+            }
+            if (initialState == null || initialState.isEmpty()) {
+                respond(exchange, 400, "Missing initial state");
+                return;
+            }
+
+            int status;
+            String response;
+            try {
+                WaterSortSolver solver = new WaterSortSolver();
+                solver.solutionCache = solutionCache;
+                solver.solutionStore = solutionStore;
+                solver.timeLimit = timeLimit;
+                solver.maxNumOfNodes = maxNumOfNodes;
+                response = solver.solve(initialState, strategy);
+                status = 200;
+                numOfSolved.incrementAndGet();
+            } catch (BudgetExceededException e) {
+                response = "Can not solve the puzzle within the limits of the server: " + e.getMessage();
+                status = 503;
+                numOfFailed.incrementAndGet();
+            } catch (IllegalArgumentException e) {
+                // a malformed puzzle
+                response = "Can not solve the puzzle: " + e.getMessage();
+                status = 400;
+                numOfFailed.incrementAndGet();
+            } catch (Throwable e) {
+                // a bug or an OutOfMemoryError, the nodes of the solve are released so the worker can go on
+                response = "Failed to solve the puzzle: " + e;
+                status = 500;
+                numOfFailed.incrementAndGet();
+            }
+            recordLatency(System.nanoTime() - acceptTime);
+
+            respond(exchange, status, response);
+        } catch (IOException e) {
+            // the client went away while sending the puzzle or before it was answered
+        } finally {
+            exchange.close(); // a no-op once the response was sent, frees the connection of an unanswered request
+        }
+    }
+
+    void handleStats(HttpExchange exchange) throws IOException {
+        long[] sortedLatencies;
+        synchronized (this) {
+            sortedLatencies = Arrays.copyOf(latencies, Math.min(numOfLatencies, LATENCY_WINDOW));
+        }
+        Arrays.sort(sortedLatencies);
+
+        SolutionCache.Statistics cacheStatistics = solutionCache.statistics();
+        long numOfCompleted = numOfSolved.get() + numOfFailed.get();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        String stats = "{"
+                + "\"solved\": " + numOfSolved.get()
+                + ", \"failed\": " + numOfFailed.get()
+                + ", \"rejected\": " + numOfRejected.get()
+                + ", \"queued\": " + workers.getQueue().size()
+                + ", \"running\": " + workers.getActiveCount()
+                + ", \"throughput\": " + String.format("%.3f", numOfCompleted / seconds)
+                + ", \"latencyMillis\": {"
+                + "\"p50\": " + percentile(sortedLatencies, 50)
+                + ", \"p90\": " + percentile(sortedLatencies, 90)
+                + ", \"p99\": " + percentile(sortedLatencies, 99)
+                + ", \"max\": " + percentile(sortedLatencies, 100)
+                + "}, \"solutionCache\": {"
+                + "\"size\": " + cacheStatistics.size
+                + ", \"hits\": " + cacheStatistics.hits
+                + ", \"misses\": " + cacheStatistics.misses
+                + ", \"evictions\": " + cacheStatistics.evictions
+                + "}";
+        if (solutionStore != null) {
+            SolutionStore.Statistics storeStatistics = solutionStore.statistics();
+            stats += ", \"solutionStore\": {"
+                    + "\"size\": " + storeStatistics.numOfEntries
+                    + ", \"logBytes\": " + storeStatistics.logBytes
+                    + ", \"hits\": " + storeStatistics.hits
+                    + ", \"misses\": " + storeStatistics.misses
+                    + "}";
+        }
+        stats += "}";
+        respond(exchange, 200, stats);
+    }
+
+    synchronized void recordLatency(long nanos) {
+        latencies[numOfLatencies++ % LATENCY_WINDOW] = nanos;
+    }
+
+    /**
+     * The nearest-rank percentile of sorted latencies, in milliseconds
+     */
+    static String percentile(long[] sortedLatencies, int percent) {
+        if (sortedLatencies.length == 0) {
+            return "null";
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sortedLatencies.length);
+        return String.format("%.3f", sortedLatencies[Math.max(rank, 1) - 1] / 1e6);
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    static void respond(HttpExchange exchange, int status, String response) throws IOException {
+        byte[] bytes = (response + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", status == 200 && response.startsWith("{") ? "application/json" : "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    /**
+     * Stop accepting requests and wait for the solves that were accepted
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run a server: java code.SolveServer [port] [numOfWorkers] [queueCapacity] [solutionStoreDirectory]
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int numOfWorkers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        SolutionStore solutionStore = args.length > 3 ? new SolutionStore(Path.of(args[3])) : null;
+
+        // solve a few puzzles before listening, so the first requests are not answered by interpreted code
+        String warmUpState = "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;";
+        for (int round = 0; round < 200; round++) {
+            for (String strategy : new String[]{"BF", "DF", "UC", "GR1", "AS1", "AS2", "IDA1"}) {
+                new WaterSortSolver().solve(warmUpState, strategy);
+            }
+        }
+
+        SolveServer solveServer = new SolveServer(port, numOfWorkers, queueCapacity, solutionStore);
+        System.out.println(ConsoleColors.GREEN_BOLD + "Solve server: " + ConsoleColors.RESET + "http://localhost:" + solveServer.port()
+                + " (" + numOfWorkers + " workers, queue of " + queueCapacity + ")");
+    }
+}
@@ -2,5 +2,34 @@ package code;
 
 public abstract class State {
 
+    /**
+     * A compact key of the state, two states have equal keys only if they are the same state
+     *
+     * @return the key of the state
+     */
+    public abstract PackedState key();
 
+    /**
+     * A 64-bit hash of the state, equal states always have equal fingerprints
+     *
+     * @return the fingerprint of the state
+     */
+    public abstract long fingerprint();
+
+    /**
+     * The packed words of the key of the state, states that keep their layers packed return them without copying,
+     * so the words change with the state
+     *
+     * @return the packed words
+     */
+    public long[] packedWords() {
+        return key().words;
+    }
+
+    /**
+     * A deep copy of the state that can be changed without affecting this state
+     *
+     * @return the copy
+     */
+    public abstract State copy();
 }
@@ -0,0 +1,348 @@
+package code;
+
+/**
+ * Heuristic 2 (the number of swaps needed to reach a goal) computed on the color ids of the packed layers.
+ * The arrays it works on are kept per thread and reused, so an evaluation allocates nothing once they are large enough.
+ * <p>
+ * It gives the same costs as {@link WaterSortSearch#calculateHeuristicCost2Reference}. Where the reference breaks a tie
+ * by the iteration order of a {@link java.util.HashMap} of color letters, the same order is rebuilt from the letters:
+ * entries are visited by bucket (letter masked by the table size) and then in insertion order, which holds as long as
+ * no bucket has more than 8 colors (always the case for letters).
+ */
+public class SwapHeuristic {
+
+    static final int EMPTY_ID = 0;
+    static final int NO_LABEL = -1;
+
+    static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * The arrays of a single evaluation, grown when a larger puzzle is evaluated
+     */
+    static class Scratch {
+        int[] tubes = new int[0]; // copied color ids, layer j of bottle i at i * bottleCapacity + j
+        int[] labels = new int[0]; // color id each bottle is assigned to, NO_LABEL for none
+        int[] labelCounts = new int[0]; // number of layers of the label color in each bottle
+        int[] numOfColoredLayers = new int[0];
+        boolean[] isExcess = new boolean[0]; // bottles whose label can still be changed
+
+        int[] colorCounts = new int[0]; // number of layers of each color in the state
+        int[] colorRanks = new int[0]; // order in which each color was first seen in the state
+        int[] numOfLabelledBottles = new int[0];
+        int[] numOfBottlesNeeded = new int[0];
+        int[] numOfExcessBottles = new int[0];
+        int[] bottleColorCounts = new int[0]; // number of layers of each color (and empty layers) in a single bottle
+        int[] bottleColorRanks = new int[0]; // order in which each color was first seen in a single bottle
+
+        void ensureCapacity(int numOfBottles, int bottleCapacity, int numOfColors) {
+            if (tubes.length < numOfBottles * bottleCapacity) {
+                tubes = new int[numOfBottles * bottleCapacity];
+            }
+            if (labels.length < numOfBottles) {
+                labels = new int[numOfBottles];
+                labelCounts = new int[numOfBottles];
+                numOfColoredLayers = new int[numOfBottles];
+                isExcess = new boolean[numOfBottles];
+            }
+            if (colorCounts.length < numOfColors + 1) {
+                colorCounts = new int[numOfColors + 1];
+                colorRanks = new int[numOfColors + 1];
+                numOfLabelledBottles = new int[numOfColors + 1];
+                numOfBottlesNeeded = new int[numOfColors + 1];
+                numOfExcessBottles = new int[numOfColors + 1];
+                bottleColorCounts = new int[numOfColors + 1];
+                bottleColorRanks = new int[numOfColors + 1];
+            }
+        }
+    }
+
+    /**
+     * Calculate the number of swaps needed to reach a goal
+     *
+     * @param state the state for which to calculate its heuristic value
+     * @return an integer represent the heuristic cost of the state
+     */
+    public static int cost(WaterSearchState state) {
+        int numOfBottles = state.numOfBottles;
+        int bottleCapacity = state.bottleCapacity;
+        int numOfColors = state.colorDictionary.numOfColors();
+
+        Scratch arrays = scratch.get();
+        arrays.ensureCapacity(numOfBottles, bottleCapacity, numOfColors);
+        int[] tubes = arrays.tubes;
+        int[] labels = arrays.labels;
+        int[] labelCounts = arrays.labelCounts;
+        int[] numOfColoredLayers = arrays.numOfColoredLayers;
+        boolean[] isExcess = arrays.isExcess;
+        int[] colorCounts = arrays.colorCounts;
+        int[] colorRanks = arrays.colorRanks;
+        int[] numOfLabelledBottles = arrays.numOfLabelledBottles;
+        int[] numOfBottlesNeeded = arrays.numOfBottlesNeeded;
+        int[] numOfExcessBottles = arrays.numOfExcessBottles;
+        int[] bottleColorCounts = arrays.bottleColorCounts;
+        int[] bottleColorRanks = arrays.bottleColorRanks;
+
+        for (int color = 0; color <= numOfColors; color++) {
+            colorCounts[color] = 0;
+            numOfLabelledBottles[color] = 0;
+            bottleColorCounts[color] = 0;
+        }
+
+        // copy the color ids and count the layers of every color
+        int numOfDistinctColors = 0;
+        for (int i = 0; i < numOfBottles; i++) {
+            for (int j = 0; j < bottleCapacity; j++) {
+                int id = state.layerId(i, j);
+                tubes[i * bottleCapacity + j] = id;
+                if (id != EMPTY_ID && colorCounts[id]++ == 0) {
+                    colorRanks[id] = numOfDistinctColors++;
+                }
+            }
+        }
+
+        /// Step 3: Assign each bottle a colored label
+        for (int i = 0; i < numOfBottles; i++) {
+            isExcess[i] = false;
+            if (state.arrayOfTopPointers[i] == -1) {
+                labels[i] = NO_LABEL;
+                labelCounts[i] = 0;
+                continue;
+            }
+
+            // the first color to outnumber the others from the top, unless the bottom color has as many layers
+            int bottomColor = tubes[i * bottleCapacity + bottleCapacity - 1];
+            int colorWithMaximumOccurrences = bottomColor;
+            int countOfNumberOfOccurrences = 1;
+            for (int j = 0; j < bottleCapacity; j++) {
+                int id = tubes[i * bottleCapacity + j];
+                if (id == EMPTY_ID) continue;
+                if (++bottleColorCounts[id] > countOfNumberOfOccurrences) {
+                    colorWithMaximumOccurrences = id;
+                    countOfNumberOfOccurrences = bottleColorCounts[id];
+                }
+            }
+
+            labels[i] = bottleColorCounts[bottomColor] == countOfNumberOfOccurrences ? bottomColor : colorWithMaximumOccurrences;
+            labelCounts[i] = countOfNumberOfOccurrences;
+            numOfLabelledBottles[labels[i]]++;
+
+            for (int j = 0; j < bottleCapacity; j++) {
+                bottleColorCounts[tubes[i * bottleCapacity + j]] = 0;
+            }
+        }
+
+        /// Step 5: count the bottles each color still needs or has in excess
+        int numOfColorsNeedingBottles = 0;
+        for (int color = 1; color <= numOfColors; color++) {
+            int remainingNumberOfBottlesNeeded = colorCounts[color] / bottleCapacity - numOfLabelledBottles[color];
+            numOfBottlesNeeded[color] = Math.max(remainingNumberOfBottlesNeeded, 0);
+            numOfExcessBottles[color] = Math.max(-remainingNumberOfBottlesNeeded, 0);
+            if (colorCounts[color] > 0 && remainingNumberOfBottlesNeeded > 0) {
+                numOfColorsNeedingBottles++;
+            }
+        }
+
+        // the excess bottles of a color are the ones with the fewest layers of it, the first bottle first on ties
+        for (int i = 0; i < numOfBottles; i++) {
+            int label = labels[i];
+            if (label == NO_LABEL || numOfExcessBottles[label] == 0) continue;
+
+            int numOfBottlesBefore = 0;
+            for (int k = 0; k < numOfBottles; k++) {
+                if (labels[k] == label && (labelCounts[k] < labelCounts[i] || (labelCounts[k] == labelCounts[i] && k < i))) {
+                    numOfBottlesBefore++;
+                }
+            }
+            isExcess[i] = numOfBottlesBefore < numOfExcessBottles[label];
+        }
+
+        // relabel every excess bottle with the color it has the most layers of among the colors that need a bottle
+        for (int i = 0; i < numOfBottles; i++) {
+            if (!isExcess[i]) continue;
+
+            int numOfEntries = 0;
+            for (int j = 0; j < bottleCapacity; j++) {
+                int id = tubes[i * bottleCapacity + j];
+                if (bottleColorCounts[id]++ == 0) {
+                    bottleColorRanks[id] = numOfEntries++;
+                }
+            }
+
+            int mask = hashTableSize(numOfEntries) - 1;
+            int bestColor = NO_LABEL;
+            for (int j = 0; j < bottleCapacity; j++) {
+                int id = tubes[i * bottleCapacity + j];
+                if (id == EMPTY_ID || numOfBottlesNeeded[id] == 0) continue;
+                if (bestColor == NO_LABEL || bottleColorCounts[id] > bottleColorCounts[bestColor]
+                        || (bottleColorCounts[id] == bottleColorCounts[bestColor]
+                        && isBefore(state, id, bottleColorRanks[id], bestColor, bottleColorRanks[bestColor], mask))) {
+                    bestColor = id;
+                }
+            }
+
+            if (bestColor != NO_LABEL) {
+                labels[i] = bestColor;
+                labelCounts[i] = bottleColorCounts[bestColor];
+                isExcess[i] = false;
+                numOfBottlesNeeded[bestColor]--;
+            }
+
+            for (int j = 0; j < bottleCapacity; j++) {
+                bottleColorCounts[tubes[i * bottleCapacity + j]] = 0;
+            }
+        }
+
+        // the remaining excess bottles all go to the color with the fewest layers left outside its bottles,
+        // the colors after it find no excess bottle left
+        int neededMask = hashTableSize(numOfColorsNeedingBottles) - 1;
+        int colorsMask = hashTableSize(numOfDistinctColors) - 1;
+        int colorWithFewestRemaining = NO_LABEL;
+        int fewestRemaining = 0;
+        for (int color = 1; color <= numOfColors; color++) {
+            int remaining = colorCounts[color] - numOfLabelledBottles[color] * bottleCapacity;
+            if (numOfBottlesNeeded[color] == 0 || remaining <= 0) continue;
+
+            if (colorWithFewestRemaining == NO_LABEL || remaining < fewestRemaining || (remaining == fewestRemaining
+                    && isBefore(state, color, colorWithFewestRemaining, neededMask, colorsMask, colorRanks))) {
+                colorWithFewestRemaining = color;
+                fewestRemaining = remaining;
+            }
+        }
+
+        if (colorWithFewestRemaining != NO_LABEL) {
+            for (int i = 0; i < numOfBottles; i++) {
+                if (isExcess[i]) {
+                    labels[i] = colorWithFewestRemaining;
+                    labelCounts[i] = 0;
+                    isExcess[i] = false;
+                }
+            }
+        }
+
+        /// Step 6: Swap layers
+        for (int i = 0; i < numOfBottles; i++) {
+            numOfColoredLayers[i] = bottleCapacity - state.arrayOfTopPointers[i];
+        }
+
+        int totalNumberOfSwaps = 0;
+
+        for (int i = 0; i < numOfBottles; i++) {
+            int label = labels[i];
+
+            for (int j = 0; j < bottleCapacity; j++) {
+                int layer = i * bottleCapacity + j;
+                if (tubes[layer] == label || tubes[layer] == EMPTY_ID) continue;
+
+                // Step 6.1: swap with a layer of this label in a bottle labelled with the color of the layer
+                // Step 6.2: swap with a layer of this label in any other bottle that is not empty
+                // Step 6.3: swap with an empty layer of a bottle labelled with the color of the layer
+                // Step 6.4: swap with an empty layer of any other bottle
+                if (swapWithLabelColor(tubes, labels, i, layer, bottleCapacity, numOfBottles, true, null)
+                        || swapWithLabelColor(tubes, labels, i, layer, bottleCapacity, numOfBottles, false, numOfColoredLayers)
+                        || swapWithEmpty(tubes, labels, numOfColoredLayers, i, layer, bottleCapacity, numOfBottles, true)
+                        || swapWithEmpty(tubes, labels, numOfColoredLayers, i, layer, bottleCapacity, numOfBottles, false)) {
+                    totalNumberOfSwaps++;
+                }
+            }
+        }
+
+        // Step 6.5: fill the empty layers of every labelled bottle with misplaced layers of its label
+        for (int i = 0; i < numOfBottles; i++) {
+            for (int j = 0; j < bottleCapacity; j++) {
+                int layer = i * bottleCapacity + j;
+                if (tubes[layer] == labels[i] || tubes[layer] != EMPTY_ID) continue;
+
+                if (swapWithLabelColor(tubes, labels, i, layer, bottleCapacity, numOfBottles, false, null)) {
+                    totalNumberOfSwaps++;
+                }
+            }
+        }
+
+        return totalNumberOfSwaps;
+    }
+
+    /**
+     * Swap a layer of bottle i with the first misplaced layer of the label of bottle i found in another bottle
+     *
+     * @param onlyTargetBottles  only look in bottles labelled with the color of the layer
+     * @param numOfColoredLayers if not null, skip the bottles with no colored layers
+     * @return whether the layer was swapped
+     */
+    static boolean swapWithLabelColor(int[] tubes, int[] labels, int i, int layer, int bottleCapacity, int numOfBottles,
+                                      boolean onlyTargetBottles, int[] numOfColoredLayers) {
+        for (int k = 0; k < numOfBottles; k++) {
+            if (i == k || labels[i] == labels[k]) continue;
+            if (onlyTargetBottles && tubes[layer] != labels[k]) continue;
+            if (numOfColoredLayers != null && numOfColoredLayers[k] == 0) continue;
+
+            for (int l = k * bottleCapacity; l < (k + 1) * bottleCapacity; l++) {
+                if (tubes[l] == labels[k] || tubes[l] == EMPTY_ID) continue;
+                if (tubes[l] == labels[i]) {
+                    tubes[l] = tubes[layer];
+                    tubes[layer] = labels[i];
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Swap a layer of bottle i with the first empty layer found in another bottle
+     *
+     * @param onlyTargetBottles only look in bottles labelled with the color of the layer
+     * @return whether the layer was swapped
+     */
+    static boolean swapWithEmpty(int[] tubes, int[] labels, int[] numOfColoredLayers, int i, int layer, int bottleCapacity,
+                                 int numOfBottles, boolean onlyTargetBottles) {
+        for (int k = 0; k < numOfBottles; k++) {
+            if (i == k || labels[i] == labels[k]) continue;
+            if (onlyTargetBottles && tubes[layer] != labels[k]) continue;
+
+            for (int l = k * bottleCapacity; l < (k + 1) * bottleCapacity; l++) {
+                if (tubes[l] == labels[k]) continue;
+                if (tubes[l] == EMPTY_ID) {
+                    tubes[l] = tubes[layer];
+                    tubes[layer] = EMPTY_ID;
+                    numOfColoredLayers[k]++;
+                    numOfColoredLayers[layer / bottleCapacity]--;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a color comes before another in a bottle's hash map of colors, given the order they were inserted in
+     */
+    static boolean isBefore(WaterSearchState state, int color, int rank, int otherColor, int otherRank, int mask) {
+        int bucket = state.colorDictionary.color(color) & mask;
+        int otherBucket = state.colorDictionary.color(otherColor) & mask;
+        return bucket < otherBucket || (bucket == otherBucket && rank < otherRank);
+    }
+
+    /**
+     * Whether a color comes before another in the hash map of colors that need bottles,
+     * whose entries were inserted in the order of the hash map of color counts
+     */
+    static boolean isBefore(WaterSearchState state, int color, int otherColor, int neededMask, int colorsMask, int[] colorRanks) {
+        char letter = state.colorDictionary.color(color);
+        char otherLetter = state.colorDictionary.color(otherColor);
+        if ((letter & neededMask) != (otherLetter & neededMask)) {
+            return (letter & neededMask) < (otherLetter & neededMask);
+        }
+        return isBefore(state, color, colorRanks[color], otherColor, colorRanks[otherColor], colorsMask);
+    }
+
+    /**
+     * Table size of a java.util.HashMap with the default initial capacity after the given number of insertions
+     */
+    static int hashTableSize(int numOfEntries) {
+        int size = 16;
+        while (numOfEntries > size * 3 / 4) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,10 @@
+package code;
+
+/**
+ * Which symmetric states are treated as duplicates of each other during search
+ */
+public enum Symmetry {
+    NONE, // states are duplicates only if every bottle holds the same layers
+    BOTTLE_ORDER, // states that differ only by the order of their bottles are duplicates
+    BOTTLE_ORDER_AND_COLORS // states that differ by the order of their bottles and a renaming of their colors are duplicates
+}
@@ -0,0 +1,323 @@
+package code;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * A set of visited states using open addressing over primitive longs.
+ * Every slot holds the fingerprint of a state followed by its packed words, so an entry costs
+ * (1 + words) * 8 bytes instead of a HashMap node, a key object and its array.
+ * The table can be allocated off-heap so a large closed list does not inflate garbage collection pauses.
+ * <p>
+ * The table doubles when it is three quarters full. An off-heap table that is replaced keeps its native memory till
+ * the garbage collector collects its buffers, so up to about twice the memory of the current table can be reserved:
+ * -XX:MaxDirectMemorySize has to allow for that. When a reservation fails the JDK runs a garbage collection and
+ * retries, so the old tables are only a problem when explicit garbage collections are disabled
+ * (-XX:+DisableExplicitGC).
+ */
+public class VisitedSet {
+
+    /**
+     * Where the table of the set is allocated
+     */
+    public enum Storage {
+        HEAP, // a long[] on the java heap
+        OFF_HEAP // direct byte buffers outside the java heap
+    }
+
+    static final int INITIAL_CAPACITY = 1 << 10; // number of slots, always a power of two
+    static final double MAXIMUM_LOAD_FACTOR = 0.75;
+    static final int CHUNK_SIZE = 1 << 27; // longs per direct buffer (1 GB)
+
+    Storage storage;
+    Table table;
+    int numOfWords = -1; // words of a packed state, known once the first state is inserted
+    int slotSize;
+    long capacity;
+    long size;
+
+    // statistics of the probe lengths of all lookups and insertions
+    long numOfOperations;
+    long totalProbeLength;
+    long maximumProbeLength;
+
+    public VisitedSet(Storage storage) {
+        this.storage = storage;
+    }
+
+    public VisitedSet() {
+        this(Storage.HEAP);
+    }
+
+    /**
+     * Checks if a state was visited
+     *
+     * @param key the key of the state
+     * @return whether the state is in the set
+     */
+    public boolean contains(PackedState key) {
+        return contains(key.words, key.fingerprint);
+    }
+
+    /**
+     * Checks if a state was visited
+     *
+     * @param words       the packed state
+     * @param fingerprint the fingerprint of the packed state
+     * @return whether the state is in the set
+     */
+    public boolean contains(long[] words, long fingerprint) {
+        if (table == null) return false;
+        return table.get(find(words, fingerprint)) != 0;
+    }
+
+    /**
+     * Add a state to the set
+     *
+     * @param key the key of the state
+     * @return whether the state was added (false if it was already in the set)
+     */
+    public boolean add(PackedState key) {
+        return add(key.words, key.fingerprint);
+    }
+
+    /**
+     * Add a state to the set, the words are copied into the table
+     *
+     * @param words       the packed state
+     * @param fingerprint the fingerprint of the packed state
+     * @return whether the state was added (false if it was already in the set)
+     */
+    public boolean add(long[] words, long fingerprint) {
+        long slot = slotOf(words, fingerprint);
+        if (isOccupied(slot)) {
+            return false;
+        }
+        insert(slot, words, fingerprint);
+        return true;
+    }
+
+    /**
+     * Find the slot of a state, or the empty slot where it would be inserted, allocating the table on first use.
+     * The slot stays valid till the set is changed, so a caller can check a state and insert it with a single probe
+     *
+     * @param words       the packed state
+     * @param fingerprint the fingerprint of the packed state
+     * @return the slot
+     */
+    long slotOf(long[] words, long fingerprint) {
+        if (table == null) {
+            numOfWords = words.length;
+            slotSize = numOfWords + 1;
+            allocate(INITIAL_CAPACITY);
+        } else if (words.length != numOfWords) {
+            throw new IllegalArgumentException("Expected states of " + numOfWords + " words, got " + words.length);
+        }
+        return find(words, fingerprint);
+    }
+
+    /**
+     * Whether a slot returned by slotOf holds the state, i.e. the state was visited
+     */
+    boolean isOccupied(long slot) {
+        return table.get(slot) != 0;
+    }
+
+    /**
+     * Insert a state into the empty slot returned by slotOf for it
+     */
+    void insert(long slot, long[] words, long fingerprint) {
+        write(slot, words, fingerprint);
+        size++;
+
+        if (size > capacity * MAXIMUM_LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    /**
+     * Number of states in the set
+     **/
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Summary of the occupancy and probe lengths of the set
+     *
+     * @return the statistics of the set at this moment
+     */
+    public Statistics statistics() {
+        return new Statistics(storage, size, capacity, capacity * slotSize * Long.BYTES,
+                numOfOperations == 0 ? 0 : (double) totalProbeLength / numOfOperations, maximumProbeLength);
+    }
+
+    /**
+     * Find the slot of a state, or the empty slot where it would be inserted
+     *
+     * @return index of the first long of the slot
+     */
+    long find(long[] words, long fingerprint) {
+        long header = header(fingerprint);
+        long mask = capacity - 1;
+        long index = mix(fingerprint) & mask;
+        long probeLength = 1;
+
+        while (true) {
+            long slot = index * slotSize;
+            long storedHeader = table.get(slot);
+
+            if (storedHeader == 0 || (storedHeader == header && wordsEqual(slot, words))) {
+                numOfOperations++;
+                totalProbeLength += probeLength;
+                maximumProbeLength = Math.max(maximumProbeLength, probeLength);
+                return slot;
+            }
+
+            index = (index + 1) & mask; // linear probing
+            probeLength++;
+        }
+    }
+
+    boolean wordsEqual(long slot, long[] words) {
+        for (int i = 0; i < numOfWords; i++) {
+            if (table.get(slot + 1 + i) != words[i]) return false;
+        }
+        return true;
+    }
+
+    void write(long slot, long[] words, long fingerprint) {
+        table.set(slot, header(fingerprint));
+        for (int i = 0; i < numOfWords; i++) {
+            table.set(slot + 1 + i, words[i]);
+        }
+    }
+
+    void allocate(long newCapacity) {
+        capacity = newCapacity;
+        table = storage == Storage.HEAP ? new HeapTable(capacity * slotSize) : new OffHeapTable(capacity * slotSize);
+    }
+
+    void resize() {
+        // an old off-heap table is freed by the garbage collector (see the class comment)
+        Table oldTable = table;
+        long oldCapacity = capacity;
+        allocate(oldCapacity * 2);
+
+        long[] words = new long[numOfWords];
+        for (long i = 0; i < oldCapacity; i++) {
+            long slot = i * slotSize;
+            long header = oldTable.get(slot);
+            if (header == 0) continue;
+
+            for (int j = 0; j < numOfWords; j++) {
+                words[j] = oldTable.get(slot + 1 + j);
+            }
+            // states in the old table are distinct, so each one goes to the first empty slot of its probe sequence
+            long index = mix(header) & (capacity - 1);
+            while (table.get(index * slotSize) != 0) {
+                index = (index + 1) & (capacity - 1);
+            }
+            write(index * slotSize, words, header);
+        }
+    }
+
+    /**
+     * The header of a slot is the fingerprint, except that 0 is reserved for empty slots
+     */
+    static long header(long fingerprint) {
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    static long mix(long fingerprint) {
+        long h = header(fingerprint) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Occupancy and probe length statistics of a visited set
+     */
+    public static class Statistics {
+        public final Storage storage;
+        public final long size;
+        public final long capacity;
+        public final long bytes;
+        public final double averageProbeLength;
+        public final long maximumProbeLength;
+
+        Statistics(Storage storage, long size, long capacity, long bytes, double averageProbeLength, long maximumProbeLength) {
+            this.storage = storage;
+            this.size = size;
+            this.capacity = capacity;
+            this.bytes = bytes;
+            this.averageProbeLength = averageProbeLength;
+            this.maximumProbeLength = maximumProbeLength;
+        }
+
+        public double loadFactor() {
+            return capacity == 0 ? 0 : (double) size / capacity;
+        }
+
+        @Override
+        public String toString() {
+            return "states: " + size +
+                    ", capacity: " + capacity +
+                    ", load factor: " + String.format("%.2f", loadFactor()) +
+                    ", memory: " + bytes / 1024 + " KB (" + storage + ")" +
+                    ", average probe length: " + String.format("%.2f", averageProbeLength) +
+                    ", maximum probe length: " + maximumProbeLength;
+        }
+    }
+
+    interface Table {
+        long get(long index);
+
+        void set(long index, long value);
+    }
+
+    static class HeapTable implements Table {
+        long[] array;
+
+        HeapTable(long length) {
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new OutOfMemoryError("Visited set too large for the heap, use off-heap storage");
+            }
+            this.array = new long[(int) length];
+        }
+
+        @Override
+        public long get(long index) {
+            return array[(int) index];
+        }
+
+        @Override
+        public void set(long index, long value) {
+            array[(int) index] = value;
+        }
+    }
+
+    static class OffHeapTable implements Table {
+        LongBuffer[] chunks;
+
+        OffHeapTable(long length) {
+            int numOfChunks = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            this.chunks = new LongBuffer[numOfChunks];
+            for (int i = 0; i < numOfChunks; i++) {
+                long chunkLength = Math.min(CHUNK_SIZE, length - (long) i * CHUNK_SIZE);
+                // direct buffers are zeroed on allocation, which marks every slot as empty
+                chunks[i] = ByteBuffer.allocateDirect((int) chunkLength * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+        }
+
+        @Override
+        public long get(long index) {
+            return chunks[(int) (index / CHUNK_SIZE)].get((int) (index % CHUNK_SIZE));
+        }
+
+        @Override
+        public void set(long index, long value) {
+            chunks[(int) (index / CHUNK_SIZE)].put((int) (index % CHUNK_SIZE), value);
+        }
+    }
+}
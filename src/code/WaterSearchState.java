@@ -1,54 +1,222 @@
 package code;
 
+import java.util.Arrays;
+
+/**
+ * A state of the water sort puzzle. The layers are only kept packed as their color ids (see {@link ColorDictionary}),
+ * the color of a layer is looked up from its id, and the top pointers of the bottles are kept beside them
+ * so a pour does not scan the bottles.
+ */
 public class WaterSearchState extends State {
-    char[][] arrayOfTubes;
-    int[] arrayOfTopPointers;
+    int[] arrayOfTopPointers; // index of the highest colored layer of every bottle, -1 for an empty bottle
     int bottleCapacity;
     int numOfBottles;
 
+    // every layer packed as its color id, layer j of bottle i is the (i * bottleCapacity + j)th layer
+    long[] packedLayers;
+    ColorDictionary colorDictionary;
+
+    // xor of the zobrist keys of all layers, updated incrementally by setLayer
+    long zobristHash;
+    ZobristTable zobristTable;
+
     public WaterSearchState() {}
 
-    public WaterSearchState(int numOfBottles, int bottleCapacity) {
-        this.arrayOfTubes = new char[numOfBottles][bottleCapacity];
+    public WaterSearchState(int numOfBottles, int bottleCapacity, ColorDictionary colorDictionary) {
         this.arrayOfTopPointers = new int[numOfBottles];
 
         this.bottleCapacity = bottleCapacity;
         this.numOfBottles = numOfBottles;
 
+        this.colorDictionary = colorDictionary;
+        this.packedLayers = new long[colorDictionary.numOfWords(numOfBottles * bottleCapacity)]; // all zeros means all layers are empty
+
+        this.zobristTable = new ZobristTable(numOfBottles * bottleCapacity, colorDictionary.numOfColors() + 1);
+        this.zobristHash = 0; // hash of a state where all layers are empty
+
         // initially all tubes are empty
-        for (int i = 0; i < numOfBottles; i++) {
-            arrayOfTopPointers[i] = -1;
-            for (int j = bottleCapacity - 1; j >= 0; j--) {
-                arrayOfTubes[i][j] = 'e';
-            }
-        }
+        Arrays.fill(arrayOfTopPointers, -1);
     }
 
     public static WaterSearchState copy(WaterSearchState state) {
         WaterSearchState newState = new WaterSearchState();
 
-        newState.arrayOfTubes = new char[state.numOfBottles][state.bottleCapacity];
-        newState.arrayOfTopPointers = new int[state.numOfBottles];
+        newState.arrayOfTopPointers = state.arrayOfTopPointers.clone();
 
         newState.bottleCapacity = state.bottleCapacity;
         newState.numOfBottles = state.numOfBottles;
 
-        // copy the given state
-        for (int i = state.numOfBottles - 1; i >= 0; i--) {
-            newState.arrayOfTubes[i] = new char[state.bottleCapacity];
-            newState.arrayOfTopPointers[i] = -1;
+        newState.colorDictionary = state.colorDictionary;
+        newState.packedLayers = state.packedLayers.clone();
 
-            // traverse the tube bottom up till you reach highest non-empty layer
-            for (int j = state.bottleCapacity - 1; j >= 0; j--) {
-                if (state.arrayOfTubes[i][j] != 'e') {
-                    newState.arrayOfTopPointers[i] = j; // set the bottle top pointer to the heights layer that contains a color
+        newState.zobristTable = state.zobristTable;
+        newState.zobristHash = state.zobristHash;
+
+        return newState;
+    }
+
+    @Override
+    public State copy() {
+        return copy(this);
+    }
+
+    /**
+     * Set the color of a single layer, keeping the zobrist hash in sync with the packed layers.
+     * The top pointers are not changed.
+     *
+     * @param bottleIndex index of the bottle (zero-based)
+     * @param layerIndex  index of the layer in the bottle (zero-based, 0 is the top of the bottle)
+     * @param color       the new color of the layer
+     */
+    public void setLayer(int bottleIndex, int layerIndex, char color) {
+        setLayerId(bottleIndex, layerIndex, colorDictionary.id(color));
+    }
+
+    /**
+     * Set the color id of a single layer, keeping the zobrist hash in sync with the packed layers.
+     * The top pointers are not changed.
+     *
+     * @param bottleIndex index of the bottle (zero-based)
+     * @param layerIndex  index of the layer in the bottle (zero-based, 0 is the top of the bottle)
+     * @param id          the new color id of the layer
+     */
+    public void setLayerId(int bottleIndex, int layerIndex, int id) {
+        int layer = bottleIndex * bottleCapacity + layerIndex;
+        int word = layer / colorDictionary.layersPerWord;
+        int shift = (layer % colorDictionary.layersPerWord) * colorDictionary.bitsPerLayer;
+        long mask = (1L << colorDictionary.bitsPerLayer) - 1;
+
+        int previousId = (int) ((packedLayers[word] >>> shift) & mask);
+
+        packedLayers[word] = (packedLayers[word] & ~(mask << shift)) | ((long) id << shift);
+        zobristHash ^= zobristTable.key(layer, previousId) ^ zobristTable.key(layer, id);
+    }
+
+    @Override
+    public PackedState key() {
+        return new PackedState(packedLayers.clone(), zobristHash);
+    }
+
+    @Override
+    public long[] packedWords() {
+        return packedLayers;
+    }
+
+    /**
+     * A key that is equal for all states that differ only by the order of their bottles,
+     * and optionally by the names of their colors
+     *
+     * @param relabelColors whether states that differ by a renaming of their colors share a key
+     * @return the canonical key of the state
+     */
+    public PackedState canonicalKey(boolean relabelColors) {
+        return new CanonicalForm(this, relabelColors).key();
+    }
+
+    /**
+     * Number of longs the packed layers of the state take
+     */
+    public int numOfPackedWords() {
+        return packedLayers.length;
+    }
+
+    /**
+     * Copy the packed layers of the state into an array
+     *
+     * @param words  the array to copy into
+     * @param offset index of the first word of the state in the array
+     */
+    public void pack(long[] words, int offset) {
+        System.arraycopy(packedLayers, 0, words, offset, packedLayers.length);
+    }
+
+    /**
+     * Change the state into a state of the same problem that was packed into an array,
+     * only the layers that differ are set
+     *
+     * @param words  the array of packed states
+     * @param offset index of the first word of the packed state in the array
+     */
+    public void unpack(long[] words, int offset) {
+        boolean isChanged = false;
+        long mask = (1L << colorDictionary.bitsPerLayer) - 1;
+        for (int word = 0; word < packedLayers.length; word++) {
+            long packedWord = words[offset + word];
+            if (packedWord == packedLayers[word]) {
+                continue;
+            }
+            int lastLayer = Math.min((word + 1) * colorDictionary.layersPerWord, numOfBottles * bottleCapacity);
+            for (int layer = word * colorDictionary.layersPerWord; layer < lastLayer; layer++) {
+                int id = (int) ((packedWord >>> ((layer % colorDictionary.layersPerWord) * colorDictionary.bitsPerLayer)) & mask);
+                if (id != layerId(layer / bottleCapacity, layer % bottleCapacity)) {
+                    setLayerId(layer / bottleCapacity, layer % bottleCapacity, id);
                 }
+            }
+            isChanged = true;
+        }
 
-                newState.arrayOfTubes[i][j] = state.arrayOfTubes[i][j];
+        if (isChanged) {
+            for (int i = 0; i < numOfBottles; i++) {
+                int topPointer = 0;
+                while (topPointer < bottleCapacity && layerId(i, topPointer) == 0) {
+                    topPointer++;
+                }
+                arrayOfTopPointers[i] = topPointer < bottleCapacity ? topPointer : -1;
             }
         }
+    }
 
-        return newState;
+    /**
+     * Approximate number of bytes the state takes on the heap (with compressed references), counting the arrays
+     * it does not share with other states
+     */
+    public long estimatedBytes() {
+        long bytes = NodePool.align(12 + 2 * 4 + 8 + 4 * 4); // header, ints, zobrist hash, references
+        bytes += NodePool.align(16 + 4L * numOfBottles); // arrayOfTopPointers
+        bytes += NodePool.align(16 + 8L * packedLayers.length); // packedLayers
+        return bytes;
+    }
+
+    /**
+     * Get the color id of a single layer from the packed layers
+     *
+     * @param bottleIndex index of the bottle (zero-based)
+     * @param layerIndex  index of the layer in the bottle (zero-based, 0 is the top of the bottle)
+     * @return the color id of the layer
+     */
+    public int layerId(int bottleIndex, int layerIndex) {
+        int layer = bottleIndex * bottleCapacity + layerIndex;
+        int shift = (layer % colorDictionary.layersPerWord) * colorDictionary.bitsPerLayer;
+        return (int) ((packedLayers[layer / colorDictionary.layersPerWord] >>> shift) & ((1L << colorDictionary.bitsPerLayer) - 1));
+    }
+
+    /**
+     * Get the color of a single layer from the packed layers
+     *
+     * @param bottleIndex index of the bottle (zero-based)
+     * @param layerIndex  index of the layer in the bottle (zero-based, 0 is the top of the bottle)
+     * @return the color of the layer, 'e' for an empty layer
+     */
+    public char color(int bottleIndex, int layerIndex) {
+        return colorDictionary.color(layerId(bottleIndex, layerIndex));
+    }
+
+    @Override
+    public long fingerprint() {
+        return zobristHash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof WaterSearchState)) return false;
+        WaterSearchState state = (WaterSearchState) other;
+        return numOfBottles == state.numOfBottles && bottleCapacity == state.bottleCapacity && Arrays.equals(packedLayers, state.packedLayers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(zobristHash);
     }
 
     @Override
@@ -58,10 +226,10 @@ public class WaterSearchState extends State {
         for (int i = 0; i < this.numOfBottles; i++) {
             for(int j = 0; j < this.bottleCapacity; j++) {
                 if (j != this.bottleCapacity - 1) {
-                    result.append(this.arrayOfTubes[i][j]).append(",");
+                    result.append(color(i, j)).append(",");
                 }
                 else {
-                    result.append(this.arrayOfTubes[i][j]);
+                    result.append(color(i, j));
                 }
             }
 
@@ -1,14 +1,26 @@
 package code;
 
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Function;
 
 
 public class WaterSortSearch extends GenericSearch {
 
-    static Problem waterSearchProblem;
-    public static int nodesExpanded = 0;
-    public static boolean visualize = false;
+    // defaults of the configuration of the solvers created from now on (see WaterSortSolver)
+    public static VisitedSet.Storage visitedStatesStorage = VisitedSet.Storage.HEAP; // where the closed list of the search is allocated
+    public static NodePool.Layout nodeLayout = NodePool.Layout.OBJECTS; // how breadth first, uniform cost, greedy and A* search keep their nodes
+    public static Symmetry symmetry = Symmetry.NONE; // which symmetric states are treated as duplicates
+    public static EnumSet<PruningRule> pruningRules = EnumSet.noneOf(PruningRule.class); // pours discarded during move generation, none so every legal pour is searched
+    public static int breadthFirstParallelism = 1; // number of threads expanding a depth of breadth first search, 1 for the sequential search
+    public static int aStarParallelism = 1; // number of worker threads of A* search, 1 for the sequential search
+    public static int maxNumOfGoalStates = 100_000; // bidirectional search falls back to breadth first search above this number of goal states
+    public static Path patternDatabaseDirectory = Path.of(System.getProperty("java.io.tmpdir"), "water-sort-pdb"); // where the pattern database tables are kept
+    public static int heuristicCacheCapacity = 1 << 16; // number of heuristic costs kept by state fingerprint, 0 to disable caching
+    public static SolutionCache solutionCache = null; // results of earlier solves shared by the solvers, null to search every puzzle
+    public static SolutionStore solutionStore = null; // results of earlier solves kept on the disk, consulted after the solution cache
 
     /**
      * Solves problem using given strategy
@@ -26,129 +38,321 @@ public class WaterSortSearch extends GenericSearch {
      *                     * BF for breadth-first search
      *                     * DF for depth-first search
      *                     * ID for iterative deepening search
+     *                     * BD for bidirectional breadth-first search from the initial state and the goal states
      *                     * UC for uniform cost search
-     *                     * GRi for greedy search, with i in {1, 2} distinguishing the two heuristics.
-     *                     * ASi for A* search with i in {1, 2} distinguishing the two heuristics.
+     *                     * GRi for greedy search, with i in {1, 2, 3} distinguishing the three heuristics.
+     *                     * ASi for A* search with i in {1, 2, 3} distinguishing the three heuristics.
+     *                     * IDAi for iterative deepening A* search with i in {1, 2, 3} distinguishing the three heuristics.
+     *                     Heuristic 3 is the larger of the pattern database heuristic (see {@link PatternDatabaseHeuristic}) and heuristic 1.
      * @param visualize    - A boolean parameter which, when set to true, results in your program's side-effecting displaying
      *                     the state information as it undergoes the different steps of the discovered solution (if one was discovered).
      * @return String representing the sequence of actions to perform (example: plan;pathCost;nodesExpanded)
+     * @see WaterSortSolver every call uses its own solver, so calls from several threads do not interfere
      */
     public static String solve(String initialState, String strategy, boolean visualize) {
-        nodesExpanded = 0;
-        WaterSortSearch.visualize = visualize;
-        // format of returned string
-
-        // Step 1: parse the initial state
-        WaterSearchState parsedInitialState = parseState(initialState);
+        return new WaterSortSolver(visualize).solve(initialState, strategy);
+    }
 
-        // Step 2: Define the water search problem
-        waterSearchProblem = new Problem(parsedInitialState, new String[]{"pour"}) {
-            @Override
-            public State transitionFunction(State state, String operator) {
-                // Copy the status of the initial state
-                WaterSearchState nextState = WaterSearchState.copy((WaterSearchState) state);
+    /**
+     * Generate the legal pours of a state that are not discarded by a pruning rule
+     *
+     * @param state        the state to expand
+     * @param pruningRules the enabled pruning rules
+     * @param prunedMoves  number of pours discarded by every pruning rule, incremented for the discarded pours
+     * @return the pours as packed moves (see {@link Move})
+     */
+    static int[] generateMoves(WaterSearchState state, EnumSet<PruningRule> pruningRules, AtomicLongArray prunedMoves) {
+        int[] moves = new int[state.numOfBottles * (state.numOfBottles - 1)];
+        int numOfMoves = 0;
 
-                // Perform the pouring operation to get the next state
-                pour(nextState, operator);
+        // every pair of bottles is visited once and both directions are generated,
+        // which is the order in which the pours were first generated when pairs were visited twice
+        for (int i = 0; i < state.numOfBottles; i++) {
+            for (int j = i + 1; j < state.numOfBottles; j++) {
+                int move = generateMove(state, i, j, pruningRules, prunedMoves);
+                if (move != -1) moves[numOfMoves++] = move;
 
-                return nextState;
+                move = generateMove(state, j, i, pruningRules, prunedMoves);
+                if (move != -1) moves[numOfMoves++] = move;
             }
+        }
+
+        return Arrays.copyOf(moves, numOfMoves);
+    }
+
+    /**
+     * Create the move pouring from the first bottle into the second bottle
+     *
+     * @param state             the current state
+     * @param firstBottleIndex  index of the bottle to pour from (zero-based)
+     * @param secondBottleIndex index of the bottle to pour into (zero-based)
+     * @param pruningRules      the enabled pruning rules
+     * @param prunedMoves       number of pours discarded by every pruning rule
+     * @return the packed move, or -1 if the pour is not legal or discarded by a pruning rule
+     */
+    static int generateMove(WaterSearchState state, int firstBottleIndex, int secondBottleIndex,
+                            EnumSet<PruningRule> pruningRules, AtomicLongArray prunedMoves) {
+        // calculate cost of pouring from the first bottle into the second bottle.
+        int costOfPour = calculateCost(state, firstBottleIndex, secondBottleIndex);
+        if (costOfPour == -1) {
+            return -1;
+        }
+
+        // skip the pours that can never be needed by a solution
+        PruningRule pruningRule = findPruningRule(state, firstBottleIndex, secondBottleIndex, pruningRules);
+        if (pruningRule != null) {
+            prunedMoves.incrementAndGet(pruningRule.ordinal());
+            return -1;
+        }
+
+        return Move.of(firstBottleIndex, secondBottleIndex, costOfPour);
+    }
 
-            @Override
-            public boolean goalTest(State state) {
-                return isGoal((WaterSearchState) state);
+    /**
+     * Generate the pours that lead to a state, the inverse of generateMoves
+     *
+     * @param state the state reached by the pours
+     * @return the pours as packed moves (see {@link Move}) applied to the previous states
+     */
+    static int[] generateInverseMoves(WaterSearchState state) {
+        List<Integer> moves = new ArrayList<>();
+
+        for (int i = 0; i < state.numOfBottles; i++) {
+            for (int j = i + 1; j < state.numOfBottles; j++) {
+                addInverseMoves(state, i, j, moves);
+                addInverseMoves(state, j, i, moves);
             }
+        }
+
+        return moves.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Add every pour from the first bottle into the second bottle that leads to a state.
+     * Pouring k layers of color c from i into j, where j ends with a top run of r layers of c, is the pour of a previous state when:
+     * - i has room for the k layers back and k <= r
+     * - j was empty or had c on top before the pour: k < r, or j holds exactly k layers
+     * - the pour moved exactly k layers: j is full after the pour, or i had exactly k layers of c on top (i is empty or its top is not c)
+     *
+     * @param state             the state reached by the pours
+     * @param firstBottleIndex  index of the bottle poured from (zero-based)
+     * @param secondBottleIndex index of the bottle poured into (zero-based)
+     * @param moves             list to add the pours to
+     */
+    static void addInverseMoves(WaterSearchState state, int firstBottleIndex, int secondBottleIndex, List<Integer> moves) {
+        int secondBottleTopPointer = state.arrayOfTopPointers[secondBottleIndex];
+        if (secondBottleTopPointer == -1) {
+            return; // nothing was poured into the second bottle
+        }
+
+        int firstBottleTopPointer = state.arrayOfTopPointers[firstBottleIndex];
+        int freeSpaceOfFirstBottle = firstBottleTopPointer == -1 ? state.bottleCapacity : firstBottleTopPointer;
+        int color = state.layerId(secondBottleIndex, secondBottleTopPointer);
+
+        boolean isSecondBottleFull = secondBottleTopPointer == 0;
+        boolean isFirstBottleTopDifferent = firstBottleTopPointer == -1 || state.layerId(firstBottleIndex, firstBottleTopPointer) != color;
+        if (!isSecondBottleFull && !isFirstBottleTopDifferent) {
+            return; // the pour would have moved more layers
+        }
+
+        int numOfConsecutiveTopLayers = 0;
+        for (int j = secondBottleTopPointer; j < state.bottleCapacity && state.layerId(secondBottleIndex, j) == color; j++) {
+            numOfConsecutiveTopLayers++;
+        }
+        int numOfLayers = state.bottleCapacity - secondBottleTopPointer;
 
-            @Override
-            public int pathCost(State state, String operation) {
-                // TODO ask if we need to implement this
-                return 0;
+        for (int k = 1; k <= Math.min(numOfConsecutiveTopLayers, freeSpaceOfFirstBottle); k++) {
+            if (k < numOfConsecutiveTopLayers || k == numOfLayers) {
+                moves.add(Move.of(firstBottleIndex, secondBottleIndex, k));
             }
+        }
+    }
 
-            @Override
-            public List<Node> expand(Node node) {
-                nodesExpanded++;
-                WaterSearchState parentState = (WaterSearchState) node.state;
-                List<Node> listOfPossibleNextNodes = new ArrayList<>();
+    /**
+     * Enumerate the goal states with the layers of a state: every bottle is empty or holds a single color.
+     * Only the goal states whose bottles are sorted by color and number of layers are enumerated,
+     * every other goal state is one of them with the bottles in a different order.
+     *
+     * @param state              a state of the problem
+     * @param maxNumOfGoalStates the largest number of goal states to enumerate
+     * @return the goal states, or null if there are more than maxNumOfGoalStates
+     */
+    static List<State> generateGoalStates(WaterSearchState state, int maxNumOfGoalStates) {
+        // count the layers of every color
+        int[] remainingLayers = new int[state.colorDictionary.numOfColors() + 1];
+        for (int i = 0; i < state.numOfBottles; i++) {
+            for (int j = 0; j < state.bottleCapacity; j++) {
+                remainingLayers[state.layerId(i, j)]++;
+            }
+        }
+        remainingLayers[0] = 0; // empty layers are not placed
 
-                for (int i = 0; i < parentState.numOfBottles; i++) {
-                    for (int j = 0; j < parentState.numOfBottles; j++) {
-                        enqueueNextPossibleNode(node, this, listOfPossibleNextNodes, j, i);
-                        enqueueNextPossibleNode(node, this, listOfPossibleNextNodes, i, j);
-                    }
-                }
+        List<State> goalStates = new ArrayList<>();
+        int[] colorOfBottle = new int[state.numOfBottles];
+        int[] heightOfBottle = new int[state.numOfBottles];
+        boolean isComplete = generateGoalStates(state, 0, remainingLayers, colorOfBottle, heightOfBottle, goalStates, maxNumOfGoalStates);
+        return isComplete ? goalStates : null;
+    }
 
+    /**
+     * Fill the bottles from an index onwards with the remaining layers, one color per bottle,
+     * each bottle comes after the previous one in the order of (color id, number of layers) from highest to lowest
+     *
+     * @return false if more than maxNumOfGoalStates goal states were found
+     */
+    static boolean generateGoalStates(WaterSearchState state, int bottleIndex, int[] remainingLayers, int[] colorOfBottle,
+                                      int[] heightOfBottle, List<State> goalStates, int maxNumOfGoalStates) {
+        int totalRemainingLayers = Arrays.stream(remainingLayers).sum();
+        if (totalRemainingLayers > (state.numOfBottles - bottleIndex) * state.bottleCapacity) {
+            return true; // the remaining bottles can not hold the remaining layers
+        }
 
-                return listOfPossibleNextNodes;
+        if (bottleIndex == state.numOfBottles) {
+            if (goalStates.size() == maxNumOfGoalStates) {
+                return false;
             }
+            WaterSearchState goalState = WaterSearchState.copy(state); // shares the zobrist table of the problem
+            for (int i = 0; i < state.numOfBottles; i++) {
+                char color = state.colorDictionary.color(colorOfBottle[i]);
+                for (int j = 0; j < state.bottleCapacity; j++) {
+                    goalState.setLayer(i, j, j >= state.bottleCapacity - heightOfBottle[i] ? color : ColorDictionary.EMPTY);
+                }
+                goalState.arrayOfTopPointers[i] = heightOfBottle[i] == 0 ? -1 : state.bottleCapacity - heightOfBottle[i];
+            }
+            goalStates.add(goalState);
+            return true;
+        }
 
-            @Override
-            public int heuristicCost(State state) {
-                if (strategy.equals("GR1") || strategy.equals("AS1")) {
-                    return calculateHeuristicCost1((WaterSearchState) state);
-                } else if (strategy.equals("GR2") || strategy.equals("AS2")) {
-                    return calculateHeuristicCost2((WaterSearchState) state);
+        int previousColor = bottleIndex == 0 ? remainingLayers.length : colorOfBottle[bottleIndex - 1];
+        int previousHeight = bottleIndex == 0 ? state.bottleCapacity : heightOfBottle[bottleIndex - 1];
+
+        // the bottle holds 1 to bottleCapacity layers of a single color
+        for (int id = Math.min(previousColor, remainingLayers.length - 1); id >= 1; id--) {
+            int maxHeight = Math.min(remainingLayers[id], id == previousColor ? previousHeight : state.bottleCapacity);
+            for (int height = maxHeight; height >= 1; height--) {
+                colorOfBottle[bottleIndex] = id;
+                heightOfBottle[bottleIndex] = height;
+                remainingLayers[id] -= height;
+                boolean isComplete = generateGoalStates(state, bottleIndex + 1, remainingLayers, colorOfBottle, heightOfBottle, goalStates, maxNumOfGoalStates);
+                remainingLayers[id] += height;
+                if (!isComplete) {
+                    return false;
                 }
-                return -1;
-            }
-        };
-
-        Node goalNode = null;
-        // Step 3: Perform general search
-        switch (strategy) {
-            case "BF":
-                goalNode = breadthFirstSearch(waterSearchProblem);
-                break;
-            case "DF":
-                goalNode = depthFirstSearch(waterSearchProblem);
-                break;
-            case "ID":
-                goalNode = iterativeDeepeningSearch(waterSearchProblem);
-                break;
-            case "UC":
-                goalNode = uniformCostSearch(waterSearchProblem);
-                break;
-            case "GR1", "GR2":
-                goalNode = greedySearch(waterSearchProblem);
-                break;
-            case "AS1", "AS2":
-                goalNode = aStarSearch(waterSearchProblem);
-                break;
-        }
-
-
-        return goalNode != null ? constructSolution(goalNode) : "NOSOLUTION";
+            }
+        }
+
+        // or the bottle is empty, then all the following bottles are empty too
+        colorOfBottle[bottleIndex] = 0;
+        heightOfBottle[bottleIndex] = 0;
+        return generateGoalStates(state, bottleIndex + 1, remainingLayers, colorOfBottle, heightOfBottle, goalStates, maxNumOfGoalStates);
     }
 
     /**
-     * Create a new node from pouring from the ith tube into the jth tube and add it to the listOfPossibleNextNodes
+     * Create a new node by applying a move to the state of a node and add it to the listOfPossibleNextNodes
      *
      * @param node                    the parent node
      * @param problem                 instance of the class (problem dependent)
      * @param listOfPossibleNextNodes list of possible next nodes to visit
-     * @param i                       the first bottle index
-     * @param j                       the second bottle index
+     * @param move                    the pour to perform (see {@link Move})
+     */
+    static void enqueueNextPossibleNode(Node node, Problem problem, List<Node> listOfPossibleNextNodes, int move) {
+        // create the next possible state using the transition function
+        State possibleNextState = problem.transitionFunction(node.state, move);
+        // add the next possible node to the list
+        Node childNode = new Node(
+                possibleNextState,
+                node,
+                move,
+                node.pathCost + Move.layers(move),
+                node.depth + 1
+        );
+        // the heuristic cost is left to the frontier, so it is only evaluated for children that are not duplicates
+        listOfPossibleNextNodes.add(childNode);
+    }
+
+    /**
+     * Find the first enabled pruning rule that discards a legal pour
+     *
+     * @param state             the current state
+     * @param firstBottleIndex  index of the bottle to pour from (zero-based)
+     * @param secondBottleIndex index of the bottle to pour into (zero-based)
+     * @param pruningRules      the enabled pruning rules
+     * @return the rule that discards the pour, or null if the pour is kept
+     */
+    static PruningRule findPruningRule(WaterSearchState state, int firstBottleIndex, int secondBottleIndex, EnumSet<PruningRule> pruningRules) {
+        boolean isTargetEmpty = state.arrayOfTopPointers[secondBottleIndex] == -1;
+
+        if (isTargetEmpty && pruningRules.contains(PruningRule.UNIFORM_SOURCE_INTO_EMPTY) && isUniform(state, firstBottleIndex)) {
+            return PruningRule.UNIFORM_SOURCE_INTO_EMPTY;
+        }
+
+        if (isTargetEmpty && pruningRules.contains(PruningRule.DUPLICATE_EMPTY_TARGET)) {
+            for (int k = 0; k < secondBottleIndex; k++) {
+                if (k != firstBottleIndex && state.arrayOfTopPointers[k] == -1) {
+                    return PruningRule.DUPLICATE_EMPTY_TARGET;
+                }
+            }
+        }
+
+        if (pruningRules.contains(PruningRule.COMPLETED_SOURCE) && state.arrayOfTopPointers[firstBottleIndex] == 0 && isUniform(state, firstBottleIndex)) {
+            return PruningRule.COMPLETED_SOURCE;
+        }
+
+        return null;
+    }
+
+    /**
+     * The enabled pruning rules that keep a solution of a puzzle, a rule is dropped if the puzzle does not meet its precondition
+     *
+     * @param initialState the initial state of the puzzle
+     * @param pruningRules the enabled pruning rules
+     * @return the rules to apply during the search
      */
-    private static void enqueueNextPossibleNode(Node node, Problem problem, List<Node> listOfPossibleNextNodes, int i, int j) {
-        // calculate cost of pouring from the ith tube into the jth tube.
-        int costOfPourFromSecondToFirst = calculateCost((WaterSearchState) node.state, j, i);
-        if (costOfPourFromSecondToFirst != -1) {
-            String operater = "pour_" + j + "_" + i;
-            // create the next possible state using the transition function
-            State possibleNextState = problem.transitionFunction(node.state, operater);
-            // add the next possible node to the list
-            Node childNode = new Node(
-                    possibleNextState,
-                    node,
-                    operater,
-                    node.pathCost + costOfPourFromSecondToFirst,
-                    node.depth + 1
-            );
-            childNode.setHeuristicCost(problem.heuristicCost(childNode.state));
-            listOfPossibleNextNodes.add(childNode);
+    static EnumSet<PruningRule> applicablePruningRules(WaterSearchState initialState, EnumSet<PruningRule> pruningRules) {
+        EnumSet<PruningRule> applicablePruningRules = EnumSet.copyOf(pruningRules);
+        if (pruningRules.contains(PruningRule.COMPLETED_SOURCE) && !fillsWholeBottles(initialState)) {
+            applicablePruningRules.remove(PruningRule.COMPLETED_SOURCE);
         }
+        return applicablePruningRules;
     }
 
+    /**
+     * Check whether the layers of every color fill exactly whole bottles
+     *
+     * @param state a state of the puzzle, every state of a puzzle has the same layers
+     * @return whether the number of layers of every color is a multiple of the bottle capacity
+     */
+    static boolean fillsWholeBottles(WaterSearchState state) {
+        int[] numOfLayers = new int[state.colorDictionary.numOfColors() + 1];
+        for (int i = 0; i < state.numOfBottles; i++) {
+            for (int j = 0; j < state.bottleCapacity; j++) {
+                numOfLayers[state.layerId(i, j)]++;
+            }
+        }
+        for (int id = 1; id < numOfLayers.length; id++) {
+            if (numOfLayers[id] % state.bottleCapacity != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether all the layers of a non-empty bottle have the same color
+     *
+     * @param state       the current state
+     * @param bottleIndex index of the bottle (zero-based)
+     * @return whether the bottle holds a single color
+     */
+    static boolean isUniform(WaterSearchState state, int bottleIndex) {
+        int topPointer = state.arrayOfTopPointers[bottleIndex];
+        for (int j = topPointer + 1; j < state.bottleCapacity; j++) {
+            if (state.layerId(bottleIndex, j) != state.layerId(bottleIndex, topPointer)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
     /**
      * Calculate the cost of pouring from the first bottle into the second bottle.
@@ -172,11 +376,11 @@ public class WaterSortSearch extends GenericSearch {
             int numOfConsecutiveTopLayers = 0;
 
             // get the color of the top layer in the first tube
-            char colorOfTopLayer = state.arrayOfTubes[firstBottleIndex][firstBottleTopPointer];
+            int colorOfTopLayer = state.layerId(firstBottleIndex, firstBottleTopPointer);
 
             for (int i = firstBottleTopPointer; i < state.bottleCapacity; i++) {
 
-                if (state.arrayOfTubes[firstBottleIndex][i] == colorOfTopLayer) {
+                if (state.layerId(firstBottleIndex, i) == colorOfTopLayer) {
                     numOfConsecutiveTopLayers++;
                 } else {
                     break;
@@ -202,11 +406,12 @@ public class WaterSortSearch extends GenericSearch {
      */
     public static boolean canPour(WaterSearchState state, int firstBottleIndex, int secondBottleIndex) {
 
-        char firstBottleTopColor = state.arrayOfTopPointers[firstBottleIndex] != -1 ? state.arrayOfTubes[firstBottleIndex][state.arrayOfTopPointers[firstBottleIndex]] : 'e';
-        char secondBottleTopColor = state.arrayOfTopPointers[secondBottleIndex] != -1 ? state.arrayOfTubes[secondBottleIndex][state.arrayOfTopPointers[secondBottleIndex]] : 'e';
+        // color ids, 0 for an empty bottle
+        int firstBottleTopColor = state.arrayOfTopPointers[firstBottleIndex] != -1 ? state.layerId(firstBottleIndex, state.arrayOfTopPointers[firstBottleIndex]) : 0;
+        int secondBottleTopColor = state.arrayOfTopPointers[secondBottleIndex] != -1 ? state.layerId(secondBottleIndex, state.arrayOfTopPointers[secondBottleIndex]) : 0;
 
         // check whether the two different tubes contains the same top color & first bottle is not empty
-        return (secondBottleTopColor == 'e' || firstBottleTopColor == secondBottleTopColor) && firstBottleTopColor != 'e' && firstBottleIndex != secondBottleIndex && state.arrayOfTopPointers[secondBottleIndex] != 0;
+        return (secondBottleTopColor == 0 || firstBottleTopColor == secondBottleTopColor) && firstBottleTopColor != 0 && firstBottleIndex != secondBottleIndex && state.arrayOfTopPointers[secondBottleIndex] != 0;
     }
 
     /**
@@ -214,27 +419,55 @@ public class WaterSortSearch extends GenericSearch {
      *
      * @param initialState - the state that needs to be parsed
      * @return State object
+     * @throws IllegalArgumentException if the puzzle is malformed, or has more bottles or larger bottles than a {@link Move} can hold
      */
-    private static WaterSearchState parseState(String initialState) {
+    public static WaterSearchState parseState(String initialState) {
         // State format
         // numberOf Bottles;
         // bottleCapacity;
         // color0,1, color0,2, ...color0,k;
         // color1,1, color1,2, ...color1,k;
         String[] parsedState = initialState.split(";");
+        if (parsedState.length < 2) {
+            throw new IllegalArgumentException("Expected the number of bottles and the bottle capacity: " + initialState);
+        }
         int numOfBottles = Integer.parseInt(parsedState[0]);
         int bottleCapacity = Integer.parseInt(parsedState[1]);
+        if (numOfBottles < 1 || bottleCapacity < 1 || parsedState.length - 2 > numOfBottles) {
+            throw new IllegalArgumentException("Expected at most " + numOfBottles + " bottles of " + bottleCapacity + " layers: " + initialState);
+        }
+        if (numOfBottles > Move.MAX_NUM_OF_BOTTLES || bottleCapacity > Move.MAX_BOTTLE_CAPACITY) {
+            throw new IllegalArgumentException("Puzzles are limited to " + Move.MAX_NUM_OF_BOTTLES + " bottles of at most "
+                    + Move.MAX_BOTTLE_CAPACITY + " layers, got " + numOfBottles + " bottles of " + bottleCapacity + " layers");
+        }
+
+        // collect the distinct colors of the problem in order of first appearance to build the color dictionary
+        StringBuilder distinctColors = new StringBuilder();
+        for (int i = 2; i < parsedState.length; i++) {
+            String[] arrayOfColors = parsedState[i].split(",");
+            if (arrayOfColors.length > bottleCapacity) {
+                throw new IllegalArgumentException("Bottle " + (i - 2) + " holds more than " + bottleCapacity + " layers: " + parsedState[i]);
+            }
+            for (String color : arrayOfColors) {
+                if (color.isEmpty()) {
+                    throw new IllegalArgumentException("Bottle " + (i - 2) + " has a layer without a color: " + parsedState[i]);
+                }
+                if (color.charAt(0) != 'e' && distinctColors.indexOf(color.substring(0, 1)) == -1) {
+                    distinctColors.append(color.charAt(0));
+                }
+            }
+        }
 
         // initialize initial state bottle capacity and number of bottles
-        WaterSearchState state = new WaterSearchState(numOfBottles, bottleCapacity);
+        WaterSearchState state = new WaterSearchState(numOfBottles, bottleCapacity, new ColorDictionary(distinctColors.toString().toCharArray()));
 
         for (int i = 2; i < parsedState.length; i++) {
             String[] arrayOfColors = parsedState[i].split(",");
 
             for (int j = arrayOfColors.length - 1; j >= 0; j--) {
-                state.arrayOfTubes[i - 2][j] = arrayOfColors[j].charAt(0);
+                state.setLayer(i - 2, j, arrayOfColors[j].charAt(0));
 
-                if (state.arrayOfTubes[i - 2][j] != 'e') {
+                if (arrayOfColors[j].charAt(0) != 'e') {
                     state.arrayOfTopPointers[i - 2] = j; // set the bottle top pointer to the heights layer that contains a color
                 }
             }
@@ -246,55 +479,78 @@ public class WaterSortSearch extends GenericSearch {
     /**
      * Construct a solution by traversing back to the parent node till reaching root node (Path to goal)
      *
-     * @param goalNode the goal node reached
+     * @param goalNode      the goal node reached
+     * @param nodesExpanded number of nodes expanded by the search, including the goal node
+     * @param visualize     whether to print the states along the path
      * @return string representing the path of operations performed
      */
-    public static String constructSolution(Node goalNode) {
-        nodesExpanded++; // add the goal node to the nodes expanded
-        Node node = goalNode;
-        StringBuilder operations = new StringBuilder();
-        StringBuilder pathDetails = new StringBuilder();
+    public static String constructSolution(Node goalNode, int nodesExpanded, boolean visualize) {
+        return constructSolution(goalNode, nodesExpanded, visualize ? System.out : null);
+    }
 
-        int goalPathCost = node.pathCost;
+    /**
+     * Construct a solution from the path to the goal node. The parent chain is walked once into an array of moves
+     * and the plan is formatted from the first move to the last, the states along the path are only rendered
+     * when there is a sink to print them to, one at a time by replaying the moves from the initial state
+     *
+     * @param goalNode      the goal node reached
+     * @param nodesExpanded number of nodes expanded by the search, including the goal node
+     * @param pathDetails   where to print the states along the path (can be null)
+     * @return string representing the path of operations performed
+     */
+    public static String constructSolution(Node goalNode, int nodesExpanded, PrintStream pathDetails) {
+        int[] moves = new int[goalNode.depth]; // the depth of a node is the number of moves on its path
+        Node root = goalNode;
+        for (int i = moves.length - 1; i >= 0; i--) {
+            moves[i] = root.move;
+            root = root.parent;
+        }
 
-        while (node.parent != null) {
-            if (operations.isEmpty()) {
-                operations.insert(0, node.operator);
-            } else {
-                operations.insert(0, node.operator + ",");
+        StringBuilder operations = new StringBuilder(moves.length * 10 + 24); // "pour_i_j," for a move
+        for (int i = 0; i < moves.length; i++) {
+            if (i > 0) {
+                operations.append(',');
             }
-            pathDetails.insert(0, ConsoleColors.RED_BOLD + node.operator + ": \n" + ConsoleColors.BLUE_BOLD + node.state.toString() + "\n" + ConsoleColors.RESET);
-            node = node.parent;
+            Move.appendTo(operations, moves[i]);
         }
-
-        pathDetails.insert(0, ConsoleColors.RED_BOLD +  "Root: \n" + ConsoleColors.BLUE_BOLD + node.state.toString() + "\n" + ConsoleColors.RESET);
-
-        if (visualize) {
-            System.out.println(pathDetails.toString());
+        operations.append(";").append(goalNode.pathCost).append(";").append(nodesExpanded);
+
+        if (pathDetails != null) {
+            WaterSearchState state = WaterSearchState.copy((WaterSearchState) root.state);
+            pathDetails.print(ConsoleColors.RED_BOLD + "Root: \n" + ConsoleColors.BLUE_BOLD + state + "\n" + ConsoleColors.RESET);
+            for (int move : moves) {
+                pour(state, move);
+                pathDetails.print(ConsoleColors.RED_BOLD + Move.toString(move) + ": \n" + ConsoleColors.BLUE_BOLD + state + "\n" + ConsoleColors.RESET);
+            }
+            pathDetails.println();
         }
 
-        operations.append(";").append(goalPathCost).append(";").append(nodesExpanded);
-
         return operations.toString();
     }
 
     /**
-     * Perform the operation on the state
+     * Perform a move on the state
      *
-     * @param state     the parent state to get the next state from it
-     * @param operation a string that represent the operation performed (example: pour_firstBottleIndex_secondBottleIndex)
+     * @param state the parent state to get the next state from it
+     * @param move  the packed move, it carries the number of layers poured so the cost is not calculated again
      */
-    public static void pour(WaterSearchState state, String operation) {
-
-        String[] parsedOperation = operation.split("_"); // ["pour", firstBottleIndex, secondBottleIndex]
-        int firstBottleIndex = Integer.parseInt(parsedOperation[1]);
-        int secondBottleIndex = Integer.parseInt(parsedOperation[2]);
+    public static void pour(WaterSearchState state, int move) {
+        pour(state, Move.from(move), Move.to(move), Move.layers(move));
+    }
 
-        int numOfLayersToPour = calculateCost(state, firstBottleIndex, secondBottleIndex);
+    /**
+     * Move a number of layers from the top of the first bottle to the top of the second bottle
+     *
+     * @param state             the state to change
+     * @param firstBottleIndex  index of the bottle to pour from (zero-based)
+     * @param secondBottleIndex index of the bottle to pour into (zero-based)
+     * @param numOfLayersToPour number of layers to move, all of the color of the top layer of the first bottle
+     */
+    public static void pour(WaterSearchState state, int firstBottleIndex, int secondBottleIndex, int numOfLayersToPour) {
         int firstBottleTopPointer = state.arrayOfTopPointers[firstBottleIndex];
         int secondBottleTopPointer = state.arrayOfTopPointers[secondBottleIndex];
 
-        char colorOfTopLayer = state.arrayOfTubes[firstBottleIndex][firstBottleTopPointer];
+        int colorOfTopLayer = state.layerId(firstBottleIndex, firstBottleTopPointer);
 
         for (int i = 0; i < numOfLayersToPour; i++) {
             // if secondBottleTopPointer pointing to -1 meaning bottle is empty then we can pour into it.
@@ -305,10 +561,10 @@ public class WaterSortSearch extends GenericSearch {
             }
 
             // pour the color from the first bottle to the second
-            state.arrayOfTubes[secondBottleIndex][secondBottleTopPointer] = colorOfTopLayer;
+            state.setLayerId(secondBottleIndex, secondBottleTopPointer, colorOfTopLayer);
 
             // remove the top layer from the first bottle
-            state.arrayOfTubes[firstBottleIndex][firstBottleTopPointer] = 'e';
+            state.setLayerId(firstBottleIndex, firstBottleTopPointer, 0);
             firstBottleTopPointer++;
 
             // update the top pointers after pouring
@@ -335,16 +591,16 @@ public class WaterSortSearch extends GenericSearch {
         for (int i = 0; i < state.numOfBottles; i++) {
             // if bottle is not empty to avoid index out of bound error
             if (state.arrayOfTopPointers[i] != -1) {
-                char initialColor = state.arrayOfTubes[i][state.arrayOfTopPointers[i]];
+                char initialColor = state.color(i, state.arrayOfTopPointers[i]);
                 // traverse over a single tube
                 for (int j = state.arrayOfTopPointers[i]; j < state.bottleCapacity; j++) {
-                    if (state.arrayOfTubes[i][j] != initialColor) {
+                    if (state.color(i, j) != initialColor) {
                         flag = false;
                     }
                 }
             } else { // check that whole tube is empty
                 for (int j = 0; j < state.bottleCapacity; j++) {
-                    if (state.arrayOfTubes[i][j] != 'e') {
+                    if (state.color(i, j) != 'e') {
                         flag = false;
                     }
                 }
@@ -368,7 +624,7 @@ public class WaterSortSearch extends GenericSearch {
 
         // traverse over the list of tubes
         for (int i = 0; i < state.numOfBottles; i++) {
-            char bottomLayerColor = state.arrayOfTubes[i][state.bottleCapacity - 1];
+            char bottomLayerColor = state.color(i, state.bottleCapacity - 1);
             boolean flag = false; // a flag that check that no different color other than bottom layer color is detected
 
             // if the tube is empty then skip
@@ -378,10 +634,10 @@ public class WaterSortSearch extends GenericSearch {
 
             for (int j = state.bottleCapacity - 1; j >= state.arrayOfTopPointers[i]; j--) {
 
-                if (!flag && bottomLayerColor != state.arrayOfTubes[i][j] && state.arrayOfTubes[i][j] != 'e') {
+                if (!flag && bottomLayerColor != state.color(i, j) && state.color(i, j) != 'e') {
                     flag = true;
                     heuristicCost++;
-                } else if (flag && state.arrayOfTubes[i][j] != 'e') {
+                } else if (flag && state.color(i, j) != 'e') {
                     heuristicCost++;
                 }
 
@@ -392,6 +648,62 @@ public class WaterSortSearch extends GenericSearch {
         return heuristicCost;
     }
 
+    /**
+     * Calculate the number of layers remaining to pour of a single tube, counting only the layers up to a given top layer
+     *
+     * @param state       the state for which to calculate its heuristic value
+     * @param bottleIndex index of the tube
+     * @param topPointer  index of the top layer of the tube (layers above it are ignored), -1 or bottleCapacity if none
+     * @return the number of layers from the first layer that differs from the bottom layer up to the top layer
+     */
+    static int calculateHeuristicCost1(WaterSearchState state, int bottleIndex, int topPointer) {
+        if (topPointer == -1) {
+            return 0;
+        }
+
+        char bottomLayerColor = state.color(bottleIndex, state.bottleCapacity - 1);
+        for (int j = state.bottleCapacity - 1; j >= topPointer; j--) {
+            if (state.color(bottleIndex, j) != bottomLayerColor) {
+                return j - topPointer + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Update heuristic 1 of the state a pour was applied to, only looking at the two tubes of the pour
+     *
+     * @param state                 the state after the pour
+     * @param move                  the pour applied (see {@link Move})
+     * @param previousHeuristicCost heuristic 1 of the state before the pour
+     * @return heuristic 1 of the state
+     */
+    public static int updateHeuristicCost1(WaterSearchState state, int move, int previousHeuristicCost) {
+        int firstBottleIndex = Move.from(move);
+        int secondBottleIndex = Move.to(move);
+        int numOfLayersPoured = Move.layers(move);
+        int firstBottleTopPointer = state.arrayOfTopPointers[firstBottleIndex];
+        int secondBottleTopPointer = state.arrayOfTopPointers[secondBottleIndex];
+        char pouredColor = state.color(secondBottleIndex, secondBottleTopPointer);
+
+        int firstBottleCost = calculateHeuristicCost1(state, firstBottleIndex, firstBottleTopPointer);
+        int secondBottleCost = calculateHeuristicCost1(state, secondBottleIndex, secondBottleTopPointer);
+
+        // before the pour, the poured layers were on top of the first tube
+        int previousFirstBottleCost;
+        if (firstBottleTopPointer == -1) {
+            previousFirstBottleCost = 0; // only the poured layers were in the tube
+        } else if (firstBottleCost > 0 || state.color(firstBottleIndex, state.bottleCapacity - 1) != pouredColor) {
+            previousFirstBottleCost = firstBottleCost + numOfLayersPoured;
+        } else {
+            previousFirstBottleCost = 0; // the poured layers had the color of the rest of the tube
+        }
+        // and the second tube had its layers below them
+        int previousSecondBottleCost = calculateHeuristicCost1(state, secondBottleIndex, secondBottleTopPointer + numOfLayersPoured);
+
+        return previousHeuristicCost - previousFirstBottleCost - previousSecondBottleCost + firstBottleCost + secondBottleCost;
+    }
+
     /**
      * Calculate the number of swaps needed to reach a goal
      *
@@ -399,6 +711,17 @@ public class WaterSortSearch extends GenericSearch {
      * @return an integer represent the heuristic cost of the state
      */
     public static int calculateHeuristicCost2(WaterSearchState state) {
+        return SwapHeuristic.cost(state);
+    }
+
+    /**
+     * Calculate the number of swaps needed to reach a goal, on maps of the color letters.
+     * Kept as the reference of {@link SwapHeuristic}, which gives the same costs without allocating
+     *
+     * @param state the state for which to calculate its heuristic value
+     * @return an integer represent the heuristic cost of the state
+     */
+    public static int calculateHeuristicCost2Reference(WaterSearchState state) {
 
         // an array that represents the label of each bottle in the problem and the number of occurrence of the color label in the bottle
         Pair<Character, Integer>[] arrayOfColoredLabels = new Pair[state.numOfBottles];
@@ -434,14 +757,14 @@ public class WaterSortSearch extends GenericSearch {
             for (int j = 0; j < state.bottleCapacity; j++) {
 
                 // if the colorToColorCountMap has color of the current layer as a key then increment count
-                if (colorToColorCountMap.containsKey(state.arrayOfTubes[i][j])) {
-                    colorToColorCountMap.put(state.arrayOfTubes[i][j], colorToColorCountMap.get(state.arrayOfTubes[i][j]) + 1);
+                if (colorToColorCountMap.containsKey(state.color(i, j))) {
+                    colorToColorCountMap.put(state.color(i, j), colorToColorCountMap.get(state.color(i, j)) + 1);
                 } else {
                     // if the colorToColorCountMap does not have the color of the current layer as a key
                     // then set a new key value pair with the new color and number of occurrence to 1
-                    if (state.arrayOfTubes[i][j] != 'e') {
-                        colorToColorCountMap.put(state.arrayOfTubes[i][j], 1);
-                        distinctColorsSet.add(state.arrayOfTubes[i][j]);
+                    if (state.color(i, j) != 'e') {
+                        colorToColorCountMap.put(state.color(i, j), 1);
+                        distinctColorsSet.add(state.color(i, j));
 
                         // increment total number of total distinct colors
                         totalNumberOfDistinctColors++;
@@ -449,10 +772,10 @@ public class WaterSortSearch extends GenericSearch {
                 }
 
                 // add the number of occurrence of each color in the bottle to its hashmap
-                if (listOfBottlesWithNumberOfOccurrenceOfEachColor.get(i).containsKey(state.arrayOfTubes[i][j])) {
-                    listOfBottlesWithNumberOfOccurrenceOfEachColor.get(i).put(state.arrayOfTubes[i][j], listOfBottlesWithNumberOfOccurrenceOfEachColor.get(i).get(state.arrayOfTubes[i][j]) + 1);
+                if (listOfBottlesWithNumberOfOccurrenceOfEachColor.get(i).containsKey(state.color(i, j))) {
+                    listOfBottlesWithNumberOfOccurrenceOfEachColor.get(i).put(state.color(i, j), listOfBottlesWithNumberOfOccurrenceOfEachColor.get(i).get(state.color(i, j)) + 1);
                 } else {
-                    listOfBottlesWithNumberOfOccurrenceOfEachColor.get(i).put(state.arrayOfTubes[i][j], 1);
+                    listOfBottlesWithNumberOfOccurrenceOfEachColor.get(i).put(state.color(i, j), 1);
                 }
             }
         }
@@ -475,7 +798,7 @@ public class WaterSortSearch extends GenericSearch {
                 arrayOfColoredLabels[i].second = 0;
             } else {
                 // initialize the color of the bottom layer as the color with maximum occurrences at the beginning.
-                char colorWithMaximumOccurrences = state.arrayOfTubes[i][state.bottleCapacity - 1];
+                char colorWithMaximumOccurrences = state.color(i, state.bottleCapacity - 1);
 
                 // initially the color with maximum occurrence has an occurrence of 1
                 int countOfNumberOfOccurrences = 1;
@@ -488,35 +811,35 @@ public class WaterSortSearch extends GenericSearch {
                 // we would assign it a label with the same color as their bottom layer
                 for (int j = 0; j < state.bottleCapacity; j++) {
                     // skip the empty layers
-                    if (state.arrayOfTubes[i][j] == 'e') continue;
+                    if (state.color(i, j) == 'e') continue;
 
                     // if colorToColorCountPerBottleMap contains the color then increment the value by 1
-                    if (colorToColorCountPerBottleMap.containsKey(state.arrayOfTubes[i][j])) {
-                        colorToColorCountPerBottleMap.put(state.arrayOfTubes[i][j], colorToColorCountPerBottleMap.get(state.arrayOfTubes[i][j]) + 1);
+                    if (colorToColorCountPerBottleMap.containsKey(state.color(i, j))) {
+                        colorToColorCountPerBottleMap.put(state.color(i, j), colorToColorCountPerBottleMap.get(state.color(i, j)) + 1);
                     } else { // otherwise, set the count of the color to 1
-                        colorToColorCountPerBottleMap.put(state.arrayOfTubes[i][j], 1);
+                        colorToColorCountPerBottleMap.put(state.color(i, j), 1);
                     }
 
                     // if the count of a color in colorToColorCountPerBottleMap is greater than the current maximum count of number of occurrence
                     // then update the colorWithMaximumOccurrences and colorWithMaximumOccurrences update to the new color
-                    if (colorToColorCountPerBottleMap.get(state.arrayOfTubes[i][j]) > countOfNumberOfOccurrences) {
-                        colorWithMaximumOccurrences = state.arrayOfTubes[i][j];
-                        countOfNumberOfOccurrences = colorToColorCountPerBottleMap.get(state.arrayOfTubes[i][j]);
+                    if (colorToColorCountPerBottleMap.get(state.color(i, j)) > countOfNumberOfOccurrences) {
+                        colorWithMaximumOccurrences = state.color(i, j);
+                        countOfNumberOfOccurrences = colorToColorCountPerBottleMap.get(state.color(i, j));
                     }
                 }
 
                 // if the number of occurrence of the bottom layer same as the number of occurrence of largest frequent color
                 // we set the label of the bottle with color of the bottom layer as usually the bottom layers does not move much in pouring problem
-                if (colorToColorCountPerBottleMap.get(state.arrayOfTubes[i][state.bottleCapacity - 1]) == countOfNumberOfOccurrences) {
-                    arrayOfColoredLabels[i].first = state.arrayOfTubes[i][state.bottleCapacity - 1];
+                if (colorToColorCountPerBottleMap.get(state.color(i, state.bottleCapacity - 1)) == countOfNumberOfOccurrences) {
+                    arrayOfColoredLabels[i].first = state.color(i, state.bottleCapacity - 1);
                     arrayOfColoredLabels[i].second = countOfNumberOfOccurrences;
 
                     // update the list of bottles mapped with the current color in colorWithMaximumOccurrences hashmap
-                    if (colorLabelToListOfIndexMap.get(state.arrayOfTubes[i][state.bottleCapacity - 1]) == null) {
-                        colorLabelToListOfIndexMap.put(state.arrayOfTubes[i][state.bottleCapacity - 1], new ArrayList<>());
+                    if (colorLabelToListOfIndexMap.get(state.color(i, state.bottleCapacity - 1)) == null) {
+                        colorLabelToListOfIndexMap.put(state.color(i, state.bottleCapacity - 1), new ArrayList<>());
                     }
 
-                    colorLabelToListOfIndexMap.get(state.arrayOfTubes[i][state.bottleCapacity - 1]).add(new Pair<>(i, countOfNumberOfOccurrences));
+                    colorLabelToListOfIndexMap.get(state.color(i, state.bottleCapacity - 1)).add(new Pair<>(i, countOfNumberOfOccurrences));
 
                 } else {
                     arrayOfColoredLabels[i].first = colorWithMaximumOccurrences;
@@ -679,22 +1002,31 @@ public class WaterSortSearch extends GenericSearch {
             int numberOfBottlesNeededPerColor = colorsToCountOfBottlesNeededMap.get(colorElement.first);
 
             while (numberOfBottlesNeededPerColor > 0) {
+                boolean isAssigned = false;
                 for (Pair<Integer, Integer> bottle : listOfExcessBottleIndex) {
                     if (setOfExcessBottlesIndex.contains(bottle.first)) {
                         arrayOfColoredLabels[bottle.first].first = colorElement.first;
                         arrayOfColoredLabels[bottle.first].second = 0;
                         setOfExcessBottlesIndex.remove(bottle.first);
                         numberOfBottlesNeededPerColor--;
+                        isAssigned = true;
                     }
                 }
+
+                // stop if no excess bottle is left for the color
+                if (!isAssigned) {
+                    break;
+                }
             }
         }
 
         /// Step 6: Swap layers
         // copy the array of tubes from the state
-        char[][] copiedArrayOfTubes = new char[state.arrayOfTubes.length][];
-        for (int i = 0; i < state.arrayOfTubes.length; i++) {
-            copiedArrayOfTubes[i] = state.arrayOfTubes[i].clone();
+        char[][] copiedArrayOfTubes = new char[state.numOfBottles][state.bottleCapacity];
+        for (int i = 0; i < state.numOfBottles; i++) {
+            for (int j = 0; j < state.bottleCapacity; j++) {
+                copiedArrayOfTubes[i][j] = state.color(i, j);
+            }
         }
 
         // create an array that contains the count of the number colored layers in every bottle
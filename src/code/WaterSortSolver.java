@@ -0,0 +1,462 @@
+package code;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToIntFunction;
+
+/**
+ * Solves water sort puzzles, keeping the configuration and the counters of its searches in the instance,
+ * so solvers on different threads do not share any state. A solver solves one puzzle at a time, the results of
+ * the last search (nodes expanded, pruned moves, statistics) stay in it until the next solve.
+ * <p>
+ * The configuration starts from the defaults in {@link WaterSortSearch} at the time the solver is created.
+ * A solve can be given a time limit and a limit on the nodes it generates, which bounds the memory of its
+ * frontier and visited states; the search throws a {@link BudgetExceededException} once either is exceeded.
+ */
+public class WaterSortSolver {
+
+    // the codes of the search strategies (see WaterSortSearch#solve)
+    public static final Set<String> STRATEGIES = Set.of("BF", "DF", "ID", "BD", "UC",
+            "GR1", "GR2", "GR3", "AS1", "AS2", "AS3", "IDA1", "IDA2", "IDA3");
+
+    public boolean visualize;
+    public VisitedSet.Storage visitedStatesStorage = WaterSortSearch.visitedStatesStorage; // where the closed list of the search is allocated
+    public NodePool.Layout nodeLayout = WaterSortSearch.nodeLayout; // how breadth first, uniform cost, greedy and A* search keep their nodes
+    public Symmetry symmetry = WaterSortSearch.symmetry; // which symmetric states are treated as duplicates
+    public EnumSet<PruningRule> pruningRules = EnumSet.copyOf(WaterSortSearch.pruningRules);
+    public int breadthFirstParallelism = WaterSortSearch.breadthFirstParallelism; // number of threads expanding a depth of breadth first search, 1 for the sequential search
+    public int aStarParallelism = WaterSortSearch.aStarParallelism; // number of worker threads of A* search, 1 for the sequential search
+    public int maxNumOfGoalStates = WaterSortSearch.maxNumOfGoalStates; // bidirectional search falls back to breadth first search above this number of goal states
+    public Path patternDatabaseDirectory = WaterSortSearch.patternDatabaseDirectory; // where the pattern database tables are kept
+    public int heuristicCacheCapacity = WaterSortSearch.heuristicCacheCapacity; // number of heuristic costs kept by state fingerprint, 0 to disable caching
+    public Duration timeLimit = null; // longest time a solve may search, null for no limit
+    public long maxNumOfNodes = 0; // most nodes a solve may generate, 0 for no limit
+    public SolutionCache solutionCache = WaterSortSearch.solutionCache; // results of earlier solves, null to search every puzzle
+    public SolutionStore solutionStore = WaterSortSearch.solutionStore; // results of earlier solves kept on the disk, null to not keep them
+
+    Problem problem;
+    PatternDatabaseHeuristic patternDatabaseHeuristic;
+    long deadline; // System.nanoTime() at which the time limit of the current solve runs out
+    public int nodesExpanded = 0;
+    public boolean isCachedSolution = false; // whether the last solve was answered by the solution cache or store without a search
+    public AtomicLong nodesGenerated = new AtomicLong(); // children generated by the last search, counted against maxNumOfNodes
+    public AtomicLongArray prunedMoves = new AtomicLongArray(PruningRule.values().length); // number of pours discarded by every pruning rule
+    public List<ParallelBreadthFirstSearch.Layer> breadthFirstLayers = new ArrayList<>(); // depths of the last parallel breadth first search
+    public List<ParallelAStarSearch.WorkerLoad> aStarWorkerLoads = new ArrayList<>(); // workers of the last parallel A* search
+    public HeuristicCache.Statistics heuristicStatistics; // statistics of the heuristic evaluations of the last search
+    public NodePool.Statistics nodePoolStatistics; // size of the node pool of the last search, null if it kept Node objects
+    public List<IterativeDeepeningAStarSearch.Iteration> idaIterations = new ArrayList<>(); // thresholds of the last IDA* search
+
+    public WaterSortSolver() {}
+
+    /**
+     * Create a solver
+     *
+     * @param visualize whether to print the states of the solution and the statistics of the searches
+     */
+    public WaterSortSolver(boolean visualize) {
+        this.visualize = visualize;
+    }
+
+    /**
+     * Solves problem using given strategy
+     *
+     * @param initialState the puzzle (see {@link WaterSortSearch#solve} for its format)
+     * @param strategy     the search strategy (see {@link WaterSortSearch#solve} for the strategy codes)
+     * @return String representing the sequence of actions to perform (example: plan;pathCost;nodesExpanded)
+     * @throws IllegalArgumentException if the strategy is not one of {@link #STRATEGIES} or the puzzle is malformed
+     */
+    public String solve(String initialState, String strategy) {
+        if (!STRATEGIES.contains(strategy)) {
+            throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+        problem = null;
+        nodesExpanded = 0;
+        isCachedSolution = false;
+        nodePoolStatistics = null;
+        nodesGenerated = new AtomicLong();
+        prunedMoves = new AtomicLongArray(PruningRule.values().length);
+        deadline = timeLimit != null ? System.nanoTime() + timeLimit.toNanos() : 0;
+        // format of returned string
+
+        // Step 1: parse the initial state
+        WaterSearchState parsedInitialState = WaterSortSearch.parseState(initialState);
+
+        // a puzzle solved before, or a renaming of its colors and a reordering of its bottles, returns the result of
+        // that search with the pours mapped to its bottles, while the counters of this solver stay at 0 as nothing was expanded
+        CanonicalInstance canonicalInstance = solutionCache != null || solutionStore != null ? new CanonicalInstance(parsedInitialState) : null;
+        SolutionCache.Key cacheKey = canonicalInstance != null ? SolutionCache.key(canonicalInstance, strategy, this) : null;
+        String cachedSolution = cacheKey != null ? findSolution(cacheKey) : null;
+        if (cachedSolution != null) {
+            isCachedSolution = true;
+            if (visualize && solutionCache != null) {
+                System.out.println(ConsoleColors.PURPLE_BOLD + "Solution cache: " + ConsoleColors.RESET + solutionCache.statistics());
+            }
+            if (visualize && solutionStore != null) {
+                System.out.println(ConsoleColors.PURPLE_BOLD + "Solution store: " + ConsoleColors.RESET + solutionStore.statistics());
+            }
+            return canonicalInstance.toOriginalSolution(cachedSolution);
+        }
+
+        // the pattern databases are loaded before the search, heuristic 1 is used for puzzles they do not support
+        patternDatabaseHeuristic = null;
+        if (strategy.endsWith("3") && PatternDatabaseHeuristic.isSupported(parsedInitialState)) {
+            patternDatabaseHeuristic = new PatternDatabaseHeuristic(parsedInitialState, patternDatabaseDirectory);
+        }
+
+        // choose the heuristic of the strategy once, instead of comparing the strategy on every evaluation
+        ToIntFunction<State> heuristicFunction = switch (strategy) {
+            case "GR1", "AS1", "IDA1" -> state -> WaterSortSearch.calculateHeuristicCost1((WaterSearchState) state);
+            case "GR2", "AS2", "IDA2" -> state -> WaterSortSearch.calculateHeuristicCost2((WaterSearchState) state);
+            case "GR3", "AS3", "IDA3" -> state -> {
+                // both never overestimate, so the larger one is used
+                int heuristicCost1 = WaterSortSearch.calculateHeuristicCost1((WaterSearchState) state);
+                return patternDatabaseHeuristic != null
+                        ? Math.max(patternDatabaseHeuristic.cost((WaterSearchState) state), heuristicCost1)
+                        : heuristicCost1;
+            };
+            default -> null;
+        };
+        // heuristic 1 only depends on the two bottles of a pour, so the cost of a child is updated from its parent
+        boolean isHeuristicIncremental = switch (strategy) {
+            case "GR1", "AS1", "IDA1" -> true;
+            default -> false;
+        };
+        // graph searches evaluate a state once as duplicates are dropped before evaluation,
+        // only searches that can reach a state again keep the costs
+        boolean canReachStatesAgain = strategy.startsWith("IDA") || (strategy.startsWith("AS") && aStarParallelism > 1);
+        HeuristicCache heuristicCache = new HeuristicCache(canReachStatesAgain ? heuristicCacheCapacity : 0);
+        EnumSet<PruningRule> applicablePruningRules = WaterSortSearch.applicablePruningRules(parsedInitialState, pruningRules);
+
+        // Step 2: Define the water search problem
+        problem = new Problem(parsedInitialState, new String[]{"pour"}) {
+            @Override
+            public State transitionFunction(State state, int move) {
+                // Copy the status of the initial state
+                WaterSearchState nextState = WaterSearchState.copy((WaterSearchState) state);
+
+                // Perform the pouring operation to get the next state
+                WaterSortSearch.pour(nextState, move);
+
+                return nextState;
+            }
+
+            @Override
+            public boolean goalTest(State state) {
+                return WaterSortSearch.isGoal((WaterSearchState) state);
+            }
+
+            @Override
+            public int pathCost(State state, int move) {
+                return moveCost(move);
+            }
+
+            @Override
+            public List<Node> expand(Node node) {
+                nodesExpanded++;
+                List<Node> listOfPossibleNextNodes = new ArrayList<>();
+
+                int[] moves = WaterSortSearch.generateMoves((WaterSearchState) node.state, applicablePruningRules, prunedMoves);
+                checkBudget(moves.length);
+                for (int move : moves) {
+                    WaterSortSearch.enqueueNextPossibleNode(node, this, listOfPossibleNextNodes, move);
+                }
+
+                return listOfPossibleNextNodes;
+            }
+
+            @Override
+            public boolean hasPlainStateKeys() {
+                return symmetry == Symmetry.NONE;
+            }
+
+            @Override
+            public boolean supportsInPlaceMoves() {
+                return true;
+            }
+
+            @Override
+            public int[] expandMoves(State state) {
+                nodesExpanded++;
+                int[] moves = WaterSortSearch.generateMoves((WaterSearchState) state, applicablePruningRules, prunedMoves);
+                checkBudget(moves.length);
+                return moves;
+            }
+
+            @Override
+            public void applyMove(State state, int move) {
+                WaterSortSearch.pour((WaterSearchState) state, Move.from(move), Move.to(move), Move.layers(move));
+            }
+
+            @Override
+            public void undoMove(State state, int move) {
+                // pour the same layers back, the poured layers are on top of the second bottle
+                WaterSortSearch.pour((WaterSearchState) state, Move.to(move), Move.from(move), Move.layers(move));
+            }
+
+            @Override
+            public int moveCost(int move) {
+                return Move.layers(move); // the cost of a pour is the number of layers poured
+            }
+
+            @Override
+            public Node makeChild(Node node, int move) {
+                List<Node> listOfPossibleNextNodes = new ArrayList<>(1);
+                WaterSortSearch.enqueueNextPossibleNode(node, this, listOfPossibleNextNodes, move);
+                return listOfPossibleNextNodes.get(0);
+            }
+
+            @Override
+            public boolean supportsPackedStates() {
+                return true;
+            }
+
+            @Override
+            public int packedStateSize(State state) {
+                return ((WaterSearchState) state).numOfPackedWords();
+            }
+
+            @Override
+            public void packState(State state, long[] words, int offset) {
+                ((WaterSearchState) state).pack(words, offset);
+            }
+
+            @Override
+            public void unpackState(State state, long[] words, int offset) {
+                ((WaterSearchState) state).unpack(words, offset);
+            }
+
+            @Override
+            public boolean supportsBackwardSearch() {
+                return true;
+            }
+
+            @Override
+            public List<State> goalStates(int maxNumOfGoalStates) {
+                List<State> goalStates = new ArrayList<>();
+                HashSet<PackedState> keys = new HashSet<>();
+                List<State> sortedGoalStates = WaterSortSearch.generateGoalStates((WaterSearchState) initialState, maxNumOfGoalStates);
+                if (sortedGoalStates == null) {
+                    return null;
+                }
+                // sorted goal states can still have the same key when colors are relabeled
+                for (State goalState : sortedGoalStates) {
+                    if (keys.add(meetingKey(goalState))) {
+                        goalStates.add(goalState);
+                    }
+                }
+                return goalStates;
+            }
+
+            @Override
+            public PackedState meetingKey(State state) {
+                // states that only differ in the order of the bottles always meet, so the goal states are few
+                return ((WaterSearchState) state).canonicalKey(symmetry == Symmetry.BOTTLE_ORDER_AND_COLORS);
+            }
+
+            @Override
+            public int mapMove(State fromState, State toState, int move) {
+                boolean relabelColors = symmetry == Symmetry.BOTTLE_ORDER_AND_COLORS;
+                CanonicalForm fromForm = new CanonicalForm((WaterSearchState) fromState, relabelColors);
+                CanonicalForm toForm = new CanonicalForm((WaterSearchState) toState, relabelColors);
+
+                // the bottles are mapped, the states hold the same layers so the same number of layers is poured
+                int firstBottleIndex = toForm.originalBottle(fromForm.canonicalPosition(Move.from(move)));
+                int secondBottleIndex = toForm.originalBottle(fromForm.canonicalPosition(Move.to(move)));
+                return Move.of(firstBottleIndex, secondBottleIndex, Move.layers(move));
+            }
+
+            @Override
+            public List<Node> expandBackward(Node node) {
+                nodesExpanded++;
+                List<Node> listOfPreviousNodes = new ArrayList<>();
+
+                int[] moves = WaterSortSearch.generateInverseMoves((WaterSearchState) node.state);
+                checkBudget(moves.length);
+                for (int move : moves) {
+                    // pour the layers back to get the state the move was applied to
+                    WaterSearchState previousState = WaterSearchState.copy((WaterSearchState) node.state);
+                    WaterSortSearch.pour(previousState, Move.to(move), Move.from(move), Move.layers(move));
+
+                    listOfPreviousNodes.add(new Node(
+                            previousState,
+                            node,
+                            move,
+                            node.pathCost + Move.layers(move),
+                            node.depth + 1
+                    ));
+                }
+
+                return listOfPreviousNodes;
+            }
+
+            @Override
+            public int heuristicCost(State state) {
+                return heuristicFunction != null ? heuristicCache.get(state, heuristicFunction) : -1;
+            }
+
+            @Override
+            public int heuristicCost(State state, int move, int previousHeuristicCost) {
+                if (isHeuristicIncremental) {
+                    return WaterSortSearch.updateHeuristicCost1((WaterSearchState) state, move, previousHeuristicCost);
+                }
+                return heuristicCost(state);
+            }
+
+            @Override
+            public PackedState stateKey(State state) {
+                // the nodes keep their own states, so the plan uses the bottle indices of the initial state in every mode
+                if (symmetry == Symmetry.NONE) {
+                    return state.key();
+                }
+                return ((WaterSearchState) state).canonicalKey(symmetry == Symmetry.BOTTLE_ORDER_AND_COLORS);
+            }
+        };
+        problem.visitedStatesStorage = visitedStatesStorage;
+        problem.nodeLayout = nodeLayout;
+
+        Node goalNode = null;
+        // Step 3: Perform general search
+        switch (strategy) {
+            case "BF":
+                if (breadthFirstParallelism > 1) {
+                    breadthFirstLayers.clear();
+                    goalNode = GenericSearch.breadthFirstSearch(problem, breadthFirstParallelism, breadthFirstLayers);
+                    // expand is called from several threads, so the count is taken from the layers of the search
+                    nodesExpanded = 0;
+                    for (ParallelBreadthFirstSearch.Layer layer : breadthFirstLayers) {
+                        nodesExpanded += (int) layer.nodesExpanded;
+                        if (visualize) {
+                            System.out.println(ConsoleColors.PURPLE_BOLD + "Breadth first layer: " + ConsoleColors.RESET + layer);
+                        }
+                    }
+                } else {
+                    goalNode = GenericSearch.breadthFirstSearch(problem);
+                }
+                break;
+            case "DF":
+                goalNode = GenericSearch.depthFirstSearch(problem);
+                break;
+            case "ID":
+                goalNode = GenericSearch.iterativeDeepeningSearch(problem);
+                break;
+            case "BD":
+                goalNode = GenericSearch.bidirectionalSearch(problem, maxNumOfGoalStates);
+                break;
+            case "UC":
+                goalNode = GenericSearch.uniformCostSearch(problem);
+                break;
+            case "GR1", "GR2", "GR3":
+                goalNode = GenericSearch.greedySearch(problem);
+                break;
+            case "AS1", "AS2", "AS3":
+                if (aStarParallelism > 1) {
+                    aStarWorkerLoads.clear();
+                    goalNode = GenericSearch.aStarSearch(problem, aStarParallelism, aStarWorkerLoads);
+                    // expand is called from several threads, so the count is taken from the workers
+                    nodesExpanded = 0;
+                    for (ParallelAStarSearch.WorkerLoad workerLoad : aStarWorkerLoads) {
+                        nodesExpanded += (int) workerLoad.nodesExpanded;
+                        if (visualize) {
+                            System.out.println(ConsoleColors.PURPLE_BOLD + "A* worker: " + ConsoleColors.RESET + workerLoad);
+                        }
+                    }
+                } else {
+                    goalNode = GenericSearch.aStarSearch(problem);
+                }
+                break;
+            case "IDA1", "IDA2", "IDA3":
+                idaIterations.clear();
+                goalNode = GenericSearch.iterativeDeepeningAStarSearch(problem, idaIterations);
+                if (visualize) {
+                    for (IterativeDeepeningAStarSearch.Iteration iteration : idaIterations) {
+                        System.out.println(ConsoleColors.PURPLE_BOLD + "IDA* iteration: " + ConsoleColors.RESET + iteration);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+
+        heuristicStatistics = heuristicFunction != null ? heuristicCache.statistics() : null;
+        if (visualize && heuristicStatistics != null) {
+            System.out.println(ConsoleColors.PURPLE_BOLD + "Heuristic: " + ConsoleColors.RESET + heuristicStatistics);
+        }
+        if (visualize && problem.visitedStatesStatistics != null) {
+            System.out.println(ConsoleColors.PURPLE_BOLD + "Visited states: " + ConsoleColors.RESET + problem.visitedStatesStatistics);
+        }
+        nodePoolStatistics = problem.nodePoolStatistics;
+        if (visualize && nodePoolStatistics != null) {
+            long objectBytesPerNode = NodePool.objectBytesPerNode(parsedInitialState.estimatedBytes());
+            System.out.println(ConsoleColors.PURPLE_BOLD + "Node pool: " + ConsoleColors.RESET + nodePoolStatistics
+                    + ", Node objects: ~" + objectBytesPerNode + " bytes per node");
+        }
+        if (visualize) {
+            for (PruningRule pruningRule : PruningRule.values()) {
+                System.out.println(ConsoleColors.PURPLE_BOLD + "Pruned by " + pruningRule + ": " + ConsoleColors.RESET + prunedMoves.get(pruningRule.ordinal()));
+            }
+        }
+
+        String solution;
+        if (goalNode == null) {
+            solution = "NOSOLUTION";
+        } else {
+            nodesExpanded++; // add the goal node to the nodes expanded
+            solution = WaterSortSearch.constructSolution(goalNode, nodesExpanded, visualize);
+        }
+        if (cacheKey != null) {
+            String canonicalSolution = canonicalInstance.toCanonicalSolution(solution);
+            if (solutionCache != null) {
+                solutionCache.put(cacheKey, canonicalSolution);
+            }
+            if (solutionStore != null) {
+                solutionStore.put(cacheKey, canonicalSolution);
+            }
+        }
+        return solution;
+    }
+
+    /**
+     * Look up the result of an earlier solve in the solution cache, then in the solution store
+     *
+     * @param key the key of the solve
+     * @return the result, or null if the puzzle was not solved before
+     */
+    String findSolution(SolutionCache.Key key) {
+        String solution = solutionCache != null ? solutionCache.get(key) : null;
+        if (solution == null && solutionStore != null) {
+            solution = solutionStore.get(key);
+            if (solution != null && solutionCache != null) {
+                solutionCache.put(key, solution); // later solves of the puzzle do not read the disk
+            }
+        }
+        return solution;
+    }
+
+    /**
+     * The largest number of nodes that waited to be expanded at once in the last search,
+     * which is kept when the search runs out of its budget as well
+     */
+    public int peakFrontierSize() {
+        return problem != null ? problem.peakFrontierSize : 0;
+    }
+
+    /**
+     * Count the nodes generated by an expansion against the budget of the current solve
+     *
+     * @param numOfNodes number of nodes generated
+     * @throws BudgetExceededException if the search generated too many nodes or ran out of time
+     */
+    void checkBudget(int numOfNodes) {
+        long numOfNodesGenerated = nodesGenerated.addAndGet(numOfNodes);
+        if (maxNumOfNodes > 0 && numOfNodesGenerated > maxNumOfNodes) {
+            throw new BudgetExceededException(BudgetExceededException.Limit.NODES, "Search generated more than " + maxNumOfNodes + " nodes");
+        }
+        if (timeLimit != null && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException(BudgetExceededException.Limit.TIME, "Search ran longer than " + timeLimit);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package code;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random 64-bit keys for every (layer, color) pair of a problem.
+ * The hash of a state is the xor of the keys of all its layers, so changing a single layer
+ * updates the hash in O(1) instead of rehashing the whole state.
+ */
+public class ZobristTable {
+
+    static final long SEED = 0x5DEECE66DL; // fixed so hashes are reproducible between runs
+
+    long[] keys;
+    int numOfIds;
+
+    /**
+     * Create the keys of a problem
+     *
+     * @param numOfLayers total number of layers in a state (number of bottles * bottle capacity)
+     * @param numOfIds    number of color ids including the empty layer
+     */
+    public ZobristTable(int numOfLayers, int numOfIds) {
+        this.numOfIds = numOfIds;
+        this.keys = new long[numOfLayers * numOfIds];
+
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int layer = 0; layer < numOfLayers; layer++) {
+            // empty layers keep a key of 0 so the hash of an all-empty state is 0
+            for (int id = 1; id < numOfIds; id++) {
+                keys[layer * numOfIds + id] = random.nextLong();
+            }
+        }
+    }
+
+    /**
+     * Get the key of a color at a layer
+     *
+     * @param layer the index of the layer in the state (bottleIndex * bottleCapacity + layerIndex)
+     * @param id    the color id
+     * @return the key to xor into the hash
+     */
+    public long key(int layer, int id) {
+        return keys[layer * numOfIds + id];
+    }
+}
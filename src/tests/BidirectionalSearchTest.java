@@ -0,0 +1,44 @@
+package tests;
+
+
+import code.Symmetry;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BidirectionalSearchTest {
+
+    @Test(timeout = 120000)
+    public void testBidirectionalPlansAreShortest() {
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(15, 40)) {
+            String expectedSolution = new WaterSortSolver().solve(grid, "BF");
+            for (Symmetry symmetry : Symmetry.values()) {
+                WaterSortSolver solver = new WaterSortSolver();
+                solver.symmetry = symmetry;
+                String solution = solver.solve(grid, "BD");
+                if (expectedSolution.equals("NOSOLUTION")) {
+                    assertEquals(grid, "NOSOLUTION", solution);
+                    continue;
+                }
+                // the backward moves are mapped to the meeting state of the forward search, so the plan replays from the initial state
+                SymmetryTest.replayPlan(grid, solution);
+                assertEquals(grid + " " + symmetry, SymmetryTest.planLength(expectedSolution), SymmetryTest.planLength(solution));
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testFallBackToBreadthFirstSearch() {
+        // with too many goal states there is no backward search, the plan is the one of breadth first search
+        String grid = "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;";
+        WaterSortSolver solver = new WaterSortSolver();
+        solver.maxNumOfGoalStates = 1;
+        assertEquals(new WaterSortSolver().solve(grid, "BF"), solver.solve(grid, "BD"));
+    }
+
+    @Test
+    public void testAlreadySolvedPuzzle() {
+        assertEquals(";0;1", new WaterSortSolver().solve("3;2;r,r;y,y;e,e;", "BD"));
+    }
+}
@@ -0,0 +1,195 @@
+package tests;
+
+
+import code.BatchSolver;
+import code.Symmetry;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentSolveTest {
+
+    String[] grids = {
+            "3;4;r,y,r,y;y,r,y,r;e,e,e,e;",
+            "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;",
+            "5;4;b,r,o,b;b,r,o,o;r,o,b,r;e,e,e,e;e,e,e,e;",
+            "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;",
+            "6;3;r,r,y;b,y,r;y,b,g;g,g,b;e,e,e;e,e,e;",
+            "2;2;r,y;y,r;", // no solution
+    };
+
+    String[] strategies = {"BF", "DF", "ID", "BD", "UC", "GR1", "GR2", "GR3", "AS1", "AS2", "AS3", "IDA1", "IDA2", "IDA3"};
+
+    Symmetry[] symmetries = Symmetry.values();
+
+    static final int NUM_OF_THREADS = 8;
+    static final int NUM_OF_ROUNDS = 4;
+
+    record Solve(String grid, String strategy, Symmetry symmetry) {
+        String run() {
+            WaterSortSolver solver = new WaterSortSolver();
+            solver.symmetry = symmetry;
+            return solver.solve(grid, strategy);
+        }
+    }
+
+    List<Solve> allSolves() {
+        List<Solve> solves = new ArrayList<>();
+        for (String grid : grids) {
+            for (String strategy : strategies) {
+                for (Symmetry symmetry : symmetries) {
+                    solves.add(new Solve(grid, strategy, symmetry));
+                }
+            }
+        }
+        return solves;
+    }
+
+    /**
+     * Run every solve on a pool of threads in a shuffled order and compare with the result of running it alone
+     */
+    static void assertSameResults(List<Solve> solves, Map<Solve, String> expectedResults, Random random) throws Exception {
+        List<Solve> shuffledSolves = new ArrayList<>();
+        for (int round = 0; round < NUM_OF_ROUNDS; round++) {
+            shuffledSolves.addAll(solves);
+        }
+        Collections.shuffle(shuffledSolves, random);
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_OF_THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1); // start all solves together
+            List<Future<String>> results = new ArrayList<>();
+            for (Solve solve : shuffledSolves) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return solve.run();
+                }));
+            }
+            start.countDown();
+
+            for (int i = 0; i < shuffledSolves.size(); i++) {
+                Solve solve = shuffledSolves.get(i);
+                assertEquals(solve.toString(), expectedResults.get(solve), results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testConcurrentSolversMatchSequentialSolves() throws Exception {
+        List<Solve> solves = allSolves();
+        Map<Solve, String> expectedResults = new HashMap<>();
+        for (Solve solve : solves) {
+            expectedResults.put(solve, solve.run());
+        }
+        for (Solve solve : solves) {
+            // the last grid keeps the searches that exhaust the state space covered
+            assertEquals(solve.toString(), solve.grid().equals(grids[grids.length - 1]), expectedResults.get(solve).equals("NOSOLUTION"));
+        }
+
+        assertSameResults(solves, expectedResults, new Random(18));
+    }
+
+    @Test(timeout = 120000)
+    public void testConcurrentStaticSolvesMatchSequentialSolves() throws Exception {
+        List<String[]> solves = new ArrayList<>();
+        Map<String, String> expectedResults = new HashMap<>();
+        for (String grid : grids) {
+            for (String strategy : strategies) {
+                solves.add(new String[]{grid, strategy});
+                expectedResults.put(grid + strategy, WaterSortSearch.solve(grid, strategy, false));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_OF_THREADS);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int round = 0; round < NUM_OF_ROUNDS; round++) {
+                for (String[] solve : solves) {
+                    tasks.add(() -> expectedResults.get(solve[0] + solve[1]).equals(WaterSortSearch.solve(solve[0], solve[1], false)));
+                }
+            }
+            Collections.shuffle(tasks, new Random(1818));
+
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testSolverKeepsItsOwnCounters() throws Exception {
+        // a solver reports the counters of its own search while other solvers run
+        String grid = grids[3];
+        WaterSortSolver sequentialSolver = new WaterSortSolver();
+        String expectedResult = sequentialSolver.solve(grid, "BF");
+        int expectedNodesExpanded = sequentialSolver.nodesExpanded;
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_OF_THREADS);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 4 * NUM_OF_THREADS; i++) {
+                results.add(executor.submit(() -> {
+                    WaterSortSolver solver = new WaterSortSolver();
+                    return solver.solve(grid, "BF").equals(expectedResult) && solver.nodesExpanded == expectedNodesExpanded;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testBatchSolverMatchesSequentialSolves() {
+        List<BatchSolver.Request> requests = new ArrayList<>();
+        for (String grid : grids) {
+            for (String strategy : strategies) {
+                requests.add(new BatchSolver.Request(grid, strategy));
+            }
+        }
+
+        try (BatchSolver batchSolver = new BatchSolver(NUM_OF_THREADS)) {
+            Set<Integer> indices = new HashSet<>();
+            batchSolver.solve(requests).forEach(result -> {
+                assertTrue(indices.add(result.index()));
+                assertSame(requests.get(result.index()), result.request());
+                BatchSolver.Request request = result.request();
+                assertEquals(request.toString(), WaterSortSearch.solve(request.initialState(), request.strategy(), false), result.solution());
+                assertNotEquals(BatchSolver.Status.FAILED, result.status());
+            });
+            assertEquals(requests.size(), indices.size());
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testBatchSolverReportsExceededBudgets() {
+        // a malformed puzzle or a search over its budget does not stop the rest of the batch
+        List<BatchSolver.Request> requests = List.of(
+                new BatchSolver.Request(grids[3], "BF"),
+                new BatchSolver.Request("e;", "BF"),
+                new BatchSolver.Request(grids[0], "BF"));
+
+        try (BatchSolver batchSolver = new BatchSolver(2)) {
+            batchSolver.maxNumOfNodes = 30;
+            Map<Integer, BatchSolver.Result> results = new HashMap<>();
+            batchSolver.solve(requests).forEach(result -> results.put(result.index(), result));
+
+            assertEquals(BatchSolver.Status.NODE_LIMIT_EXCEEDED, results.get(0).status());
+            assertTrue(results.get(0).nodesGenerated() > 30);
+            assertTrue(results.get(0).peakFrontierSize() > 0);
+            assertEquals(BatchSolver.Status.FAILED, results.get(1).status());
+            assertEquals(BatchSolver.Status.SOLVED, results.get(2).status());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package tests;
+
+
+import code.GenericSearch;
+import code.Move;
+import code.Node;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ConstructSolutionTest {
+
+    @Test(timeout = 10000)
+    public void testLongPlanIsFormattedInOrder() {
+        // pour all the layers back and forth between the first two bottles
+        WaterSearchState root = WaterSortSearch.parseState("3;4;r,r,r,r;e,e,e,e;e,e,e,e;");
+        Node node = GenericSearch.makeNode(root);
+        StringBuilder expectedPlan = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            int move = Move.of(i % 2, (i + 1) % 2, 4);
+            node = new Node(root, node, move, node.pathCost + 4, node.depth + 1);
+            expectedPlan.append(i > 0 ? "," : "").append(Move.toString(move));
+        }
+
+        assertEquals(expectedPlan + ";400000;7", WaterSortSearch.constructSolution(node, 7, false));
+    }
+
+    @Test
+    public void testStatesAlongThePathArePrintedToTheSink() {
+        String grid = "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;";
+        String solution = WaterSortSearch.solve(grid, "BF", false);
+        String[] moves = solution.split(";")[0].split(",");
+
+        // replay the plan, the path needs its moves and depths only
+        WaterSearchState state = WaterSortSearch.parseState(grid);
+        Node node = GenericSearch.makeNode(WaterSortSearch.parseState(grid));
+        StringBuilder expectedStates = new StringBuilder(state.toString());
+        for (String move : moves) {
+            int firstBottleIndex = Integer.parseInt(move.split("_")[1]);
+            int secondBottleIndex = Integer.parseInt(move.split("_")[2]);
+            int numOfLayers = WaterSortSearch.calculateCost(state, firstBottleIndex, secondBottleIndex);
+            WaterSortSearch.pour(state, firstBottleIndex, secondBottleIndex, numOfLayers);
+            node = new Node(null, node, Move.of(firstBottleIndex, secondBottleIndex, numOfLayers), node.pathCost + numOfLayers, node.depth + 1);
+            expectedStates.append(" ").append(move).append(" ").append(state);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(solution.split(";")[0] + ";" + solution.split(";")[1] + ";3",
+                WaterSortSearch.constructSolution(node, 3, new PrintStream(output, true, StandardCharsets.UTF_8)));
+        String printedStates = output.toString(StandardCharsets.UTF_8)
+                .replaceAll("\u001B\\[[0-9;]*m", "") // without the colors
+                .replace("Root: ", "").replace(":", "").trim().replaceAll("\\s+", " ");
+        assertEquals(expectedStates.toString(), printedStates);
+    }
+}
@@ -0,0 +1,126 @@
+package tests;
+
+
+import code.BucketFrontier;
+import code.DequeFrontier;
+import code.Frontier;
+import code.Node;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrontierTest {
+
+    /**
+     * A node that is only told apart by its path cost, depth and move
+     */
+    static Node node(int pathCost, int depth, int id) {
+        return new Node(null, null, id, pathCost, depth);
+    }
+
+    static List<Integer> removeAll(Frontier frontier) {
+        List<Integer> ids = new ArrayList<>();
+        while (!frontier.isEmpty()) {
+            ids.add(frontier.remove().move);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testBucketFrontierRemovesLowestPriorityInInsertionOrder() {
+        BucketFrontier frontier = new BucketFrontier(node -> node.pathCost, BucketFrontier.TieBreaking.FIFO);
+        int[] priorities = {3, 1, 3, 0, 1, 2};
+        for (int i = 0; i < priorities.length; i++) {
+            frontier.add(node(priorities[i], 0, i));
+        }
+        assertEquals(priorities.length, frontier.size());
+        assertEquals(List.of(3, 1, 4, 5, 0, 2), removeAll(frontier));
+        assertEquals(0, frontier.size());
+    }
+
+    @Test
+    public void testBucketFrontierLifoTieBreaking() {
+        BucketFrontier frontier = new BucketFrontier(node -> node.pathCost, BucketFrontier.TieBreaking.LIFO);
+        int[] priorities = {2, 1, 2, 1, 2};
+        for (int i = 0; i < priorities.length; i++) {
+            frontier.add(node(priorities[i], 0, i));
+        }
+        assertEquals(List.of(3, 1, 4, 2, 0), removeAll(frontier));
+    }
+
+    @Test
+    public void testBucketFrontierDeepestFirstTieBreaking() {
+        BucketFrontier frontier = new BucketFrontier(node -> node.pathCost, BucketFrontier.TieBreaking.DEEPEST_FIRST);
+        frontier.add(node(5, 1, 0));
+        frontier.add(node(5, 3, 1));
+        frontier.add(node(5, 2, 2));
+        frontier.add(node(5, 3, 3));
+        frontier.add(node(4, 0, 4));
+        // the lower priority first, then the deepest nodes, in insertion order among nodes of the same depth
+        assertEquals(List.of(4, 1, 3, 2, 0), removeAll(frontier));
+    }
+
+    @Test
+    public void testBucketFrontierTakesLowerPriorityAfterRemoval() {
+        // greedy search can insert a child with a lower heuristic cost than the node that was just removed
+        BucketFrontier frontier = new BucketFrontier(node -> node.pathCost);
+        frontier.add(node(4, 0, 0));
+        frontier.add(node(6, 0, 1));
+        assertEquals(0, frontier.remove().move);
+        frontier.add(node(1, 1, 2));
+        frontier.add(node(5, 1, 3));
+        assertEquals(List.of(2, 3, 1), removeAll(frontier));
+    }
+
+    @Test
+    public void testBucketFrontierRejectsNegativePriorities() {
+        BucketFrontier frontier = new BucketFrontier(node -> node.pathCost);
+        assertThrows(IllegalArgumentException.class, () -> frontier.add(node(-1, 0, 0)));
+        assertTrue(frontier.isEmpty());
+    }
+
+    @Test
+    public void testDequeFrontierFifoOrder() {
+        DequeFrontier frontier = new DequeFrontier(DequeFrontier.Order.FIFO);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(frontier.add(node(0, 0, i)));
+        }
+        assertEquals(0, frontier.remove().move);
+        frontier.add(node(0, 1, 3));
+        assertEquals(3, frontier.size());
+        assertEquals(List.of(1, 2, 3), removeAll(frontier));
+    }
+
+    @Test
+    public void testDequeFrontierLifoOrder() {
+        DequeFrontier frontier = new DequeFrontier(DequeFrontier.Order.LIFO);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(frontier.add(node(0, 0, i)));
+        }
+        assertEquals(2, frontier.remove().move);
+        frontier.add(node(0, 1, 3));
+        assertEquals(List.of(3, 1, 0), removeAll(frontier));
+    }
+
+    @Test
+    public void testDequeFrontierKeepsManyNodes() {
+        // larger than the initial capacity of the array, with removals wrapping around its end
+        DequeFrontier frontier = new DequeFrontier(DequeFrontier.Order.FIFO);
+        int nextRemoved = 0;
+        for (int i = 0; i < 10000; i++) {
+            frontier.add(node(0, 0, i));
+            if (i % 3 == 0) {
+                assertEquals(nextRemoved++, frontier.remove().move);
+            }
+        }
+        assertEquals(10000 - nextRemoved, frontier.size());
+        List<Integer> ids = removeAll(frontier);
+        for (int id : ids) {
+            assertEquals(nextRemoved++, id);
+        }
+        assertEquals(10000, nextRemoved);
+    }
+}
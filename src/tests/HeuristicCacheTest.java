@@ -0,0 +1,126 @@
+package tests;
+
+
+import code.HeuristicCache;
+import code.PackedState;
+import code.Problem;
+import code.State;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import static org.junit.Assert.*;
+
+public class HeuristicCacheTest {
+
+    /**
+     * A state that only has a fingerprint
+     */
+    static class FingerprintState extends State {
+        long fingerprint;
+
+        FingerprintState(long fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public PackedState key() {
+            return new PackedState(new long[]{fingerprint});
+        }
+
+        @Override
+        public long fingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public State copy() {
+            return new FingerprintState(fingerprint);
+        }
+    }
+
+    /**
+     * A heuristic whose cost depends on the fingerprint only, counting its evaluations
+     */
+    static class CountingHeuristic implements ToIntFunction<State> {
+        int evaluations = 0;
+
+        static int cost(long fingerprint) {
+            return (int) (fingerprint >>> 54);
+        }
+
+        @Override
+        public int applyAsInt(State state) {
+            evaluations++;
+            return cost(state.fingerprint());
+        }
+    }
+
+    @Test
+    public void testCachedCostsAreHits() {
+        HeuristicCache cache = new HeuristicCache(1 << 16);
+        CountingHeuristic heuristic = new CountingHeuristic();
+        long[] fingerprints = new Random(18).longs(1000).toArray();
+
+        for (long fingerprint : fingerprints) {
+            assertEquals(CountingHeuristic.cost(fingerprint), cache.get(new FingerprintState(fingerprint), heuristic));
+        }
+        assertEquals(1000, heuristic.evaluations);
+
+        for (long fingerprint : fingerprints) {
+            assertEquals(CountingHeuristic.cost(fingerprint), cache.get(new FingerprintState(fingerprint), heuristic));
+        }
+        HeuristicCache.Statistics statistics = cache.statistics();
+        assertEquals(2000, statistics.hits + statistics.misses);
+        assertEquals(statistics.misses, heuristic.evaluations);
+        assertTrue(statistics.hits >= 950); // only the states that lost their slot to a later state are evaluated again
+    }
+
+    @Test
+    public void testStatesSharingASlotAreToldApart() {
+        // 3 states in 2 slots, a state whose slot was taken is evaluated again instead of getting the cost of the other state
+        HeuristicCache cache = new HeuristicCache(2);
+        CountingHeuristic heuristic = new CountingHeuristic();
+        long[] fingerprints = {1L << 54, 2L << 54, 3L << 54};
+
+        for (int round = 0; round < 3; round++) {
+            for (long fingerprint : fingerprints) {
+                assertEquals(CountingHeuristic.cost(fingerprint), cache.get(new FingerprintState(fingerprint), heuristic));
+            }
+        }
+        HeuristicCache.Statistics statistics = cache.statistics();
+        assertEquals(2, statistics.capacity);
+        assertTrue(statistics.misses > 3);
+        assertEquals(statistics.misses, heuristic.evaluations);
+    }
+
+    @Test
+    public void testCostsThatDoNotFitAreNotCached() {
+        HeuristicCache cache = new HeuristicCache(16);
+        AtomicInteger evaluations = new AtomicInteger();
+        for (int cost : new int[]{70000, Problem.DEAD_END}) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(cost, cache.get(new FingerprintState(cost), state -> {
+                    evaluations.incrementAndGet();
+                    return cost;
+                }));
+            }
+        }
+        assertEquals(6, evaluations.get());
+        assertEquals(0, cache.statistics().hits);
+    }
+
+    @Test
+    public void testZeroCapacityEvaluatesEveryState() {
+        HeuristicCache cache = new HeuristicCache(0);
+        CountingHeuristic heuristic = new CountingHeuristic();
+        for (int i = 0; i < 3; i++) {
+            cache.get(new FingerprintState(5), heuristic);
+        }
+        assertEquals(3, heuristic.evaluations);
+        assertEquals(0, cache.statistics().capacity);
+        assertEquals(0, cache.statistics().hitRate(), 0);
+    }
+}
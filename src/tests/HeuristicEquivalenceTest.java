@@ -0,0 +1,198 @@
+package tests;
+
+
+import code.Move;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HeuristicEquivalenceTest {
+
+    String[] grids = {
+            "3;4;r,y,r,y;y,r,y,r;e,e,e,e;",
+            "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;",
+            "5;4;b,r,o,b;b,r,o,o;r,o,b,r;e,e,e,e;e,e,e,e;",
+            "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;",
+            "6;3;r,r,y;b,y,r;y,b,g;g,g,b;e,e,e;e,e,e;",
+            "8;4;r,g,b,y;o,p,r,g;b,y,o,p;p,o,y,b;g,r,p,o;y,b,g,r;e,e,e,e;e,e,e,e;",
+    };
+
+    static final String LETTERS = "abcdfghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /**
+     * A puzzle where every color fills exactly one bottle, shuffled over the first bottles
+     */
+    static String randomPuzzle(Random random, int numOfColors, int bottleCapacity, int numOfEmptyBottles) {
+        List<Character> layers = new ArrayList<>();
+        int firstLetter = random.nextInt(LETTERS.length() - numOfColors + 1);
+        for (int color = 0; color < numOfColors; color++) {
+            for (int layer = 0; layer < bottleCapacity; layer++) {
+                layers.add(LETTERS.charAt(firstLetter + color));
+            }
+        }
+        Collections.shuffle(layers, random);
+
+        StringBuilder grid = new StringBuilder(numOfColors + numOfEmptyBottles + ";" + bottleCapacity + ";");
+        for (int i = 0; i < numOfColors + numOfEmptyBottles; i++) {
+            for (int j = 0; j < bottleCapacity; j++) {
+                grid.append(i < numOfColors ? layers.get(i * bottleCapacity + j) : 'e').append(j < bottleCapacity - 1 ? "," : ";");
+            }
+        }
+        return grid.toString();
+    }
+
+    /**
+     * A grid of bottles filled to random heights with random colors, so colors do not fill a whole number of bottles
+     */
+    static String randomLayout(Random random, int numOfColors, int bottleCapacity, int numOfBottles) {
+        int firstLetter = random.nextInt(LETTERS.length() - numOfColors + 1);
+        StringBuilder grid = new StringBuilder(numOfBottles + ";" + bottleCapacity + ";");
+        for (int i = 0; i < numOfBottles; i++) {
+            int height = random.nextInt(bottleCapacity + 1);
+            for (int j = 0; j < bottleCapacity; j++) {
+                grid.append(j < bottleCapacity - height ? 'e' : LETTERS.charAt(firstLetter + random.nextInt(numOfColors)))
+                        .append(j < bottleCapacity - 1 ? "," : ";");
+            }
+        }
+        return grid.toString();
+    }
+
+    /**
+     * Make one of the legal pours of a state at random, a step of a random walk of pours
+     *
+     * @return the move poured, or -1 if no pour is legal
+     */
+    static int randomPour(Random random, WaterSearchState state, int numOfBottles) {
+        List<int[]> moves = new ArrayList<>();
+        for (int i = 0; i < numOfBottles; i++) {
+            for (int j = 0; j < numOfBottles; j++) {
+                if (WaterSortSearch.canPour(state, i, j)) {
+                    moves.add(new int[]{i, j});
+                }
+            }
+        }
+        if (moves.isEmpty()) return -1;
+
+        int[] move = moves.get(random.nextInt(moves.size()));
+        int numOfLayers = WaterSortSearch.calculateCost(state, move[0], move[1]);
+        WaterSortSearch.pour(state, move[0], move[1], numOfLayers);
+        return Move.of(move[0], move[1], numOfLayers);
+    }
+
+    /**
+     * Compare both implementations on every state of a random walk of pours from a grid
+     *
+     * @return number of states compared
+     */
+    static int compareAlongRandomWalk(Random random, String grid, int numOfPours) {
+        WaterSearchState state = WaterSortSearch.parseState(grid);
+        int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+        assertSameCost(grid, state);
+
+        int numOfStates = 1;
+        for (int pour = 0; pour < numOfPours; pour++) {
+            if (randomPour(random, state, numOfBottles) == -1) break;
+            assertSameCost(grid + " after " + (pour + 1) + " pours", state);
+            numOfStates++;
+        }
+        return numOfStates;
+    }
+
+    static void assertSameCost(String message, WaterSearchState state) {
+        assertEquals(message, WaterSortSearch.calculateHeuristicCost2Reference(state), WaterSortSearch.calculateHeuristicCost2(state));
+    }
+
+    @Test(timeout = 60000)
+    public void testTestGrids() {
+        Random random = new Random(16);
+        for (String grid : grids) {
+            for (int walk = 0; walk < 200; walk++) {
+                compareAlongRandomWalk(random, grid, 40);
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testRandomPuzzles() {
+        Random random = new Random(1616);
+        int numOfStates = 0;
+        for (int puzzle = 0; puzzle < 2000; puzzle++) {
+            String grid = randomPuzzle(random, 2 + random.nextInt(8), 2 + random.nextInt(5), random.nextInt(3));
+            numOfStates += compareAlongRandomWalk(random, grid, random.nextInt(40));
+        }
+        assertTrue(numOfStates > 2000);
+    }
+
+    @Test(timeout = 60000)
+    public void testRandomLayouts() {
+        Random random = new Random(161616);
+        for (int layout = 0; layout < 5000; layout++) {
+            String grid = randomLayout(random, 1 + random.nextInt(8), 1 + random.nextInt(6), 1 + random.nextInt(9));
+            compareAlongRandomWalk(random, grid, random.nextInt(10));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testManyColorsAndTallBottles() {
+        // more than 12 colors in a state or in a bottle makes the hash maps of the reference grow
+        Random random = new Random(16161616);
+        for (int puzzle = 0; puzzle < 300; puzzle++) {
+            String grid = random.nextBoolean()
+                    ? randomPuzzle(random, 10 + random.nextInt(20), 2 + random.nextInt(15), random.nextInt(3))
+                    : randomLayout(random, 10 + random.nextInt(30), 10 + random.nextInt(8), 2 + random.nextInt(10));
+            compareAlongRandomWalk(random, grid, random.nextInt(30));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testIncrementalHeuristic1() {
+        // heuristic 1 updated along a random walk of pours is the heuristic 1 of every state
+        Random random = new Random(17);
+        for (int puzzle = 0; puzzle < 3000; puzzle++) {
+            String grid = puzzle % 2 == 0
+                    ? randomPuzzle(random, 2 + random.nextInt(8), 2 + random.nextInt(5), random.nextInt(3))
+                    : randomLayout(random, 1 + random.nextInt(8), 1 + random.nextInt(6), 1 + random.nextInt(9));
+            WaterSearchState state = WaterSortSearch.parseState(grid);
+            int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+            int heuristicCost = WaterSortSearch.calculateHeuristicCost1(state);
+
+            for (int pour = 0; pour < 40; pour++) {
+                int move = randomPour(random, state, numOfBottles);
+                if (move == -1) break;
+                heuristicCost = WaterSortSearch.updateHeuristicCost1(state, move, heuristicCost);
+                assertEquals(grid + " after " + (pour + 1) + " pours", WaterSortSearch.calculateHeuristicCost1(state), heuristicCost);
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSeveralThreads() throws Exception {
+        // every thread reuses its own arrays, puzzles of different sizes are mixed on every thread
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (int puzzle = 0; puzzle < 500; puzzle++) {
+                        String grid = randomPuzzle(random, 2 + random.nextInt(12), 2 + random.nextInt(6), random.nextInt(3));
+                        compareAlongRandomWalk(random, grid, random.nextInt(30));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+}
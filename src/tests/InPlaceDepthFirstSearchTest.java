@@ -0,0 +1,169 @@
+package tests;
+
+
+import code.GenericSearch;
+import code.Move;
+import code.Node;
+import code.Problem;
+import code.State;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InPlaceDepthFirstSearchTest {
+
+    /**
+     * The water sort problem through the public methods only, with or without in-place moves.
+     * The pours are generated in the order of the solver, so its searches can be compared with the solver.
+     */
+    static class PourProblem extends Problem {
+        boolean isInPlace;
+        int nodesExpanded = 0;
+
+        PourProblem(String grid, boolean isInPlace) {
+            super(WaterSortSearch.parseState(grid), new String[]{"pour"});
+            this.isInPlace = isInPlace;
+        }
+
+        @Override
+        public State transitionFunction(State state, int move) {
+            WaterSearchState nextState = (WaterSearchState) state.copy();
+            WaterSortSearch.pour(nextState, move);
+            return nextState;
+        }
+
+        @Override
+        public boolean goalTest(State state) {
+            return WaterSortSearch.isGoal((WaterSearchState) state);
+        }
+
+        @Override
+        public int pathCost(State state, int move) {
+            return Move.layers(move);
+        }
+
+        @Override
+        public List<Node> expand(Node node) {
+            nodesExpanded++;
+            List<Node> children = new ArrayList<>();
+            for (int move : moves((WaterSearchState) node.state)) {
+                children.add(new Node(transitionFunction(node.state, move), node, move, node.pathCost + Move.layers(move), node.depth + 1));
+            }
+            return children;
+        }
+
+        @Override
+        public int heuristicCost(State state) {
+            return 0;
+        }
+
+        @Override
+        public boolean supportsInPlaceMoves() {
+            return isInPlace;
+        }
+
+        @Override
+        public int[] expandMoves(State state) {
+            nodesExpanded++;
+            return moves((WaterSearchState) state);
+        }
+
+        @Override
+        public void applyMove(State state, int move) {
+            WaterSortSearch.pour((WaterSearchState) state, move);
+        }
+
+        @Override
+        public void undoMove(State state, int move) {
+            WaterSortSearch.pour((WaterSearchState) state, Move.to(move), Move.from(move), Move.layers(move));
+        }
+
+        @Override
+        public int moveCost(int move) {
+            return Move.layers(move);
+        }
+
+        @Override
+        public Node makeChild(Node node, int move) {
+            return new Node(transitionFunction(node.state, move), node, move, node.pathCost + Move.layers(move), node.depth + 1);
+        }
+
+        static int[] moves(WaterSearchState state) {
+            int numOfBottles = state.toString().split(";").length;
+            int[] moves = new int[numOfBottles * numOfBottles];
+            int numOfMoves = 0;
+            for (int i = 0; i < numOfBottles; i++) {
+                for (int j = i + 1; j < numOfBottles; j++) {
+                    if (WaterSortSearch.canPour(state, i, j)) {
+                        moves[numOfMoves++] = Move.of(i, j, WaterSortSearch.calculateCost(state, i, j));
+                    }
+                    if (WaterSortSearch.canPour(state, j, i)) {
+                        moves[numOfMoves++] = Move.of(j, i, WaterSortSearch.calculateCost(state, j, i));
+                    }
+                }
+            }
+            return Arrays.copyOf(moves, numOfMoves);
+        }
+    }
+
+    static String solution(Node goalNode, int nodesExpanded) {
+        return goalNode == null ? "NOSOLUTION" : WaterSortSearch.constructSolution(goalNode, nodesExpanded, false);
+    }
+
+    @Test(timeout = 60000)
+    public void testInPlaceSearchVisitsLikeNodeObjects() {
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(9, 44)) {
+            PourProblem objectProblem = new PourProblem(grid, false);
+            String expectedSolution = solution(GenericSearch.depthFirstSearch(objectProblem), objectProblem.nodesExpanded);
+
+            PourProblem inPlaceProblem = new PourProblem(grid, true);
+            String solution = solution(GenericSearch.depthFirstSearch(inPlaceProblem), inPlaceProblem.nodesExpanded);
+            assertEquals(grid, expectedSolution, solution);
+            assertEquals(grid, objectProblem.peakFrontierSize, inPlaceProblem.peakFrontierSize);
+            assertEquals(grid, objectProblem.visitedStatesStatistics.size, inPlaceProblem.visitedStatesStatistics.size);
+            if (!solution.equals("NOSOLUTION")) {
+                SymmetryTest.replayPlan(grid, solution);
+            }
+
+            // the moves were applied to a copy, the initial state is unchanged
+            assertEquals(WaterSortSearch.parseState(grid), inPlaceProblem.initialState);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testInPlaceDepthLimitedSearchVisitsLikeNodeObjects() {
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(9, 44)) {
+            PourProblem objectProblem = new PourProblem(grid, false);
+            String expectedSolution = solution(GenericSearch.iterativeDeepeningSearch(objectProblem), objectProblem.nodesExpanded);
+
+            PourProblem inPlaceProblem = new PourProblem(grid, true);
+            String solution = solution(GenericSearch.iterativeDeepeningSearch(inPlaceProblem), inPlaceProblem.nodesExpanded);
+            assertEquals(grid, expectedSolution, solution);
+            assertEquals(grid, objectProblem.treeDepth, inPlaceProblem.treeDepth);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSolverSearchesInPlace() {
+        // the solver generates the pours in the same order, so its in-place searches match the node object searches,
+        // it counts the goal node as expanded as well
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(9, 44)) {
+            PourProblem objectProblem = new PourProblem(grid, false);
+            Node goalNode = GenericSearch.depthFirstSearch(objectProblem);
+            String expectedSolution = solution(goalNode, objectProblem.nodesExpanded + 1);
+            assertEquals(grid, expectedSolution, new WaterSortSolver().solve(grid, "DF"));
+
+            objectProblem = new PourProblem(grid, false);
+            goalNode = GenericSearch.iterativeDeepeningSearch(objectProblem);
+            expectedSolution = solution(goalNode, objectProblem.nodesExpanded + 1);
+            assertEquals(grid, expectedSolution, new WaterSortSolver().solve(grid, "ID"));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package tests;
+
+
+import code.IterativeDeepeningAStarSearch;
+import code.PackedState;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IterativeDeepeningAStarSearchTest {
+
+    /**
+     * The fewest layers any plan of a puzzle pours, by Dijkstra's algorithm over all its reachable states
+     *
+     * @return the cost of an optimal plan, -1 if the puzzle has no solution
+     */
+    static int optimalCost(String grid) {
+        WaterSearchState initialState = WaterSortSearch.parseState(grid);
+        int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+        Map<PackedState, Integer> costs = new HashMap<>();
+        PriorityQueue<Object[]> queue = new PriorityQueue<>((first, second) -> (int) first[0] - (int) second[0]);
+        costs.put(initialState.key(), 0);
+        queue.add(new Object[]{0, initialState});
+
+        while (!queue.isEmpty()) {
+            Object[] entry = queue.remove();
+            int cost = (int) entry[0];
+            WaterSearchState state = (WaterSearchState) entry[1];
+            if (cost > costs.get(state.key())) continue; // reached again with a lower cost
+            if (WaterSortSearch.isGoal(state)) return cost;
+
+            for (int i = 0; i < numOfBottles; i++) {
+                for (int j = 0; j < numOfBottles; j++) {
+                    if (!WaterSortSearch.canPour(state, i, j)) continue;
+                    int numOfLayers = WaterSortSearch.calculateCost(state, i, j);
+                    WaterSearchState child = (WaterSearchState) state.copy();
+                    WaterSortSearch.pour(child, i, j, numOfLayers);
+                    Integer childCost = costs.get(child.key());
+                    if (childCost == null || cost + numOfLayers < childCost) {
+                        costs.put(child.key(), cost + numOfLayers);
+                        queue.add(new Object[]{cost + numOfLayers, child});
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A few fixed grids followed by small random puzzles and layouts, shared by the tests that compare searches on many grids
+     */
+    static List<String> randomGrids(long seed, int numOfGrids) {
+        Random random = new Random(seed);
+        List<String> grids = new ArrayList<>(List.of(
+                "3;4;r,y,r,y;y,r,y,r;e,e,e,e;",
+                "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;",
+                "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;",
+                "6;3;r,r,y;b,y,r;y,b,g;g,g,b;e,e,e;e,e,e;",
+                "2;2;r,y;y,r;" // no solution
+        ));
+        while (grids.size() < numOfGrids) {
+            grids.add(random.nextBoolean()
+                    ? HeuristicEquivalenceTest.randomPuzzle(random, 2 + random.nextInt(3), 2 + random.nextInt(3), 1 + random.nextInt(2))
+                    : HeuristicEquivalenceTest.randomLayout(random, 2 + random.nextInt(2), 2 + random.nextInt(3), 3 + random.nextInt(2)));
+        }
+        return grids;
+    }
+
+    @Test(timeout = 120000)
+    public void testIterativeDeepeningAStarFindsOptimalPlans() {
+        // heuristic 1 counts the layers that still have to be poured at least once, so it never overestimates
+        for (String grid : randomGrids(10, 40)) {
+            int optimalCost = optimalCost(grid);
+            WaterSortSolver solver = new WaterSortSolver();
+            String solution = solver.solve(grid, "IDA1");
+            if (optimalCost == -1) {
+                assertEquals(grid, "NOSOLUTION", solution);
+                continue;
+            }
+            assertEquals(grid, optimalCost, SymmetryTest.replayPlan(grid, solution));
+
+            // the thresholds rise till the last one is the cost of the plan
+            List<IterativeDeepeningAStarSearch.Iteration> iterations = solver.idaIterations;
+            for (int i = 1; i < iterations.size(); i++) {
+                assertTrue(grid, iterations.get(i - 1).threshold < iterations.get(i).threshold);
+            }
+            assertEquals(grid, optimalCost, iterations.get(iterations.size() - 1).threshold);
+            assertTrue(grid, iterations.get(0).threshold <= optimalCost);
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testIterativeDeepeningAStarPlansAreValid() {
+        for (String grid : randomGrids(11, 30)) {
+            boolean isSolvable = optimalCost(grid) != -1;
+            for (String strategy : new String[]{"IDA2", "IDA3"}) {
+                String solution = new WaterSortSolver().solve(grid, strategy);
+                assertEquals(grid + " " + strategy, isSolvable, !solution.equals("NOSOLUTION"));
+                if (isSolvable) {
+                    SymmetryTest.replayPlan(grid, solution);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnsolvablePuzzle() {
+        WaterSortSolver solver = new WaterSortSolver();
+        // both bottles are full, so nothing can be poured
+        assertEquals("NOSOLUTION", solver.solve("2;2;r,y;y,r;", "IDA1"));
+        assertFalse(solver.idaIterations.isEmpty());
+    }
+}
@@ -0,0 +1,58 @@
+package tests;
+
+
+import code.Move;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MoveTest {
+
+    /**
+     * A puzzle whose first bottle is full of red layers and the other bottles are empty
+     */
+    static String puzzle(int numOfBottles, int bottleCapacity) {
+        StringBuilder builder = new StringBuilder().append(numOfBottles).append(';').append(bottleCapacity).append(';');
+        for (int i = 0; i < numOfBottles; i++) {
+            for (int j = 0; j < bottleCapacity; j++) {
+                builder.append(i == 0 ? 'r' : 'e').append(j == bottleCapacity - 1 ? ';' : ',');
+            }
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void testMovesRoundTrip() {
+        int maxBottleIndex = Move.MAX_NUM_OF_BOTTLES - 1;
+        int[][] pours = {{0, 1, 1}, {1, 0, 3}, {maxBottleIndex, 0, 1}, {0, maxBottleIndex, Move.MAX_BOTTLE_CAPACITY},
+                {maxBottleIndex, maxBottleIndex - 1, Move.MAX_BOTTLE_CAPACITY}};
+        for (int[] pour : pours) {
+            int move = Move.of(pour[0], pour[1], pour[2]);
+            assertEquals(pour[0], Move.from(move));
+            assertEquals(pour[1], Move.to(move));
+            assertEquals(pour[2], Move.layers(move));
+            assertNotEquals(-1, move); // -1 marks the missing move of the root node
+            assertEquals("pour_" + pour[0] + "_" + pour[1], Move.toString(move));
+        }
+    }
+
+    @Test
+    public void testPuzzlesWithinTheLimitsAreParsed() {
+        WaterSearchState state = WaterSortSearch.parseState(puzzle(Move.MAX_NUM_OF_BOTTLES, 1));
+        assertTrue(WaterSortSearch.canPour(state, 0, Move.MAX_NUM_OF_BOTTLES - 1));
+        WaterSortSearch.parseState(puzzle(2, Move.MAX_BOTTLE_CAPACITY));
+    }
+
+    @Test
+    public void testPuzzlesOverTheLimitsAreRejected() {
+        for (String puzzle : new String[]{puzzle(1030, 1), puzzle(Move.MAX_NUM_OF_BOTTLES + 1, 1), puzzle(2, Move.MAX_BOTTLE_CAPACITY + 1)}) {
+            assertThrows(IllegalArgumentException.class, () -> WaterSortSearch.parseState(puzzle));
+            for (String strategy : new String[]{"BF", "DF"}) {
+                assertThrows(strategy, IllegalArgumentException.class, () -> new WaterSortSolver().solve(puzzle, strategy));
+            }
+        }
+    }
+}
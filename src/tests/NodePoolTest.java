@@ -0,0 +1,83 @@
+package tests;
+
+
+import code.NodePool;
+import code.Symmetry;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NodePoolTest {
+
+    String[] grids = {
+            "3;4;r,y,r,y;y,r,y,r;e,e,e,e;",
+            "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;",
+            "5;4;b,r,o,b;b,r,o,o;r,o,b,r;e,e,e,e;e,e,e,e;",
+            "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;",
+            "6;3;r,r,y;b,y,r;y,b,g;g,g,b;e,e,e;e,e,e;",
+            "4;4;r,g,b,y;g,b,y,r;b,y,r,g;e,e,e,e;", // no solution
+    };
+
+    @Test(timeout = 60000)
+    public void testUnpackedStatesEqualThePackedStates() {
+        Random random = new Random(23);
+        for (int puzzle = 0; puzzle < 500; puzzle++) {
+            String grid = HeuristicEquivalenceTest.randomPuzzle(random, 2 + random.nextInt(10), 2 + random.nextInt(6), random.nextInt(3));
+            WaterSearchState state = WaterSortSearch.parseState(grid);
+            int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+
+            // pack the states of a random walk of pours next to each other
+            List<WaterSearchState> states = new ArrayList<>();
+            long[] words = new long[40 * state.numOfPackedWords()];
+            for (int pour = 0; pour < 40; pour++) {
+                state.pack(words, pour * state.numOfPackedWords());
+                states.add(WaterSearchState.copy(state));
+                if (HeuristicEquivalenceTest.randomPour(random, state, numOfBottles) == -1) break;
+            }
+
+            // a single state unpacked in any order becomes every packed state, including its top pointers
+            WaterSearchState unpackedState = WaterSortSearch.parseState(grid);
+            for (int k = 0; k < 40; k++) {
+                int index = random.nextInt(states.size());
+                unpackedState.unpack(words, index * unpackedState.numOfPackedWords());
+                WaterSearchState expectedState = states.get(index);
+                assertEquals(expectedState, unpackedState);
+                assertEquals(expectedState.toString(), unpackedState.toString());
+                assertEquals(expectedState.fingerprint(), unpackedState.fingerprint());
+                for (int i = 0; i < numOfBottles; i++) {
+                    for (int j = 0; j < numOfBottles; j++) {
+                        assertEquals(WaterSortSearch.canPour(expectedState, i, j), WaterSortSearch.canPour(unpackedState, i, j));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testNodePoolSolvesLikeNodeObjects() {
+        for (Symmetry symmetry : Symmetry.values()) {
+            for (String grid : grids) {
+                for (String strategy : new String[]{"BF", "UC", "GR1", "GR2", "AS1", "AS2"}) {
+                    WaterSortSolver objectSolver = new WaterSortSolver();
+                    objectSolver.symmetry = symmetry;
+                    String expectedSolution = objectSolver.solve(grid, strategy);
+
+                    WaterSortSolver poolSolver = new WaterSortSolver();
+                    poolSolver.symmetry = symmetry;
+                    poolSolver.nodeLayout = NodePool.Layout.STRUCT_OF_ARRAYS;
+                    assertEquals(grid + " " + strategy, expectedSolution, poolSolver.solve(grid, strategy));
+                    assertEquals(objectSolver.peakFrontierSize(), poolSolver.peakFrontierSize());
+                    assertNull(objectSolver.nodePoolStatistics);
+                    assertTrue(poolSolver.nodePoolStatistics.numOfNodes > 0);
+                }
+            }
+        }
+    }
+}
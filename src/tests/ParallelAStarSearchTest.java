@@ -0,0 +1,54 @@
+package tests;
+
+
+import code.ParallelAStarSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParallelAStarSearchTest {
+
+    @Test(timeout = 120000)
+    public void testParallelSearchFindsOptimalPlans() {
+        // the workers may reach a state again with a lower cost and keep going till no node is left,
+        // so with heuristic 1 the plan is optimal whatever the timing of the threads
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(13, 30)) {
+            int optimalCost = IterativeDeepeningAStarSearchTest.optimalCost(grid);
+            for (int parallelism : new int[]{2, 4}) {
+                WaterSortSolver solver = new WaterSortSolver();
+                solver.aStarParallelism = parallelism;
+                String solution = solver.solve(grid, "AS1");
+                if (optimalCost == -1) {
+                    assertEquals(grid, "NOSOLUTION", solution);
+                    continue;
+                }
+                assertEquals(grid + " " + parallelism, optimalCost, SymmetryTest.replayPlan(grid, solution));
+
+                // every worker reports its work, the solver adds the goal node to the nodes they expanded
+                assertEquals(parallelism, solver.aStarWorkerLoads.size());
+                long nodesExpanded = 0;
+                for (ParallelAStarSearch.WorkerLoad workerLoad : solver.aStarWorkerLoads) {
+                    nodesExpanded += workerLoad.nodesExpanded;
+                }
+                assertEquals(grid, nodesExpanded + 1, solver.nodesExpanded);
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testParallelPlansOfOtherHeuristicsAreValid() {
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(14, 20)) {
+            boolean isSolvable = IterativeDeepeningAStarSearchTest.optimalCost(grid) != -1;
+            for (String strategy : new String[]{"AS2", "AS3"}) {
+                WaterSortSolver solver = new WaterSortSolver();
+                solver.aStarParallelism = 3;
+                String solution = solver.solve(grid, strategy);
+                assertEquals(grid + " " + strategy, isSolvable, !solution.equals("NOSOLUTION"));
+                if (isSolvable) {
+                    SymmetryTest.replayPlan(grid, solution);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package tests;
+
+
+import code.ParallelBreadthFirstSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParallelBreadthFirstSearchTest {
+
+    @Test(timeout = 120000)
+    public void testParallelSearchEqualsSequentialSearch() {
+        // the children are ordered like the sequential search generates them, so the result does not depend on the threads
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(12, 30)) {
+            WaterSortSolver sequentialSolver = new WaterSortSolver();
+            sequentialSolver.breadthFirstParallelism = 1;
+            String expectedSolution = sequentialSolver.solve(grid, "BF");
+
+            for (int parallelism : new int[]{2, 4}) {
+                WaterSortSolver solver = new WaterSortSolver();
+                solver.breadthFirstParallelism = parallelism;
+                assertEquals(grid + " " + parallelism, expectedSolution, solver.solve(grid, "BF"));
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testLayersEndAtTheGoal() {
+        String grid = "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;";
+        WaterSortSolver solver = new WaterSortSolver();
+        solver.breadthFirstParallelism = 4;
+        String solution = solver.solve(grid, "BF");
+        SymmetryTest.replayPlan(grid, solution);
+
+        // one layer a depth, the last one is the depth of the goal
+        int numOfLayers = solver.breadthFirstLayers.size();
+        for (int depth = 0; depth < numOfLayers; depth++) {
+            ParallelBreadthFirstSearch.Layer layer = solver.breadthFirstLayers.get(depth);
+            assertEquals(depth, layer.depth);
+            if (depth < numOfLayers - 1) {
+                assertEquals(layer.numOfNodes, layer.nodesExpanded);
+            }
+        }
+        assertEquals(SymmetryTest.planLength(solution), numOfLayers - 1);
+    }
+
+    @Test(timeout = 60000)
+    public void testUnsolvablePuzzle() {
+        WaterSortSolver solver = new WaterSortSolver();
+        solver.breadthFirstParallelism = 2;
+        assertEquals("NOSOLUTION", solver.solve("2;2;r,y;y,r;", "BF"));
+    }
+}
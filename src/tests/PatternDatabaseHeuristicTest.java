@@ -0,0 +1,71 @@
+package tests;
+
+
+import code.PatternDatabaseHeuristic;
+import code.Problem;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PatternDatabaseHeuristicTest {
+
+    @Test(timeout = 120000)
+    public void testHeuristicNeverOverestimates() {
+        Random random = new Random(16);
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(16, 25)) {
+            WaterSearchState state = WaterSortSearch.parseState(grid);
+            if (!PatternDatabaseHeuristic.isSupported(state)) continue;
+            PatternDatabaseHeuristic heuristic = new PatternDatabaseHeuristic(state, WaterSortSearch.patternDatabaseDirectory);
+            String header = grid.substring(0, grid.indexOf(';', grid.indexOf(';') + 1) + 1);
+            int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+
+            // the states along a random walk, each compared with the optimal cost of the puzzle starting at it
+            for (int pour = 0; pour < 8; pour++) {
+                int optimalCost = IterativeDeepeningAStarSearchTest.optimalCost(header + state);
+                int cost = heuristic.cost(state);
+                if (cost == Problem.DEAD_END) {
+                    assertEquals(header + state, -1, optimalCost);
+                } else if (optimalCost != -1) {
+                    assertTrue(header + state + " " + cost + " > " + optimalCost, cost <= optimalCost);
+                }
+
+                if (HeuristicEquivalenceTest.randomPour(random, state, numOfBottles) == -1) break;
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testDeadEndsAreDropped() {
+        // both bottles are full, so the pattern of the two colors can not reach a goal
+        String grid = "2;2;r,y;y,r;";
+        WaterSearchState state = WaterSortSearch.parseState(grid);
+        assertTrue(PatternDatabaseHeuristic.isSupported(state));
+        assertEquals(Problem.DEAD_END, new PatternDatabaseHeuristic(state, WaterSortSearch.patternDatabaseDirectory).cost(state));
+
+        for (String strategy : new String[]{"GR3", "AS3", "IDA3"}) {
+            assertEquals(strategy, "NOSOLUTION", new WaterSortSolver().solve(grid, strategy));
+        }
+        WaterSortSolver solver = new WaterSortSolver();
+        solver.aStarParallelism = 2;
+        assertEquals("NOSOLUTION", solver.solve(grid, "AS3"));
+    }
+
+    @Test(timeout = 120000)
+    public void testPlansAreOptimal() {
+        // the pattern databases and heuristic 1 never overestimate, so A* and IDA* with their maximum find optimal plans
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(17, 25)) {
+            int optimalCost = IterativeDeepeningAStarSearchTest.optimalCost(grid);
+            String solution = new WaterSortSolver().solve(grid, "IDA3");
+            if (optimalCost == -1) {
+                assertEquals(grid, "NOSOLUTION", solution);
+            } else {
+                assertEquals(grid, optimalCost, SymmetryTest.replayPlan(grid, solution));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package tests;
+
+
+import code.PruningRule;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+public class PruningRuleTest {
+
+    String[] grids = {
+            "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;",
+            "4;3;r,y,r;y,r,y;e,e,e;e,e,e;",
+            "6;3;r,r,y;b,y,r;y,b,g;g,g,b;e,e,e;e,e,e;",
+    };
+
+    @Test
+    public void testNoRuleIsEnabledByDefault() {
+        WaterSortSolver solver = new WaterSortSolver();
+        assertTrue(solver.pruningRules.isEmpty());
+        solver.solve(grids[0], "BF");
+        for (PruningRule pruningRule : PruningRule.values()) {
+            assertEquals(0, solver.prunedMoves.get(pruningRule.ordinal()));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testRulesDiscardPoursAndKeepShortestPlans() {
+        for (String grid : grids) {
+            WaterSortSolver solver = new WaterSortSolver();
+            String expectedSolution = solver.solve(grid, "BF");
+
+            WaterSortSolver pruningSolver = new WaterSortSolver();
+            pruningSolver.pruningRules = EnumSet.of(PruningRule.UNIFORM_SOURCE_INTO_EMPTY, PruningRule.DUPLICATE_EMPTY_TARGET);
+            String solution = pruningSolver.solve(grid, "BF");
+            SymmetryTest.replayPlan(grid, solution);
+            assertEquals(grid, SymmetryTest.planLength(expectedSolution), SymmetryTest.planLength(solution));
+            assertTrue(grid, pruningSolver.nodesExpanded <= solver.nodesExpanded);
+
+            // every puzzle starts with two empty bottles, so pours into the second one are discarded
+            assertTrue(grid, pruningSolver.prunedMoves.get(PruningRule.DUPLICATE_EMPTY_TARGET.ordinal()) > 0);
+            assertEquals(grid, 0, pruningSolver.prunedMoves.get(PruningRule.COMPLETED_SOURCE.ordinal()));
+
+            // the counters start over with the next solve
+            pruningSolver.pruningRules.clear();
+            pruningSolver.solve(grid, "BF");
+            assertEquals(0, pruningSolver.prunedMoves.get(PruningRule.DUPLICATE_EMPTY_TARGET.ordinal()));
+        }
+    }
+
+    @Test
+    public void testCompletedSourceRule() {
+        // the red bottle is complete, pouring it into the empty bottle is the only pour it allows
+        String grid = "4;2;r,r;y,b;b,y;e,e;";
+        WaterSortSolver solver = new WaterSortSolver();
+        solver.pruningRules = EnumSet.of(PruningRule.COMPLETED_SOURCE);
+        String solution = solver.solve(grid, "BF");
+        SymmetryTest.replayPlan(grid, solution);
+        assertTrue(solver.prunedMoves.get(PruningRule.COMPLETED_SOURCE.ordinal()) > 0);
+        assertFalse(solution.contains("pour_0_"));
+    }
+
+    @Test
+    public void testCompletedSourceRuleNeedsWholeBottles() {
+        // there are 3 red layers, so the red bottle may have to be poured out and the rule is ignored
+        String grid = "4;2;r,r;y,b;b,y;e,r;";
+        WaterSortSolver solver = new WaterSortSolver();
+        solver.pruningRules = EnumSet.of(PruningRule.COMPLETED_SOURCE);
+        String solution = solver.solve(grid, "BF");
+        assertEquals(0, solver.prunedMoves.get(PruningRule.COMPLETED_SOURCE.ordinal()));
+        assertEquals(new WaterSortSolver().solve(grid, "BF"), solution);
+    }
+}
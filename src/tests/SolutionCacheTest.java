@@ -0,0 +1,126 @@
+package tests;
+
+
+import code.CanonicalInstance;
+import code.NodePool;
+import code.PruningRule;
+import code.SolutionCache;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SolutionCacheTest {
+
+    static final String GRID = "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;";
+
+    @Test
+    public void testCachedSolveReturnsTheSameResult() {
+        SolutionCache solutionCache = new SolutionCache(1 << 20);
+        for (String strategy : new String[]{"BF", "DF", "UC", "AS1", "IDA2"}) {
+            String expectedResult = WaterSortSearch.solve(GRID, strategy, false);
+
+            WaterSortSolver solver = new WaterSortSolver();
+            solver.solutionCache = solutionCache;
+            assertEquals(expectedResult, solver.solve(GRID, strategy));
+            assertFalse(solver.isCachedSolution);
+
+            // the result keeps the nodes expanded by the search, the solver expanded nothing
+            assertEquals(expectedResult, solver.solve(GRID.replace(",g,", ",green,"), strategy));
+            assertTrue(solver.isCachedSolution);
+            assertEquals(0, solver.nodesExpanded);
+        }
+        assertEquals(5, solutionCache.statistics().hits);
+        assertEquals(5, solutionCache.statistics().misses);
+
+        // a different configuration of the solver is a different solve
+        WaterSortSolver solver = new WaterSortSolver();
+        solver.solutionCache = solutionCache;
+        solver.pruningRules.add(PruningRule.DUPLICATE_EMPTY_TARGET);
+        solver.solve(GRID, "BF");
+        assertFalse(solver.isCachedSolution);
+    }
+
+    @Test
+    public void testRelabeledPuzzlesShareASolve() {
+        Random random = new Random(22);
+        for (String grid : IterativeDeepeningAStarSearchTest.randomGrids(22, 15)) {
+            SolutionCache solutionCache = new SolutionCache(1 << 20);
+            WaterSortSolver solver = new WaterSortSolver();
+            solver.solutionCache = solutionCache;
+            String expectedSolution = solver.solve(grid, "AS1");
+            assertEquals(expectedSolution, solver.solve(grid, "AS1"));
+            assertTrue(solver.isCachedSolution);
+
+            // the pours of the cached plan are mapped to the bottles of the relabeled puzzle
+            String relabeledGrid = SymmetryTest.permuteAndRelabel(grid,
+                    SymmetryTest.randomOrder(random, Integer.parseInt(grid.split(";")[0])), SymmetryTest.randomRenaming(random));
+            String solution = solver.solve(relabeledGrid, "AS1");
+            assertTrue(relabeledGrid, solver.isCachedSolution);
+            assertEquals(2, solutionCache.statistics().hits);
+            if (expectedSolution.equals("NOSOLUTION")) {
+                assertEquals("NOSOLUTION", solution);
+                continue;
+            }
+            SymmetryTest.replayPlan(relabeledGrid, solution);
+            assertEquals(expectedSolution.substring(expectedSolution.indexOf(';')), solution.substring(solution.indexOf(';')));
+        }
+    }
+
+    @Test
+    public void testParallelismAndNodeLayoutArePartOfTheKey() {
+        SolutionCache solutionCache = new SolutionCache(1 << 20);
+        WaterSortSolver solver = new WaterSortSolver();
+        solver.solutionCache = solutionCache;
+        solver.solve(GRID, "AS1");
+
+        // the worker threads of A* expand other nodes, its result is not taken from the sequential search
+        WaterSortSolver parallelSolver = new WaterSortSolver();
+        parallelSolver.solutionCache = solutionCache;
+        parallelSolver.aStarParallelism = 2;
+        parallelSolver.solve(GRID, "AS1");
+        assertFalse(parallelSolver.isCachedSolution);
+        parallelSolver.solve(GRID, "AS1");
+        assertTrue(parallelSolver.isCachedSolution);
+
+        WaterSortSolver breadthFirstSolver = new WaterSortSolver();
+        breadthFirstSolver.breadthFirstParallelism = 2;
+        SolutionCache.Key parallelKey = SolutionCache.key(new CanonicalInstance(GRID), "BF", breadthFirstSolver);
+        assertNotEquals(SolutionCache.key(new CanonicalInstance(GRID), "BF", solver), parallelKey);
+
+        WaterSortSolver poolSolver = new WaterSortSolver();
+        poolSolver.solutionCache = solutionCache;
+        poolSolver.nodeLayout = solver.nodeLayout == NodePool.Layout.OBJECTS ? NodePool.Layout.STRUCT_OF_ARRAYS : NodePool.Layout.OBJECTS;
+        poolSolver.solve(GRID, "AS1");
+        assertFalse(poolSolver.isCachedSolution);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSolvesAreEvicted() {
+        SolutionCache.Key first = new SolutionCache.Key("3;1;a;b;e;", "BF", "");
+        SolutionCache.Key second = new SolutionCache.Key("3;1;b;a;e;", "BF", "");
+        SolutionCache.Key third = new SolutionCache.Key("3;1;e;a;b;", "BF", "");
+        String solution = "pour_0_1;1;2";
+
+        SolutionCache solutionCache = new SolutionCache(0);
+        solutionCache.put(first, solution);
+        assertNull(solutionCache.get(first)); // larger than the whole cache
+
+        solutionCache = new SolutionCache(2 * 128 + 100); // room for two of the entries
+        solutionCache.put(first, solution);
+        solutionCache.put(second, solution);
+        assertEquals(solution, solutionCache.get(first)); // second is now the least recently used
+        solutionCache.put(third, solution);
+
+        assertNull(solutionCache.get(second));
+        assertEquals(solution, solutionCache.get(first));
+        assertEquals(solution, solutionCache.get(third));
+        SolutionCache.Statistics statistics = solutionCache.statistics();
+        assertEquals(2, statistics.size);
+        assertEquals(1, statistics.evictions);
+        assertTrue(statistics.weight <= statistics.maxWeight);
+    }
+}
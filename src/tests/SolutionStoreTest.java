@@ -0,0 +1,201 @@
+package tests;
+
+
+import code.SolutionCache;
+import code.SolutionStore;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SolutionStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static SolutionCache.Key key(int i) {
+        return new SolutionCache.Key("puzzle " + i, "BF", "");
+    }
+
+    static String solution(int i) {
+        return "pour_0_" + i + ";" + i + ";" + (i * 7);
+    }
+
+    @Test
+    public void testSolutionsAreKeptAfterReopening() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (SolutionStore store = new SolutionStore(directory)) {
+            for (int i = 0; i < 3000; i++) { // more than fit in the first index
+                store.put(key(i), solution(i));
+            }
+            assertEquals(3000, store.statistics().numOfEntries);
+        }
+
+        try (SolutionStore store = new SolutionStore(directory)) {
+            for (int i = 0; i < 3000; i++) {
+                assertEquals(solution(i), store.get(key(i)));
+            }
+            assertNull(store.get(key(3000)));
+            assertEquals(3000, store.statistics().numOfEntries);
+        }
+    }
+
+    @Test
+    public void testPartlyWrittenRecordIsCutOff() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (SolutionStore store = new SolutionStore(directory)) {
+            store.put(key(1), solution(1));
+        }
+        Path log = directory.resolve("solutions.log");
+        long logSize = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND); // a crash in the middle of an append
+
+        try (SolutionStore store = new SolutionStore(directory)) {
+            assertEquals(logSize, Files.size(log));
+            assertEquals(solution(1), store.get(key(1)));
+            store.put(key(2), solution(2));
+        }
+        try (SolutionStore store = new SolutionStore(directory)) {
+            assertEquals(solution(1), store.get(key(1)));
+            assertEquals(solution(2), store.get(key(2)));
+        }
+    }
+
+    @Test
+    public void testRecordsAfterTheIndexAreIndexed() throws IOException {
+        // a crash after a record was appended but before the index was written
+        Path directory = folder.newFolder("store").toPath();
+        Path oldIndex = folder.getRoot().toPath().resolve("old.idx");
+        try (SolutionStore store = new SolutionStore(directory)) {
+            store.put(key(1), solution(1));
+            Files.copy(directory.resolve("solutions.idx"), oldIndex, StandardCopyOption.REPLACE_EXISTING);
+            store.put(key(2), solution(2));
+            store.put(key(1), solution(3));
+        }
+        Files.move(oldIndex, directory.resolve("solutions.idx"), StandardCopyOption.REPLACE_EXISTING);
+
+        try (SolutionStore store = new SolutionStore(directory)) {
+            assertEquals(solution(3), store.get(key(1)));
+            assertEquals(solution(2), store.get(key(2)));
+            assertEquals(2, store.statistics().numOfEntries);
+        }
+
+        // an index that does not belong to the log is rebuilt
+        Files.write(directory.resolve("solutions.idx"), new byte[100]);
+        try (SolutionStore store = new SolutionStore(directory)) {
+            assertEquals(solution(3), store.get(key(1)));
+            assertEquals(solution(2), store.get(key(2)));
+        }
+    }
+
+    @Test
+    public void testEntriesAreCountedAfterACrash() throws IOException {
+        // a crash after a slot was written but before the header of the index was
+        Path directory = folder.newFolder("store").toPath();
+        Path indexFile = directory.resolve("solutions.idx");
+        byte[] oldHeader;
+        try (SolutionStore store = new SolutionStore(directory)) {
+            store.put(key(1), solution(1));
+            oldHeader = Arrays.copyOf(Files.readAllBytes(indexFile), 32); // the header of the index is 32 bytes
+            store.put(key(2), solution(2));
+        }
+        byte[] index = Files.readAllBytes(indexFile);
+        System.arraycopy(oldHeader, 0, index, 0, oldHeader.length);
+        Files.write(indexFile, index);
+
+        try (SolutionStore store = new SolutionStore(directory)) {
+            assertEquals(2, store.statistics().numOfEntries);
+            store.compact();
+            assertEquals(solution(1), store.get(key(1)));
+            assertEquals(solution(2), store.get(key(2)));
+            assertEquals(2, store.statistics().numOfEntries);
+        }
+
+        // a crash in a resize, after the new index was installed but before the slots were moved into it
+        byte[] emptyIndex = Files.readAllBytes(indexFile);
+        Arrays.fill(emptyIndex, 32, emptyIndex.length, (byte) 0);
+        ByteBuffer.wrap(emptyIndex).putLong(24, 16); // covers no records, the records start after the 16 bytes of the log header
+        Files.write(indexFile, emptyIndex);
+
+        try (SolutionStore store = new SolutionStore(directory)) {
+            assertEquals(2, store.statistics().numOfEntries);
+            assertEquals(solution(1), store.get(key(1)));
+            assertEquals(solution(2), store.get(key(2)));
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsTheLatestSolutions() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (SolutionStore store = new SolutionStore(directory)) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 100; i++) {
+                    store.put(key(i), solution(i + round));
+                }
+            }
+            long logBytes = store.statistics().logBytes;
+            store.compact();
+            assertTrue(store.statistics().logBytes < logBytes / 4);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(solution(i + 4), store.get(key(i)));
+            }
+            store.put(key(100), solution(100));
+        }
+
+        try (SolutionStore store = new SolutionStore(directory)) {
+            for (int i = 0; i <= 100; i++) {
+                assertEquals(solution(i == 100 ? 100 : i + 4), store.get(key(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testStoreIsUsedByOneProcess() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        SolutionStore store = new SolutionStore(directory);
+        try {
+            assertThrows(IOException.class, () -> new SolutionStore(directory));
+        } finally {
+            store.close();
+        }
+        new SolutionStore(directory).close();
+    }
+
+    @Test
+    public void testRestartedSolverAnswersFromTheStore() throws IOException {
+        String grid = "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;";
+        Path directory = folder.getRoot().toPath();
+        try (SolutionStore store = new SolutionStore(directory)) {
+            WaterSortSolver solver = new WaterSortSolver();
+            solver.solutionStore = store;
+            assertEquals(WaterSortSearch.solve(grid, "UC", false), solver.solve(grid, "UC"));
+            assertFalse(solver.isCachedSolution);
+        }
+
+        try (SolutionStore store = new SolutionStore(directory)) {
+            WaterSortSolver solver = new WaterSortSolver();
+            solver.solutionStore = store;
+            assertEquals(WaterSortSearch.solve(grid, "UC", false), solver.solve(grid, "UC"));
+            assertTrue(solver.isCachedSolution);
+            assertEquals(1, store.statistics().hits);
+
+            // the same puzzle with its bottles reversed and its colors renamed
+            String relabeledGrid = SymmetryTest.permuteAndRelabel(grid, new int[]{5, 4, 3, 2, 1, 0},
+                    HeuristicEquivalenceTest.LETTERS.substring(1) + HeuristicEquivalenceTest.LETTERS.charAt(0));
+            String solution = solver.solve(relabeledGrid, "UC");
+            assertTrue(solver.isCachedSolution);
+            SymmetryTest.replayPlan(relabeledGrid, solution);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package tests;
+
+
+import code.SolveServer;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SolveServerTest {
+
+    static final String GRID = "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;";
+
+    HttpClient client = HttpClient.newHttpClient();
+
+    HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test(timeout = 60000)
+    public void testSolveRequests() throws Exception {
+        try (SolveServer server = new SolveServer(0, 2, 8)) {
+            String url = "http://localhost:" + server.port();
+
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=AS1"))
+                    .POST(HttpRequest.BodyPublishers.ofString(GRID)));
+            assertEquals(200, response.statusCode());
+            assertEquals(WaterSortSearch.solve(GRID, "AS1", false), response.body().trim());
+
+            response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=BF&state=" + URLEncoder.encode(GRID, StandardCharsets.UTF_8))));
+            assertEquals(200, response.statusCode());
+            assertEquals(WaterSortSearch.solve(GRID, "BF", false), response.body().trim());
+
+            // the same puzzle written with full color names is answered from the cache
+            response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=AS1"))
+                    .POST(HttpRequest.BodyPublishers.ofString("5;4;blue,yellow,red,blue;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;\n")));
+            assertEquals(200, response.statusCode());
+            assertEquals(WaterSortSearch.solve(GRID, "AS1", false), response.body().trim());
+
+            response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=BF")).POST(HttpRequest.BodyPublishers.ofString("4;x;")));
+            assertEquals(400, response.statusCode());
+            response = send(HttpRequest.newBuilder(URI.create(url + "/solve")).POST(HttpRequest.BodyPublishers.ofString(GRID)));
+            assertEquals(400, response.statusCode());
+            response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=BF")));
+            assertEquals(400, response.statusCode());
+
+            // an unknown strategy is rejected every time instead of being answered from the cache
+            for (int i = 0; i < 2; i++) {
+                response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=XX")).POST(HttpRequest.BodyPublishers.ofString(GRID)));
+                assertEquals(400, response.statusCode());
+                assertEquals("Unknown strategy: XX", response.body().trim());
+            }
+
+            response = send(HttpRequest.newBuilder(URI.create(url + "/stats")));
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body(), response.body().contains("\"solved\": 3, \"failed\": 1, \"rejected\": 0"));
+            assertTrue(response.body(), response.body().contains("\"hits\": 1, \"misses\": 2"));
+            assertTrue(response.body(), response.body().contains("\"p99\": "));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedSolvesAreAnswered() throws Exception {
+        try (SolveServer server = new SolveServer(0, 1, 8)) {
+            String url = "http://localhost:" + server.port();
+
+            // malformed puzzles, including one too large to allocate, are answered with 400
+            for (String puzzle : new String[]{"4;", "100000;100000;", "2;2;r,,y;y,r;", "2;2;r,y,r;y;", "1;2;r,y;y,r;"}) {
+                HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=BF"))
+                        .POST(HttpRequest.BodyPublishers.ofString(puzzle)));
+                assertEquals(puzzle, 400, response.statusCode());
+                assertTrue(response.body(), response.body().startsWith("Can not solve the puzzle: "));
+            }
+
+            // a solve that exceeds the limits of the server is stopped and answered with 503
+            server.maxNumOfNodes = 10;
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=BF"))
+                    .POST(HttpRequest.BodyPublishers.ofString(GRID)));
+            assertEquals(503, response.statusCode());
+            server.maxNumOfNodes = 0;
+            response = send(HttpRequest.newBuilder(URI.create(url + "/solve?strategy=BF")).POST(HttpRequest.BodyPublishers.ofString(GRID)));
+            assertEquals(200, response.statusCode());
+
+            response = send(HttpRequest.newBuilder(URI.create(url + "/stats")));
+            assertTrue(response.body(), response.body().contains("\"solved\": 1, \"failed\": 6, \"rejected\": 0"));
+        }
+    }
+
+    @Test
+    public void testUnknownStrategyIsRejected() {
+        WaterSortSolver solver = new WaterSortSolver();
+        assertThrows(IllegalArgumentException.class, () -> solver.solve(GRID, "XX"));
+        assertThrows(IllegalArgumentException.class, () -> solver.solve(GRID, "AS4"));
+        assertEquals(0, solver.nodesExpanded);
+    }
+}
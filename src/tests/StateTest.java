@@ -0,0 +1,147 @@
+package tests;
+
+
+import code.ColorDictionary;
+import code.Move;
+import code.PackedState;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import code.ZobristTable;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StateTest {
+
+    @Test
+    public void testColorDictionaryIds() {
+        ColorDictionary colorDictionary = new ColorDictionary("ryb".toCharArray());
+        assertEquals(0, colorDictionary.id('e'));
+        assertEquals(3, colorDictionary.numOfColors());
+        for (char color : "eryb".toCharArray()) {
+            assertEquals(color, colorDictionary.color(colorDictionary.id(color)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> colorDictionary.id('g'));
+        assertThrows(IllegalArgumentException.class, () -> colorDictionary.id('z'));
+
+        // 4 ids take 2 bits, so 32 layers fit in a word
+        assertEquals(1, colorDictionary.numOfWords(32));
+        assertEquals(2, colorDictionary.numOfWords(33));
+    }
+
+    @Test
+    public void testKeysOfEqualStatesAreEqual() {
+        String grid = "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;";
+        WaterSearchState state = WaterSortSearch.parseState(grid);
+        WaterSearchState sameState = WaterSortSearch.parseState(grid);
+        assertEquals(state.key(), sameState.key());
+        assertEquals(state.key().hashCode(), sameState.key().hashCode());
+        assertEquals(state.key(), state.copy().key());
+
+        WaterSortSearch.pour(state, 0, 3, 1);
+        assertNotEquals(state.key(), sameState.key());
+        assertEquals("e,y,r,b;b,y,r,r;y,r,b,y;e,e,e,b;e,e,e,e;", state.toString());
+
+        // the copy is not changed by the pour
+        WaterSearchState copy = (WaterSearchState) sameState.copy();
+        WaterSortSearch.pour(sameState, 0, 3, 1);
+        assertEquals(state.key(), sameState.key());
+        assertNotEquals(copy.key(), sameState.key());
+        assertEquals("b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;", copy.toString());
+    }
+
+    @Test
+    public void testStatesWithManyColorsSpanSeveralWords() {
+        // 30 colors take 5 bits a layer, so the 124 layers take 11 words
+        String letters = "abcdfghijklmnopqrstuvwxyzABCDE";
+        StringBuilder grid = new StringBuilder("31;4;");
+        for (int i = 0; i < 30; i++) {
+            grid.append(letters.charAt(i)).append(',').append(letters.charAt((i + 1) % 30)).append(',')
+                    .append(letters.charAt(i)).append(',').append(letters.charAt(i)).append(';');
+        }
+        grid.append("e,e,e,e;");
+
+        WaterSearchState state = WaterSortSearch.parseState(grid.toString());
+        assertEquals(11, state.numOfPackedWords());
+        assertEquals(grid.substring("31;4;".length()), state.toString());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(i + 1, state.layerId(i, 0));
+            assertEquals((i + 1) % 30 + 1, state.layerId(i, 1));
+        }
+        assertEquals(0, state.layerId(30, 3));
+
+        // pouring the top of the last colored bottle changes a layer in the last word only
+        WaterSearchState pouredState = (WaterSearchState) state.copy();
+        WaterSortSearch.pour(pouredState, 29, 30, 1);
+        assertEquals(30, pouredState.layerId(30, 3));
+        assertEquals(0, pouredState.layerId(29, 0));
+        assertNotEquals(state.key(), pouredState.key());
+    }
+
+    @Test
+    public void testPackedStateEquality() {
+        PackedState key = new PackedState(new long[]{1, 2, 3});
+        assertEquals(key, new PackedState(new long[]{1, 2, 3}));
+        assertEquals(key.hashCode(), new PackedState(new long[]{1, 2, 3}).hashCode());
+        assertNotEquals(key, new PackedState(new long[]{1, 2, 4}));
+        assertNotEquals(key, new PackedState(new long[]{1, 2}));
+        assertEquals(PackedState.hash(new long[]{1, 2, 3}), key.fingerprint());
+    }
+
+    /**
+     * The zobrist hash of a state computed from all its layers
+     */
+    static long fullHash(WaterSearchState state, int numOfBottles, int bottleCapacity, int numOfColors) {
+        ZobristTable zobristTable = new ZobristTable(numOfBottles * bottleCapacity, numOfColors + 1);
+        long hash = 0;
+        for (int i = 0; i < numOfBottles; i++) {
+            for (int j = 0; j < bottleCapacity; j++) {
+                hash ^= zobristTable.key(i * bottleCapacity + j, state.layerId(i, j));
+            }
+        }
+        return hash;
+    }
+
+    @Test
+    public void testIncrementalHashEqualsFullHash() {
+        Random random = new Random(4);
+        for (int puzzle = 0; puzzle < 300; puzzle++) {
+            int numOfColors = 2 + random.nextInt(8);
+            int bottleCapacity = 2 + random.nextInt(5);
+            String grid = HeuristicEquivalenceTest.randomPuzzle(random, numOfColors, bottleCapacity, 1 + random.nextInt(2));
+            int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+            WaterSearchState state = WaterSortSearch.parseState(grid);
+            assertEquals(fullHash(state, numOfBottles, bottleCapacity, numOfColors), state.fingerprint());
+
+            for (int pour = 0; pour < 30; pour++) {
+                long previousHash = state.fingerprint();
+                int move = HeuristicEquivalenceTest.randomPour(random, state, numOfBottles);
+                if (move == -1) break;
+                assertEquals(fullHash(state, numOfBottles, bottleCapacity, numOfColors), state.fingerprint());
+                assertNotEquals(previousHash, state.fingerprint());
+
+                // pouring the layers back restores the hash
+                WaterSearchState undoneState = (WaterSearchState) state.copy();
+                WaterSortSearch.pour(undoneState, Move.to(move), Move.from(move), Move.layers(move));
+                assertEquals(previousHash, undoneState.fingerprint());
+            }
+        }
+    }
+
+    @Test
+    public void testStatesReachedByDifferentPoursHaveEqualHashes() {
+        String grid = "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;";
+        WaterSearchState state = WaterSortSearch.parseState(grid);
+        WaterSortSearch.pour(state, 0, 3, 1);
+        WaterSortSearch.pour(state, 1, 4, 1);
+
+        WaterSearchState otherState = WaterSortSearch.parseState(grid);
+        WaterSortSearch.pour(otherState, 1, 4, 1);
+        WaterSortSearch.pour(otherState, 0, 3, 1);
+
+        assertEquals(state.fingerprint(), otherState.fingerprint());
+        assertEquals(state.key(), otherState.key());
+    }
+}
@@ -0,0 +1,258 @@
+package tests;
+
+
+import code.CanonicalForm;
+import code.CanonicalInstance;
+import code.Symmetry;
+import code.WaterSearchState;
+import code.WaterSortSearch;
+import code.WaterSortSolver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SymmetryTest {
+
+    String[] grids = {
+            "3;4;r,y,r,y;y,r,y,r;e,e,e,e;",
+            "5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;",
+            "6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;",
+            "6;3;r,r,y;b,y,r;y,b,g;g,g,b;e,e,e;e,e,e;",
+    };
+
+    /**
+     * Replay the plan of a solution on its puzzle, every pour has to be legal and the last state has to be a goal
+     *
+     * @return the number of layers poured by the plan
+     */
+    static int replayPlan(String grid, String solution) {
+        String plan = solution.split(";")[0];
+        WaterSearchState state = WaterSortSearch.parseState(grid);
+        int numOfLayers = 0;
+        if (!plan.isEmpty()) {
+            for (String operator : plan.split(",")) {
+                String[] parsedOperation = operator.split("_");
+                int firstBottleIndex = Integer.parseInt(parsedOperation[1]);
+                int secondBottleIndex = Integer.parseInt(parsedOperation[2]);
+                assertTrue(grid + " " + operator, WaterSortSearch.canPour(state, firstBottleIndex, secondBottleIndex));
+                int cost = WaterSortSearch.calculateCost(state, firstBottleIndex, secondBottleIndex);
+                WaterSortSearch.pour(state, firstBottleIndex, secondBottleIndex, cost);
+                numOfLayers += cost;
+            }
+        }
+        assertTrue(grid + " " + solution, WaterSortSearch.isGoal(state));
+        assertEquals(Integer.parseInt(solution.split(";")[1]), numOfLayers);
+        return numOfLayers;
+    }
+
+    static int planLength(String solution) {
+        String plan = solution.split(";")[0];
+        return plan.isEmpty() ? 0 : plan.split(",").length;
+    }
+
+    /**
+     * The puzzle with its bottles in another order and its colors renamed
+     *
+     * @param order    original index of the bottle at every position
+     * @param renaming the new letter of every letter of {@link HeuristicEquivalenceTest#LETTERS}
+     */
+    static String permuteAndRelabel(String grid, int[] order, String renaming) {
+        String[] parts = grid.split(";");
+        StringBuilder permuted = new StringBuilder(parts[0] + ";" + parts[1] + ";");
+        for (int bottle : order) {
+            for (char layer : parts[2 + bottle].toCharArray()) {
+                int letter = HeuristicEquivalenceTest.LETTERS.indexOf(layer);
+                permuted.append(letter == -1 ? layer : renaming.charAt(letter));
+            }
+            permuted.append(';');
+        }
+        return permuted.toString();
+    }
+
+    static int[] randomOrder(Random random, int numOfBottles) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < numOfBottles; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        return order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static String randomRenaming(Random random) {
+        List<Character> letters = new ArrayList<>();
+        for (char letter : HeuristicEquivalenceTest.LETTERS.toCharArray()) {
+            letters.add(letter);
+        }
+        Collections.shuffle(letters, random);
+        StringBuilder renaming = new StringBuilder();
+        letters.forEach(renaming::append);
+        return renaming.toString();
+    }
+
+    @Test
+    public void testPermutedBottlesHaveEqualCanonicalKeys() {
+        Random random = new Random(6);
+        for (int puzzle = 0; puzzle < 200; puzzle++) {
+            String grid = HeuristicEquivalenceTest.randomPuzzle(random, 2 + random.nextInt(8), 2 + random.nextInt(4), 2);
+            int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+
+            // pouring a bottle into either of the two empty bottles gives states that only differ by the order of their bottles
+            WaterSearchState state = WaterSortSearch.parseState(grid);
+            int bottle = random.nextInt(numOfBottles - 2);
+            WaterSearchState firstState = (WaterSearchState) state.copy();
+            WaterSortSearch.pour(firstState, bottle, numOfBottles - 2, WaterSortSearch.calculateCost(state, bottle, numOfBottles - 2));
+            WaterSearchState secondState = (WaterSearchState) state.copy();
+            WaterSortSearch.pour(secondState, bottle, numOfBottles - 1, WaterSortSearch.calculateCost(state, bottle, numOfBottles - 1));
+            assertNotEquals(firstState.key(), secondState.key());
+            assertEquals(grid, firstState.canonicalKey(false), secondState.canonicalKey(false));
+        }
+    }
+
+    @Test
+    public void testStatesOfDifferentPoursHaveDifferentCanonicalKeys() {
+        WaterSearchState state = WaterSortSearch.parseState("5;4;b,y,r,b;b,y,r,r;y,r,b,y;e,e,e,e;e,e,e,e;");
+        WaterSearchState firstState = (WaterSearchState) state.copy();
+        WaterSortSearch.pour(firstState, 0, 3, 1);
+        WaterSearchState secondState = (WaterSearchState) state.copy();
+        WaterSortSearch.pour(secondState, 1, 3, 1);
+        assertNotEquals(firstState.canonicalKey(false), secondState.canonicalKey(false));
+        assertNotEquals(state.canonicalKey(false), firstState.canonicalKey(false));
+    }
+
+    @Test
+    public void testCanonicalPositionsAreInverseOfOriginalBottles() {
+        WaterSearchState state = WaterSortSearch.parseState("6;4;g,g,g,r;g,y,r,o;o,r,o,y;y,o,y,b;r,b,b,b;e,e,e,e;");
+        CanonicalForm canonicalForm = new CanonicalForm(state, false);
+        boolean[] isTaken = new boolean[6];
+        for (int position = 0; position < 6; position++) {
+            int bottle = canonicalForm.originalBottle(position);
+            assertFalse(isTaken[bottle]);
+            isTaken[bottle] = true;
+            assertEquals(position, canonicalForm.canonicalPosition(bottle));
+        }
+        assertThrows(IllegalArgumentException.class, () -> canonicalForm.canonicalPosition(6));
+        // sorted by layers, the empty bottle comes first
+        assertEquals(5, canonicalForm.originalBottle(0));
+    }
+
+    @Test(timeout = 60000)
+    public void testSymmetricBreadthFirstSearchFindsShortestPlans() {
+        for (String grid : grids) {
+            WaterSortSolver solver = new WaterSortSolver();
+            String expectedSolution = solver.solve(grid, "BF");
+            int expectedNodesExpanded = solver.nodesExpanded;
+
+            for (Symmetry symmetry : Symmetry.values()) {
+                solver = new WaterSortSolver();
+                solver.symmetry = symmetry;
+                String solution = solver.solve(grid, "BF");
+                replayPlan(grid, solution);
+                assertEquals(grid + " " + symmetry, planLength(expectedSolution), planLength(solution));
+                assertTrue(grid + " " + symmetry, solver.nodesExpanded <= expectedNodesExpanded);
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testRelabeledStatesHaveEqualCanonicalKeys() {
+        Random random = new Random(7);
+        for (int puzzle = 0; puzzle < 300; puzzle++) {
+            String grid = puzzle % 2 == 0
+                    ? HeuristicEquivalenceTest.randomPuzzle(random, 2 + random.nextInt(10), 2 + random.nextInt(4), random.nextInt(3))
+                    : HeuristicEquivalenceTest.randomLayout(random, 2 + random.nextInt(6), 2 + random.nextInt(4), 3 + random.nextInt(8));
+            String header = grid.substring(0, grid.indexOf(';', grid.indexOf(';') + 1) + 1);
+            int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+
+            // every state along a random walk, including the partly sorted ones with many symmetric bottles
+            WaterSearchState state = WaterSortSearch.parseState(grid);
+            for (int pour = 0; pour < 20; pour++) {
+                String stateGrid = header + state;
+                String relabeledGrid = permuteAndRelabel(stateGrid, randomOrder(random, numOfBottles), randomRenaming(random));
+                WaterSearchState relabeledState = WaterSortSearch.parseState(relabeledGrid);
+                assertEquals(stateGrid + " " + relabeledGrid, state.canonicalKey(true), relabeledState.canonicalKey(true));
+                assertEquals(stateGrid + " " + relabeledGrid, new CanonicalInstance(state).key(), new CanonicalInstance(relabeledState).key());
+
+                if (HeuristicEquivalenceTest.randomPour(random, state, numOfBottles) == -1) break;
+            }
+        }
+    }
+
+    @Test
+    public void testCanonicalPuzzleIsARelabeledPuzzle() {
+        Random random = new Random(8);
+        for (int puzzle = 0; puzzle < 100; puzzle++) {
+            String grid = HeuristicEquivalenceTest.randomLayout(random, 2 + random.nextInt(6), 2 + random.nextInt(4), 3 + random.nextInt(8));
+            CanonicalInstance instance = new CanonicalInstance(grid);
+            String[] parts = grid.split(";");
+            String[] canonicalParts = instance.key().split(";");
+            assertEquals(parts.length, canonicalParts.length);
+
+            // every canonical bottle is the original bottle it translates to, with the colors translated back
+            String canonicalPlan = "";
+            for (int position = 0; position < parts.length - 2; position++) {
+                canonicalPlan += (position == 0 ? "" : ",") + "pour_" + position + "_" + position;
+            }
+            String[] plan = instance.toOriginalSolution(canonicalPlan).split(",");
+            for (int position = 0; position < parts.length - 2; position++) {
+                int bottle = Integer.parseInt(plan[position].split("_")[1]);
+                StringBuilder originalBottle = new StringBuilder();
+                for (char layer : canonicalParts[2 + position].toCharArray()) {
+                    originalBottle.append(layer == ',' ? ',' : instance.toOriginalColor(layer));
+                }
+                assertEquals(parts[2 + bottle], originalBottle.toString());
+            }
+
+            // the canonical puzzle is its own canonical puzzle
+            assertEquals(instance.key(), new CanonicalInstance(instance.key()).key());
+            for (char color : grid.toCharArray()) {
+                if (Character.isLetter(color)) {
+                    assertEquals(color, instance.toOriginalColor(instance.toCanonicalColor(color)));
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testPlansAreTranslatedBetweenRelabeledPuzzles() {
+        Random random = new Random(9);
+        for (String grid : grids) {
+            int numOfBottles = Integer.parseInt(grid.split(";")[0]);
+            String relabeledGrid = permuteAndRelabel(grid, randomOrder(random, numOfBottles), randomRenaming(random));
+            CanonicalInstance instance = new CanonicalInstance(grid);
+            CanonicalInstance relabeledInstance = new CanonicalInstance(relabeledGrid);
+            assertEquals(instance.key(), relabeledInstance.key());
+
+            // a plan of one puzzle goes through the canonical puzzle to the other puzzle
+            for (String strategy : new String[]{"BF", "DF", "UC", "AS1"}) {
+                String solution = WaterSortSearch.solve(grid, strategy, false);
+                String canonicalSolution = instance.toCanonicalSolution(solution);
+                replayPlan(instance.key(), canonicalSolution);
+                String translatedSolution = relabeledInstance.toOriginalSolution(canonicalSolution);
+                assertEquals(replayPlan(grid, solution), replayPlan(relabeledGrid, translatedSolution));
+                assertEquals(solution, instance.toOriginalSolution(canonicalSolution));
+                assertEquals(solution.substring(solution.indexOf(';')), translatedSolution.substring(translatedSolution.indexOf(';')));
+            }
+        }
+    }
+
+    @Test
+    public void testCanonicalPuzzlesWithManyColors() {
+        // 51 colors, more than there are canonical letters
+        Random random = new Random(10);
+        String grid = HeuristicEquivalenceTest.randomPuzzle(random, 51, 3, 2);
+        String relabeledGrid = permuteAndRelabel(grid, randomOrder(random, 53), randomRenaming(random));
+        CanonicalInstance instance = new CanonicalInstance(grid);
+        assertEquals(instance.key(), new CanonicalInstance(relabeledGrid).key());
+        assertEquals(instance.key(), new CanonicalInstance(instance.key()).key());
+        for (char color : HeuristicEquivalenceTest.LETTERS.toCharArray()) {
+            assertEquals(color, instance.toOriginalColor(instance.toCanonicalColor(color)));
+        }
+        assertTrue(instance.key().chars().anyMatch(color -> color > 'z'));
+        assertThrows(IllegalArgumentException.class, () -> instance.toOriginalColor('!'));
+    }
+}
@@ -0,0 +1,72 @@
+package tests;
+
+
+import code.PackedState;
+import code.VisitedSet;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VisitedSetTest {
+
+    static long[] words(long i) {
+        return new long[]{i, ~i, i * 31};
+    }
+
+    void checkAddAndContains(VisitedSet.Storage storage) {
+        VisitedSet visitedStates = new VisitedSet(storage);
+        assertFalse(visitedStates.contains(words(1), PackedState.hash(words(1))));
+
+        // enough states to resize the table several times
+        for (long i = 0; i < 20000; i++) {
+            assertTrue(visitedStates.add(words(i), PackedState.hash(words(i))));
+        }
+        for (long i = 0; i < 20000; i++) {
+            assertFalse(visitedStates.add(words(i), PackedState.hash(words(i))));
+            assertTrue(visitedStates.contains(new PackedState(words(i))));
+        }
+        assertFalse(visitedStates.contains(words(20000), PackedState.hash(words(20000))));
+        assertEquals(20000, visitedStates.size());
+
+        VisitedSet.Statistics statistics = visitedStates.statistics();
+        assertEquals(storage, statistics.storage);
+        assertEquals(20000, statistics.size);
+        assertTrue(statistics.loadFactor() <= 0.75);
+        assertTrue(statistics.maximumProbeLength >= 1);
+    }
+
+    @Test
+    public void testHeapSet() {
+        checkAddAndContains(VisitedSet.Storage.HEAP);
+    }
+
+    @Test
+    public void testOffHeapSet() {
+        checkAddAndContains(VisitedSet.Storage.OFF_HEAP);
+    }
+
+    @Test
+    public void testStatesWithEqualFingerprintsAreToldApart() {
+        // the fingerprint only picks the slot, the words decide whether two states are equal
+        for (VisitedSet.Storage storage : VisitedSet.Storage.values()) {
+            VisitedSet visitedStates = new VisitedSet(storage);
+            Random random = new Random(5);
+            for (int i = 0; i < 3000; i++) {
+                long fingerprint = random.nextInt(4); // including 0, which marks empty slots
+                assertTrue(visitedStates.add(words(i), fingerprint));
+                assertFalse(visitedStates.add(words(i), fingerprint));
+            }
+            assertEquals(3000, visitedStates.size());
+            assertFalse(visitedStates.contains(words(3000), 0));
+        }
+    }
+
+    @Test
+    public void testStatesOfAnotherSizeAreRejected() {
+        VisitedSet visitedStates = new VisitedSet();
+        visitedStates.add(words(1), 1);
+        assertThrows(IllegalArgumentException.class, () -> visitedStates.add(new long[]{1}, 1));
+    }
+}